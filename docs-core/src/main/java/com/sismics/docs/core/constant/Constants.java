@@ -83,6 +83,111 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Lucene commit interval in seconds environment variable.
+     */
+    public static final String LUCENE_COMMIT_INTERVAL_ENV = "DOCS_LUCENE_COMMIT_INTERVAL";
+
+    /**
+     * Maximum number of uncommitted Lucene changes environment variable.
+     */
+    public static final String LUCENE_COMMIT_MAX_CHANGES_ENV = "DOCS_LUCENE_COMMIT_MAX_CHANGES";
+
+    /**
+     * Lucene searcher refresh interval in milliseconds environment variable.
+     */
+    public static final String LUCENE_REFRESH_INTERVAL_ENV = "DOCS_LUCENE_REFRESH_INTERVAL";
+
+    /**
+     * Lucene suggester refresh interval in seconds environment variable.
+     */
+    public static final String LUCENE_SUGGESTER_REFRESH_INTERVAL_ENV = "DOCS_LUCENE_SUGGESTER_REFRESH_INTERVAL";
+
+    /**
+     * Number of threads rebuilding the index environment variable.
+     */
+    public static final String INDEX_REBUILD_THREADS_ENV = "DOCS_INDEX_REBUILD_THREADS";
+
+    /**
+     * Number of Lucene index shards environment variable.
+     */
+    public static final String LUCENE_SHARDS_ENV = "DOCS_LUCENE_SHARDS";
+
+    /**
+     * Number of threads searching the Lucene index environment variable.
+     */
+    public static final String LUCENE_SEARCH_THREADS_ENV = "DOCS_LUCENE_SEARCH_THREADS";
+
+    /**
+     * Maximum number of documents in the search result cache environment variable.
+     */
+    public static final String SEARCH_CACHE_SIZE_ENV = "DOCS_SEARCH_CACHE_SIZE";
+
+    /**
+     * Interval between two Lucene reconciliation batches in seconds environment variable.
+     */
+    public static final String LUCENE_RECONCILE_INTERVAL_ENV = "DOCS_LUCENE_RECONCILE_INTERVAL";
+
+    /**
+     * Number of documents or files compared by a Lucene reconciliation batch environment variable.
+     */
+    public static final String LUCENE_RECONCILE_BATCH_SIZE_ENV = "DOCS_LUCENE_RECONCILE_BATCH_SIZE";
+
+    /**
+     * Maximum number of characters extracted from a file environment variable.
+     */
+    public static final String CONTENT_MAX_LENGTH_ENV = "DOCS_CONTENT_MAX_LENGTH";
+
+    /**
+     * Number of threads processing files environment variable.
+     */
+    public static final String FILE_PROCESSING_THREADS_ENV = "DOCS_FILE_PROCESSING_THREADS";
+
+    /**
+     * Maximum number of attempts of a file processing environment variable.
+     */
+    public static final String FILE_PROCESSING_MAX_ATTEMPTS_ENV = "DOCS_FILE_PROCESSING_MAX_ATTEMPTS";
+
+    /**
+     * OCR engine environment variable, "jna" or "cli".
+     */
+    public static final String OCR_ENGINE_ENV = "DOCS_OCR_ENGINE";
+
+    /**
+     * Number of OCR threads environment variable.
+     */
+    public static final String OCR_THREADS_ENV = "DOCS_OCR_THREADS";
+
+    /**
+     * Memory available to the images being OCR-ized in megabytes environment variable.
+     */
+    public static final String OCR_MEMORY_LIMIT_ENV = "DOCS_OCR_MEMORY_LIMIT";
+
+    /**
+     * Format of the generated images environment variable, "jpeg" or "webp".
+     */
+    public static final String IMAGE_FORMAT_ENV = "DOCS_IMAGE_FORMAT";
+
+    /**
+     * Compression quality of the generated images in percents environment variable.
+     */
+    public static final String IMAGE_QUALITY_ENV = "DOCS_IMAGE_QUALITY";
+
+    /**
+     * Progressive generated images environment variable, "true" or "false".
+     */
+    public static final String IMAGE_PROGRESSIVE_ENV = "DOCS_IMAGE_PROGRESSIVE";
+
+    /**
+     * Sizes of the generated images separated by commas environment variable.
+     */
+    public static final String IMAGE_SIZES_ENV = "DOCS_IMAGE_SIZES";
+
+    /**
+     * Generation of the images on their first request environment variable, "true" or "false".
+     */
+    public static final String IMAGE_LAZY_ENV = "DOCS_IMAGE_LAZY";
+
     /**
      * Expiration time of the password recovery in hours.
      */
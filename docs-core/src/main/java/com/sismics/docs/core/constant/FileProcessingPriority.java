@@ -0,0 +1,23 @@
+package com.sismics.docs.core.constant;
+
+/**
+ * Priority of a file processing, from the highest to the lowest.
+ *
+ * @author bgamard
+ */
+public enum FileProcessingPriority {
+    /**
+     * File uploaded by a user.
+     */
+    INTERACTIVE,
+
+    /**
+     * File imported from the inbox.
+     */
+    IMPORT,
+
+    /**
+     * File processed again.
+     */
+    REPROCESS
+}
@@ -0,0 +1,28 @@
+package com.sismics.docs.core.constant;
+
+/**
+ * State of a file processing job.
+ *
+ * @author bgamard
+ */
+public enum FileProcessingState {
+    /**
+     * Waiting to be run, or to be retried.
+     */
+    PENDING,
+
+    /**
+     * Running.
+     */
+    RUNNING,
+
+    /**
+     * Done.
+     */
+    DONE,
+
+    /**
+     * Failed, no more attempts left.
+     */
+    FAILED
+}
@@ -13,7 +13,9 @@ import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -59,6 +61,108 @@ public class DocumentDao {
         return q.getResultList();
     }
 
+    /**
+     * Returns a page of active documents ordered by ID, using keyset pagination.
+     *
+     * @param lastId ID of the last document of the previous page (null for the first page)
+     * @param limit Limit
+     * @return List of documents
+     */
+    public List<Document> findAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null" +
+                (lastId == null ? "" : " and d.id > :lastId") + " order by d.id", Document.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the update dates of a page of active documents ordered by ID, using keyset pagination.
+     *
+     * @param lastId ID of the last document of the previous page (null for the first page)
+     * @param limit Limit
+     * @return Update dates indexed by document ID, in order
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Date> findUpdateDateAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select d.id, d.updateDate from Document d where d.deleteDate is null" +
+                (lastId == null ? "" : " and d.id > :lastId") + " order by d.id");
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+
+        Map<String, Date> updateDateMap = new LinkedHashMap<>();
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            updateDateMap.put((String) o[0], (Date) o[1]);
+        }
+        return updateDateMap;
+    }
+
+    /**
+     * Returns the IDs of the documents created, updated or deleted since a date.
+     *
+     * @param date Date
+     * @return Document IDs
+     */
+    public List<String> findIdChangedSince(Date date) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select d.id from Document d" +
+                " where d.updateDate >= :date or d.deleteDate >= :date", String.class);
+        q.setParameter("date", date);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns a page of active documents linked to a tag ordered by ID, using keyset pagination.
+     *
+     * @param tagId Tag ID
+     * @param lastId ID of the last document of the previous page (null for the first page)
+     * @param limit Limit
+     * @return List of documents
+     */
+    public List<Document> findByTagId(String tagId, String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d, DocumentTag dt where dt.documentId = d.id and dt.tagId = :tagId and dt.deleteDate is null and d.deleteDate is null" +
+                (lastId == null ? "" : " and d.id > :lastId") + " order by d.id", Document.class);
+        q.setParameter("tagId", tagId);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the IDs of the active documents linked to a tag.
+     *
+     * @param tagId Tag ID
+     * @return Document IDs
+     */
+    public List<String> findIdByTagId(String tagId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select d.id from Document d, DocumentTag dt where dt.documentId = d.id and dt.tagId = :tagId and dt.deleteDate is null and d.deleteDate is null", String.class);
+        q.setParameter("tagId", tagId);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns a list of active documents.
+     *
+     * @param ids Document IDs
+     * @return List of documents
+     */
+    public List<Document> getDocuments(List<String> ids) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.id in :ids and d.deleteDate is null", Document.class);
+        q.setParameter("ids", ids);
+        return q.getResultList();
+    }
+
     /**
      * Returns the list of all active documents from a user.
      * 
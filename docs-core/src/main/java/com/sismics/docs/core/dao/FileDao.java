@@ -1,6 +1,7 @@
 package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.constant.AuditLogType;
+import com.sismics.docs.core.constant.FileProcessingState;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.util.context.ThreadLocalContext;
@@ -9,11 +10,15 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -35,7 +40,9 @@ public class FileDao {
         
         // Create the file
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        file.setCreateDate(new Date());
+        Date dateNow = new Date();
+        file.setCreateDate(dateNow);
+        file.setUpdateDate(dateNow);
         em.persist(file);
         
         // Create audit log
@@ -58,6 +65,95 @@ public class FileDao {
         q.setMaxResults(limit);
         return q.getResultList();
     }
+
+    /**
+     * Returns a page of active files ordered by ID, using keyset pagination.
+     *
+     * @param lastId ID of the last file of the previous page (null for the first page)
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.deleteDate is null" +
+                (lastId == null ? "" : " and f.id > :lastId") + " order by f.id", File.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns a page of active files without content and without a pending or running processing,
+     * ordered by ID, using keyset pagination.
+     *
+     * @param lastId ID of the last file of the previous page (null for the first page)
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findWithoutContentAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.deleteDate is null and f.content is null" +
+                (lastId == null ? "" : " and f.id > :lastId") +
+                " and not exists (select p.id from FileProcessing p where p.fileId = f.id and p.state in :stateList)" +
+                " order by f.id", File.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setParameter("stateList", List.of(FileProcessingState.PENDING, FileProcessingState.RUNNING));
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the update dates of a page of active files ordered by ID, using keyset pagination.
+     *
+     * @param lastId ID of the last file of the previous page (null for the first page)
+     * @param limit Limit
+     * @return Update dates indexed by file ID, in order
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Date> findUpdateDateAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select f.id, f.updateDate from File f where f.deleteDate is null" +
+                (lastId == null ? "" : " and f.id > :lastId") + " order by f.id");
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+
+        Map<String, Date> updateDateMap = new LinkedHashMap<>();
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            updateDateMap.put((String) o[0], (Date) o[1]);
+        }
+        return updateDateMap;
+    }
+
+    /**
+     * Returns the IDs of the files created, updated or deleted since a date.
+     *
+     * @param date Date
+     * @return File IDs
+     */
+    public List<String> findIdChangedSince(Date date) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select f.id from File f" +
+                " where f.updateDate >= :date or f.deleteDate >= :date", String.class);
+        q.setParameter("date", date);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of active files.
+     *
+     * @return Number of files
+     */
+    public long getFileCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query query = em.createNativeQuery("select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null");
+        return ((Number) query.getSingleResult()).longValue();
+    }
     
     /**
      * Returns the list of all files from a user.
@@ -164,10 +260,28 @@ public class FileDao {
         fileDb.setVersionId(file.getVersionId());
         fileDb.setLatestVersion(file.isLatestVersion());
         fileDb.setSize(file.getSize());
+        fileDb.setBlurHash(file.getBlurHash());
+        Date dateNow = new Date();
+        fileDb.setUpdateDate(dateNow);
+        file.setUpdateDate(dateNow);
 
         return file;
     }
 
+    /**
+     * Update the BlurHash placeholder of a file.
+     *
+     * @param id File ID
+     * @param blurHash BlurHash
+     */
+    public void updateBlurHash(String id, String blurHash) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update File f set f.blurHash = :blurHash where f.id = :id");
+        q.setParameter("blurHash", blurHash);
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+
     /**
      * Gets a file by its ID.
      * 
@@ -254,4 +368,76 @@ public class FileDao {
         q.setMaxResults(limit);
         return q.getResultList();
     }
+
+    /**
+     * Returns the MIME types of the files of documents.
+     *
+     * @param documentIdList List of document IDs
+     * @return Set of MIME types indexed by document ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Set<String>> getMimeTypeMap(Collection<String> documentIdList) {
+        Map<String, Set<String>> mimeTypeMap = new HashMap<>();
+        if (documentIdList.isEmpty()) {
+            return mimeTypeMap;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select distinct f.FIL_IDDOC_C, f.FIL_MIMETYPE_C from T_FILE f " +
+                " where f.FIL_IDDOC_C in (:documentIdList) and f.FIL_DELETEDATE_D is null");
+        q.setParameter("documentIdList", documentIdList);
+
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            if (o[1] != null) {
+                mimeTypeMap.computeIfAbsent((String) o[0], k -> new HashSet<>()).add((String) o[1]);
+            }
+        }
+        return mimeTypeMap;
+    }
+
+    /**
+     * Returns the extracted content of files.
+     *
+     * @param idList List of file IDs
+     * @return Content indexed by file ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getContentMap(Collection<String> idList) {
+        Map<String, String> contentMap = new HashMap<>();
+        if (idList.isEmpty()) {
+            return contentMap;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select f.id, f.content from File f where f.id in :idList");
+        q.setParameter("idList", idList);
+
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            if (o[1] != null) {
+                contentMap.put((String) o[0], (String) o[1]);
+            }
+        }
+        return contentMap;
+    }
+
+    /**
+     * Returns a part of the extracted content of a file.
+     *
+     * @param id File ID
+     * @param start Index of the first character
+     * @param length Number of characters
+     * @return Content part, null if the file has no content
+     */
+    public String getContentPart(String id, int start, int length) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select substring(f.content, :start, :length) from File f where f.id = :id");
+        q.setParameter("id", id);
+        q.setParameter("start", start + 1);
+        q.setParameter("length", length);
+        try {
+            return (String) q.getSingleResult();
+        } catch (NoResultException e) {
+            return null;
+        }
+    }
 }
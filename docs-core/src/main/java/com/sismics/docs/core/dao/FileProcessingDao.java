@@ -0,0 +1,138 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.constant.FileProcessingState;
+import com.sismics.docs.core.model.jpa.FileProcessing;
+import com.sismics.util.context.ThreadLocalContext;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * File processing job DAO.
+ *
+ * @author bgamard
+ */
+public class FileProcessingDao {
+    /**
+     * Create a new pending job.
+     *
+     * @param fileProcessing Job
+     * @return New ID
+     */
+    public String create(FileProcessing fileProcessing) {
+        Date dateNow = new Date();
+        fileProcessing.setId(UUID.randomUUID().toString())
+                .setState(FileProcessingState.PENDING)
+                .setAttempt(0)
+                .setCreateDate(dateNow)
+                .setNextAttemptDate(dateNow);
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.persist(fileProcessing);
+
+        return fileProcessing.getId();
+    }
+
+    /**
+     * Returns a job.
+     *
+     * @param id Job ID
+     * @return Job, null if it does not exist
+     */
+    public FileProcessing getById(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        return em.find(FileProcessing.class, id);
+    }
+
+    /**
+     * Update a job.
+     *
+     * @param fileProcessing Job to update
+     * @return Updated job
+     */
+    public FileProcessing update(FileProcessing fileProcessing) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        FileProcessing fileProcessingDb = em.find(FileProcessing.class, fileProcessing.getId());
+
+        // Update the job
+        fileProcessingDb.setState(fileProcessing.getState())
+                .setAttempt(fileProcessing.getAttempt())
+                .setLastError(fileProcessing.getLastError())
+                .setNextAttemptDate(fileProcessing.getNextAttemptDate())
+                .setStartDate(fileProcessing.getStartDate())
+                .setEndDate(fileProcessing.getEndDate());
+
+        return fileProcessing;
+    }
+
+    /**
+     * Returns the pending jobs ready to run, the oldest attempts first.
+     *
+     * @param date Date from which the jobs are ready
+     * @param limit Limit
+     * @return Jobs
+     */
+    public List<FileProcessing> findPendingBefore(Date date, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<FileProcessing> q = em.createQuery("select p from FileProcessing p where p.state = :state" +
+                " and p.nextAttemptDate <= :date order by p.nextAttemptDate", FileProcessing.class);
+        q.setParameter("state", FileProcessingState.PENDING);
+        q.setParameter("date", date);
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Put back the running jobs in the pending state.
+     * The jobs running when the server stopped are resumed this way.
+     *
+     * @return Number of jobs
+     */
+    public int resetRunning() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update FileProcessing p set p.state = :pending where p.state = :running");
+        q.setParameter("pending", FileProcessingState.PENDING);
+        q.setParameter("running", FileProcessingState.RUNNING);
+        return q.executeUpdate();
+    }
+
+    /**
+     * Delete the jobs done before a date.
+     * Failed jobs are kept for inspection.
+     *
+     * @param date Date
+     * @return Number of jobs deleted
+     */
+    public int deleteDoneBefore(Date date) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete from FileProcessing p where p.state = :state and p.endDate < :date");
+        q.setParameter("state", FileProcessingState.DONE);
+        q.setParameter("date", date);
+        return q.executeUpdate();
+    }
+
+    /**
+     * Returns the number of jobs in each state.
+     *
+     * @return Number of jobs by state
+     */
+    @SuppressWarnings("unchecked")
+    public Map<FileProcessingState, Long> countByState() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select p.state, count(p.id) from FileProcessing p group by p.state");
+        Map<FileProcessingState, Long> countMap = new EnumMap<>(FileProcessingState.class);
+        for (FileProcessingState state : FileProcessingState.values()) {
+            countMap.put(state, 0L);
+        }
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            countMap.put((FileProcessingState) o[0], ((Number) o[1]).longValue());
+        }
+        return countMap;
+    }
+}
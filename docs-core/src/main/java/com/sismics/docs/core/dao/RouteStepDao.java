@@ -151,4 +151,36 @@ public class RouteStepDao {
         q.setParameter("id", id);
         q.executeUpdate();
     }
+
+    /**
+     * Returns the current steps of the active routes of documents.
+     * Only the ID and the target ID of the steps are filled.
+     *
+     * @param documentIdList List of document IDs
+     * @return Current route steps indexed by document ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, List<RouteStepDto>> getCurrentStepMap(Collection<String> documentIdList) {
+        Map<String, List<RouteStepDto>> currentStepMap = new HashMap<>();
+        if (documentIdList.isEmpty()) {
+            return currentStepMap;
+        }
+
+        StringBuilder sb = new StringBuilder("select rs3.idDocument, rs.RTP_ID_C, rs.RTP_IDTARGET_C from T_ROUTE_STEP rs ");
+        sb.append(" join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs ");
+        sb.append("   join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null ");
+        sb.append("   where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null and r.RTE_IDDOCUMENT_C in (:documentIdList) ");
+        sb.append("   group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder ");
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery(sb.toString());
+        q.setParameter("documentIdList", documentIdList);
+
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            RouteStepDto routeStepDto = new RouteStepDto()
+                    .setId((String) o[1])
+                    .setTargetId((String) o[2]);
+            currentStepMap.computeIfAbsent((String) o[0], k -> new ArrayList<>()).add(routeStepDto);
+        }
+        return currentStepMap;
+    }
 }
@@ -5,7 +5,11 @@ import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -55,4 +59,29 @@ public class ShareDao {
         q.setParameter("dateNow", dateNow);
         q.executeUpdate();
     }
+
+    /**
+     * Returns the number of active shares of documents.
+     *
+     * @param documentIdList List of document IDs
+     * @return Number of shares indexed by document ID, documents without share are absent
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Integer> getShareCountMap(Collection<String> documentIdList) {
+        Map<String, Integer> shareCountMap = new HashMap<>();
+        if (documentIdList.isEmpty()) {
+            return shareCountMap;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select ac.ACL_SOURCEID_C, count(s.SHA_ID_C) from T_SHARE s, T_ACL ac " +
+                " where ac.ACL_TARGETID_C = s.SHA_ID_C and ac.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null " +
+                " and ac.ACL_SOURCEID_C in (:documentIdList) group by ac.ACL_SOURCEID_C");
+        q.setParameter("documentIdList", documentIdList);
+
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            shareCountMap.put((String) o[0], ((Number) o[1]).intValue());
+        }
+        return shareCountMap;
+    }
 }
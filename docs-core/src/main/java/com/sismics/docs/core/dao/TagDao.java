@@ -122,7 +122,7 @@ public class TagDao {
         tagDb.setDeleteDate(dateNow);
 
         // Delete linked data
-        q = em.createQuery("update DocumentTag dt set dt.deleteDate = :dateNow where dt.tagId = :tagId and dt.deleteDate is not null");
+        q = em.createQuery("update DocumentTag dt set dt.deleteDate = :dateNow where dt.tagId = :tagId and dt.deleteDate is null");
         q.setParameter("dateNow", dateNow);
         q.setParameter("tagId", tagId);
         q.executeUpdate();
@@ -222,5 +222,29 @@ public class TagDao {
 
         return tagDtoList;
     }
-}
 
+    /**
+     * Returns the tags of documents.
+     *
+     * @param documentIdList List of document IDs
+     * @return Set of tag IDs indexed by document ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Set<String>> getTagIdMap(Collection<String> documentIdList) {
+        Map<String, Set<String>> tagIdMap = new HashMap<>();
+        if (documentIdList.isEmpty()) {
+            return tagIdMap;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select dt.DOT_IDDOCUMENT_C, dt.DOT_IDTAG_C from T_DOCUMENT_TAG dt " +
+                " join T_TAG t on t.TAG_ID_C = dt.DOT_IDTAG_C and t.TAG_DELETEDATE_D is null " +
+                " where dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_DELETEDATE_D is null");
+        q.setParameter("documentIdList", documentIdList);
+
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            tagIdMap.computeIfAbsent((String) o[0], k -> new HashSet<>()).add((String) o[1]);
+        }
+        return tagIdMap;
+    }
+}
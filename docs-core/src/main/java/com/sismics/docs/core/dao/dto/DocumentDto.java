@@ -1,5 +1,10 @@
 package com.sismics.docs.core.dao.dto;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Document DTO.
  *
@@ -111,6 +116,11 @@ public class DocumentDto {
      */
     private String highlight;
 
+    /**
+     * Pages of the paginated files matching the search, indexed by file ID.
+     */
+    private Map<String, List<Integer>> matchedPageMap;
+
     public String getId() {
         return id;
     }
@@ -281,4 +291,50 @@ public class DocumentDto {
         this.highlight = highlight;
         return this;
     }
+
+    public Map<String, List<Integer>> getMatchedPageMap() {
+        return matchedPageMap;
+    }
+
+    public DocumentDto setMatchedPageMap(Map<String, List<Integer>> matchedPageMap) {
+        this.matchedPageMap = matchedPageMap;
+        return this;
+    }
+
+    /**
+     * Returns a copy of this document sharing no mutable state with it.
+     *
+     * @return Copy
+     */
+    public DocumentDto copy() {
+        DocumentDto copy = new DocumentDto();
+        copy.id = id;
+        copy.fileId = fileId;
+        copy.title = title;
+        copy.description = description;
+        copy.subject = subject;
+        copy.identifier = identifier;
+        copy.publisher = publisher;
+        copy.format = format;
+        copy.source = source;
+        copy.type = type;
+        copy.coverage = coverage;
+        copy.rights = rights;
+        copy.language = language;
+        copy.createTimestamp = createTimestamp;
+        copy.updateTimestamp = updateTimestamp;
+        copy.shared = shared;
+        copy.fileCount = fileCount;
+        copy.creator = creator;
+        copy.activeRoute = activeRoute;
+        copy.currentStepName = currentStepName;
+        copy.highlight = highlight;
+        if (matchedPageMap != null) {
+            copy.matchedPageMap = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : matchedPageMap.entrySet()) {
+                copy.matchedPageMap.put(entry.getKey(), entry.getValue() == null ? null : new ArrayList<>(entry.getValue()));
+            }
+        }
+        return copy;
+    }
 }
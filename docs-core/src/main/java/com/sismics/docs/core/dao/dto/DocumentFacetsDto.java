@@ -0,0 +1,70 @@
+package com.sismics.docs.core.dao.dto;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Document facets DTO.
+ *
+ * @author bgamard
+ */
+public class DocumentFacetsDto {
+    /**
+     * Number of matching documents.
+     */
+    private long total;
+
+    /**
+     * Number of documents by tag ID.
+     */
+    private Map<String, Long> tagCountMap = new HashMap<>();
+
+    /**
+     * Number of documents by MIME type of their files.
+     */
+    private Map<String, Long> mimeTypeCountMap = new HashMap<>();
+
+    /**
+     * Number of documents by language.
+     */
+    private Map<String, Long> languageCountMap = new HashMap<>();
+
+    /**
+     * Number of documents by creator ID.
+     */
+    private Map<String, Long> creatorCountMap = new HashMap<>();
+
+    /**
+     * Number of documents by creation year.
+     */
+    private Map<String, Long> yearCountMap = new HashMap<>();
+
+    public long getTotal() {
+        return total;
+    }
+
+    public DocumentFacetsDto setTotal(long total) {
+        this.total = total;
+        return this;
+    }
+
+    public Map<String, Long> getTagCountMap() {
+        return tagCountMap;
+    }
+
+    public Map<String, Long> getMimeTypeCountMap() {
+        return mimeTypeCountMap;
+    }
+
+    public Map<String, Long> getLanguageCountMap() {
+        return languageCountMap;
+    }
+
+    public Map<String, Long> getCreatorCountMap() {
+        return creatorCountMap;
+    }
+
+    public Map<String, Long> getYearCountMap() {
+        return yearCountMap;
+    }
+}
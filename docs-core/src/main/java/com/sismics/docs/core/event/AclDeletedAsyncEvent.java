@@ -1,9 +1,25 @@
 package com.sismics.docs.core.event;
 
+import java.util.List;
+
 /**
  * ACL deleted event.
  *
  * @author bgamard
  */
 public class AclDeletedAsyncEvent extends AclEvent {
-}
\ No newline at end of file
+    /**
+     * Documents inheriting the permissions of a deleted source, null if the source is not deleted.
+     * They are collected before the deletion, the source does not link to them anymore.
+     */
+    private List<String> documentIdList;
+
+    public List<String> getDocumentIdList() {
+        return documentIdList;
+    }
+
+    public AclDeletedAsyncEvent setDocumentIdList(List<String> documentIdList) {
+        this.documentIdList = documentIdList;
+        return this;
+    }
+}
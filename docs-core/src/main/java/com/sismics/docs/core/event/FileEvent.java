@@ -1,6 +1,7 @@
 package com.sismics.docs.core.event;
 
 import com.google.common.base.MoreObjects;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 
 import java.nio.file.Path;
 
@@ -25,6 +26,16 @@ public abstract class FileEvent extends UserEvent {
      */
     private Path unencryptedFile;
 
+    /**
+     * Processing priority.
+     */
+    private FileProcessingPriority priority = FileProcessingPriority.INTERACTIVE;
+
+    /**
+     * Processing job ID.
+     */
+    private String processingId;
+
     public String getFileId() {
         return fileId;
     }
@@ -50,11 +61,31 @@ public abstract class FileEvent extends UserEvent {
         return this;
     }
 
+    public FileProcessingPriority getPriority() {
+        return priority;
+    }
+
+    public FileEvent setPriority(FileProcessingPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public String getProcessingId() {
+        return processingId;
+    }
+
+    public FileEvent setProcessingId(String processingId) {
+        this.processingId = processingId;
+        return this;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
             .add("language", language)
+            .add("priority", priority)
+            .add("processingId", processingId)
             .toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.sismics.docs.core.event;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Event to encode again the images generated from all files.
+ *
+ * @author bgamard
+ */
+public class ReencodeVariantsAsyncEvent {
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .toString();
+    }
+}
@@ -5,6 +5,7 @@ import com.google.common.eventbus.Subscribe;
 import com.sismics.docs.core.event.AclDeletedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,7 +32,14 @@ public class AclDeletedAsyncListener {
             log.info("ACL deleted event: " + event.toString());
         }
 
-        TransactionUtil.handle(() -> AppContext.getInstance().getIndexingHandler()
-                .deleteAcl(event.getSourceId(), event.getPerm(), event.getTargetId()));
+        TransactionUtil.handle(() -> {
+            IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+            if (event.getDocumentIdList() == null) {
+                indexingHandler.deleteAcl(event.getSourceId(), event.getPerm(), event.getTargetId());
+            } else {
+                // The source is deleted, its documents are given by the event
+                indexingHandler.updateDocumentAcls(event.getDocumentIdList());
+            }
+        });
     }
 }
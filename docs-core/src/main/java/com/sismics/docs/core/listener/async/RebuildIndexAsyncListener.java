@@ -2,21 +2,39 @@ package com.sismics.docs.core.listener.async;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.docs.core.util.indexing.RebuildIndexProgress;
+import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Listener on rebuild index.
- * 
+ *
  * @author bgamard
  */
 public class RebuildIndexAsyncListener {
@@ -25,9 +43,14 @@ public class RebuildIndexAsyncListener {
      */
     private static final Logger log = LoggerFactory.getLogger(RebuildIndexAsyncListener.class);
 
+    /**
+     * Number of documents or files read and indexed at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
     /**
      * Rebuild Lucene index.
-     * 
+     *
      * @param event Index rebuild event
      */
     @Subscribe
@@ -37,35 +60,154 @@ public class RebuildIndexAsyncListener {
             log.info("Rebuild index event: " + event.toString());
         }
 
-        // Clear the index
-        AppContext.getInstance().getIndexingHandler().clearIndex();
-
-        // Index all documents
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            DocumentDao documentDao = new DocumentDao();
-            List<Document> documentList;
-            do {
-                documentList = documentDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createDocuments(documentList);
-                offset += 100;
-            } while (documentList.size() > 0);
-        });
-
-        // Index all files
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            FileDao fileDao = new FileDao();
-            List<File> fileList;
-            do {
-                fileList = fileDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createFiles(fileList);
-                offset += 100;
-            } while (fileList.size() > 0);
-        });
+        // Only one rebuild at a time
+        RebuildIndexProgress progress = AppContext.getInstance().getRebuildIndexProgress();
+        AtomicReference<Long> total = new AtomicReference<>(0L);
+        TransactionUtil.handle(() -> total.set(new DocumentDao().getDocumentCount() + new FileDao().getFileCount()));
+        if (!progress.start(total.get())) {
+            log.info("An index rebuild is already running");
+            return;
+        }
+
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        ExecutorService executor = createExecutor();
+        boolean success = false;
+        try {
+            // Build a new index, the current one is swapped only if all documents and files are indexed
+            indexingHandler.startRebuild();
+
+            // Index all documents, then all files
+            success = index(executor, progress, this::readDocuments, Document::getId, indexingHandler::createDocuments)
+                    && index(executor, progress, this::readFiles, File::getId, indexingHandler::createFiles);
+        } catch (Exception e) {
+            log.error("Error rebuilding the index", e);
+        } finally {
+            executor.shutdown();
+            indexingHandler.endRebuild(success);
+            progress.end();
+        }
 
         if (log.isInfoEnabled()) {
-            log.info("Rebuilding index done");
+            log.info("Rebuilding index done: {} items in {}s", progress.getDone(),
+                    (progress.getEndTimestamp() - progress.getStartTimestamp()) / 1000);
+        }
+    }
+
+    /**
+     * Read the page of documents following an ID, in a transaction.
+     *
+     * @param lastId Last ID of the previous page, null for the first page
+     * @param limit Page size
+     * @return Documents
+     */
+    List<Document> readDocuments(String lastId, int limit) {
+        return new DocumentDao().findAfterId(lastId, limit);
+    }
+
+    /**
+     * Read the page of files following an ID, in a transaction.
+     *
+     * @param lastId Last ID of the previous page, null for the first page
+     * @param limit Page size
+     * @return Files
+     */
+    List<File> readFiles(String lastId, int limit) {
+        return new FileDao().findAfterId(lastId, limit);
+    }
+
+    /**
+     * Create the executor building the index entries.
+     *
+     * @return Executor
+     */
+    private ExecutorService createExecutor() {
+        if (EnvironmentUtil.isUnitTest()) {
+            return MoreExecutors.newDirectExecutorService();
+        }
+
+        int threadCount = ConfigUtil.getEnvIntegerValue(Constants.INDEX_REBUILD_THREADS_ENV,
+                Math.max(Runtime.getRuntime().availableProcessors() / 2, 1));
+        return Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("index-rebuild-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Index all entities of a type.
+     * Pages are read in order with keyset pagination, each page in its own transaction,
+     * and indexed in parallel by the executor.
+     *
+     * @param executor Executor
+     * @param progress Rebuild progress
+     * @param pageReader Reads the page following an ID
+     * @param idGetter ID of an entity
+     * @param indexer Index a page
+     * @param <T> Entity type
+     * @return True if all entities are indexed
+     */
+    private <T> boolean index(ExecutorService executor, RebuildIndexProgress progress,
+                           BiFunction<String, Integer, List<T>> pageReader,
+                           Function<T, String> idGetter,
+                           Consumer<List<T>> indexer) {
+        // Bound the number of pages in memory
+        Semaphore semaphore = new Semaphore(Runtime.getRuntime().availableProcessors() * 2);
+        List<Future<?>> futureList = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        String lastId = null;
+        while (true) {
+            AtomicReference<List<T>> page = new AtomicReference<>();
+            String pageLastId = lastId;
+            TransactionUtil.handle(() -> page.set(pageReader.apply(pageLastId, BATCH_SIZE)));
+            List<T> entityList = page.get();
+            if (entityList == null) {
+                // The transaction failed, the remaining entities are not indexed
+                log.error("Error reading the page following: " + pageLastId);
+                failed.set(true);
+                break;
+            }
+            if (entityList.isEmpty()) {
+                break;
+            }
+            lastId = idGetter.apply(entityList.get(entityList.size() - 1));
+
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Index rebuild interrupted");
+                return false;
+            }
+            futureList.add(executor.submit(() -> {
+                try {
+                    TransactionUtil.handle(() -> {
+                        try {
+                            indexer.accept(entityList);
+                        } catch (RuntimeException e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                    });
+                    progress.add(entityList.size());
+                } finally {
+                    semaphore.release();
+                }
+            }));
+        }
+
+        // Wait for all pages to be indexed
+        for (Future<?> future : futureList) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Index rebuild interrupted");
+                return false;
+            } catch (ExecutionException e) {
+                log.error("Error indexing a page", e);
+                failed.set(true);
+            }
         }
+        return !failed.get();
     }
 }
@@ -0,0 +1,106 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.event.ReencodeVariantsAsyncEvent;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.FileVariantUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Listener encoding again the images generated from all files.
+ * The missing sizes and placeholders of the files processed before are generated along.
+ *
+ * @author bgamard
+ */
+public class ReencodeVariantsAsyncListener {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ReencodeVariantsAsyncListener.class);
+
+    /**
+     * Number of files read at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * True while the images are encoded again.
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Encode again the images of all files.
+     *
+     * @param event Event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final ReencodeVariantsAsyncEvent event) {
+        if (log.isInfoEnabled()) {
+            log.info("Reencode variants event: " + event.toString());
+        }
+
+        // Only one run at a time
+        if (!running.compareAndSet(false, true)) {
+            log.info("The images are already being encoded again");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        try {
+            String lastId = null;
+            while (true) {
+                // Read a page of files with the private key of their creator
+                Map<File, String> privateKeyMap = new LinkedHashMap<>();
+                String pageLastId = lastId;
+                TransactionUtil.handle(() -> {
+                    List<File> fileList = new FileDao().findAfterId(pageLastId, BATCH_SIZE);
+                    UserDao userDao = new UserDao();
+                    for (File file : fileList) {
+                        User user = userDao.getById(file.getUserId());
+                        privateKeyMap.put(file, user == null ? null : user.getPrivateKey());
+                    }
+                });
+                if (privateKeyMap.isEmpty()) {
+                    break;
+                }
+
+                // Encode the images outside of a transaction
+                for (Map.Entry<File, String> entry : privateKeyMap.entrySet()) {
+                    String fileId = entry.getKey().getId();
+                    lastId = fileId;
+                    if (entry.getValue() == null) {
+                        continue;
+                    }
+                    try {
+                        String blurHash = FileVariantUtil.reencodeVariants(entry.getKey(), entry.getValue());
+                        if (blurHash != null) {
+                            TransactionUtil.handle(() -> new FileDao().updateBlurHash(fileId, blurHash));
+                            count++;
+                        }
+                    } catch (Exception e) {
+                        log.error("Unable to encode again the images of the file: " + fileId, e);
+                    }
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Reencoding variants done: {} files in {}s", count, (System.currentTimeMillis() - startTime) / 1000);
+        }
+    }
+}
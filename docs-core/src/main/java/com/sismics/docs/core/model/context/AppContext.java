@@ -8,11 +8,16 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.FileSizeService;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.service.OcrService;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.PdfUtil;
+import com.sismics.docs.core.util.indexing.CachedIndexingHandler;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.docs.core.util.indexing.RebuildIndexProgress;
 import com.sismics.util.ClasspathScanner;
 import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
@@ -56,6 +61,11 @@ public class AppContext {
      */
     private IndexingHandler indexingHandler;
 
+    /**
+     * Progress of the index rebuild.
+     */
+    private final RebuildIndexProgress rebuildIndexProgress = new RebuildIndexProgress();
+
     /**
      * Inbox scanning service.
      */
@@ -71,6 +81,16 @@ public class AppContext {
      */
     private FileSizeService fileSizeService;
 
+    /**
+     * File processing service.
+     */
+    private FileProcessingService fileProcessingService;
+
+    /**
+     * OCR service.
+     */
+    private OcrService ocrService;
+
     /**
      * Asynchronous executors.
      */
@@ -87,9 +107,13 @@ public class AppContext {
             List<Class<? extends IndexingHandler>> indexingHandlerList = Lists.newArrayList(
                     new ClasspathScanner<IndexingHandler>().findClasses(IndexingHandler.class, "com.sismics.docs.core.util.indexing"));
             for (Class<? extends IndexingHandler> handlerClass : indexingHandlerList) {
+                if (handlerClass == CachedIndexingHandler.class) {
+                    // Wraps the handler found
+                    continue;
+                }
                 IndexingHandler handler = handlerClass.getDeclaredConstructor().newInstance();
                 if (handler.accept()) {
-                    indexingHandler = handler;
+                    indexingHandler = new CachedIndexingHandler(handler);
                     break;
                 }
             }
@@ -103,6 +127,18 @@ public class AppContext {
         fileService.startAsync();
         fileService.awaitRunning();
 
+        // Start OCR service
+        ocrService = new OcrService(ConfigUtil.getEnvIntegerValue(Constants.OCR_THREADS_ENV, Runtime.getRuntime().availableProcessors()),
+                ConfigUtil.getEnvIntegerValue(Constants.OCR_MEMORY_LIMIT_ENV, (int) (Runtime.getRuntime().maxMemory() / 4 / 1024 / 1024)));
+        ocrService.startAsync();
+        ocrService.awaitRunning();
+
+        // Start file processing service
+        fileProcessingService = new FileProcessingService(ConfigUtil.getEnvIntegerValue(Constants.FILE_PROCESSING_THREADS_ENV,
+                Math.max(Runtime.getRuntime().availableProcessors() / 2, 1)));
+        fileProcessingService.startAsync();
+        fileProcessingService.awaitRunning();
+
         // Start inbox service
         inboxService = new InboxService();
         inboxService.startAsync();
@@ -152,6 +188,7 @@ public class AppContext {
         asyncEventBus.register(new DocumentUpdatedAsyncListener());
         asyncEventBus.register(new DocumentDeletedAsyncListener());
         asyncEventBus.register(new RebuildIndexAsyncListener());
+        asyncEventBus.register(new ReencodeVariantsAsyncListener());
         asyncEventBus.register(new AclCreatedAsyncListener());
         asyncEventBus.register(new AclDeletedAsyncListener());
         asyncEventBus.register(new WebhookAsyncListener());
@@ -202,6 +239,9 @@ public class AppContext {
         for (ThreadPoolExecutor executor : asyncExecutorList) {
             queueSize += executor.getTaskCount() - executor.getCompletedTaskCount();
         }
+        if (fileProcessingService != null) {
+            queueSize += fileProcessingService.getQueuedCount() + fileProcessingService.getInFlightCount();
+        }
         return queueSize;
     }
 
@@ -217,6 +257,10 @@ public class AppContext {
         return indexingHandler;
     }
 
+    public RebuildIndexProgress getRebuildIndexProgress() {
+        return rebuildIndexProgress;
+    }
+
     public InboxService getInboxService() {
         return inboxService;
     }
@@ -225,7 +269,25 @@ public class AppContext {
         return fileService;
     }
 
+    public FileProcessingService getFileProcessingService() {
+        return fileProcessingService;
+    }
+
+    public OcrService getOcrService() {
+        return ocrService;
+    }
+
     public void shutDown() {
+        if (fileProcessingService != null) {
+            fileProcessingService.stopAsync();
+            fileProcessingService.awaitTerminated();
+        }
+
+        if (ocrService != null) {
+            ocrService.stopAsync();
+            ocrService.awaitTerminated();
+        }
+
         for (ExecutorService executor : asyncExecutorList) {
             // Shutdown executor, don't accept any more tasks (can cause error with nested events)
             try {
@@ -58,6 +58,12 @@ public class File implements Loggable {
     @Column(name = "FIL_CREATEDATE_D", nullable = false)
     private Date createDate;
 
+    /**
+     * Update date.
+     */
+    @Column(name = "FIL_UPDATEDATE_D", nullable = false)
+    private Date updateDate;
+
     /**
      * Deletion date.
      */
@@ -96,6 +102,12 @@ public class File implements Loggable {
     @Column(name = "FIL_SIZE_N", nullable = false)
     private Long size;
 
+    /**
+     * BlurHash placeholder of the images generated from the file.
+     */
+    @Column(name = "FIL_BLURHASH_C", length = 50)
+    private String blurHash;
+
     /**
      * Private key to decrypt the file.
      * Not saved to database, of course.
@@ -144,6 +156,14 @@ public class File implements Loggable {
         this.createDate = createDate;
     }
 
+    public Date getUpdateDate() {
+        return updateDate;
+    }
+
+    public void setUpdateDate(Date updateDate) {
+        this.updateDate = updateDate;
+    }
+
     @Override
     public Date getDeleteDate() {
         return deleteDate;
@@ -224,6 +244,15 @@ public class File implements Loggable {
         return this;
     }
 
+    public String getBlurHash() {
+        return blurHash;
+    }
+
+    public File setBlurHash(String blurHash) {
+        this.blurHash = blurHash;
+        return this;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -0,0 +1,215 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.constant.FileProcessingState;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.util.Date;
+
+/**
+ * File processing job entity.
+ *
+ * @author bgamard
+ */
+@Entity
+@Table(name = "T_FILE_PROCESSING")
+public class FileProcessing {
+    /**
+     * Job ID.
+     */
+    @Id
+    @Column(name = "FPR_ID_C", length = 36)
+    private String id;
+
+    /**
+     * File ID.
+     */
+    @Column(name = "FPR_IDFILE_C", nullable = false, length = 36)
+    private String fileId;
+
+    /**
+     * ID of the user who requested the processing.
+     */
+    @Column(name = "FPR_IDUSER_C", nullable = false, length = 36)
+    private String userId;
+
+    /**
+     * Language of the content.
+     */
+    @Column(name = "FPR_LANGUAGE_C", length = 7)
+    private String language;
+
+    /**
+     * Priority.
+     */
+    @Column(name = "FPR_PRIORITY_C", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private FileProcessingPriority priority;
+
+    /**
+     * State.
+     */
+    @Column(name = "FPR_STATE_C", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private FileProcessingState state;
+
+    /**
+     * Number of attempts started.
+     */
+    @Column(name = "FPR_ATTEMPT_N", nullable = false)
+    private Integer attempt;
+
+    /**
+     * Error of the last failed attempt.
+     */
+    @Column(name = "FPR_LASTERROR_C", length = 4000)
+    private String lastError;
+
+    /**
+     * Creation date.
+     */
+    @Column(name = "FPR_CREATEDATE_D", nullable = false)
+    private Date createDate;
+
+    /**
+     * Date from which the next attempt can start.
+     */
+    @Column(name = "FPR_NEXTATTEMPTDATE_D", nullable = false)
+    private Date nextAttemptDate;
+
+    /**
+     * Start date of the last attempt.
+     */
+    @Column(name = "FPR_STARTDATE_D")
+    private Date startDate;
+
+    /**
+     * End date of the last attempt.
+     */
+    @Column(name = "FPR_ENDDATE_D")
+    private Date endDate;
+
+    public String getId() {
+        return id;
+    }
+
+    public FileProcessing setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public FileProcessing setFileId(String fileId) {
+        this.fileId = fileId;
+        return this;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public FileProcessing setUserId(String userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public FileProcessing setLanguage(String language) {
+        this.language = language;
+        return this;
+    }
+
+    public FileProcessingPriority getPriority() {
+        return priority;
+    }
+
+    public FileProcessing setPriority(FileProcessingPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public FileProcessingState getState() {
+        return state;
+    }
+
+    public FileProcessing setState(FileProcessingState state) {
+        this.state = state;
+        return this;
+    }
+
+    public Integer getAttempt() {
+        return attempt;
+    }
+
+    public FileProcessing setAttempt(Integer attempt) {
+        this.attempt = attempt;
+        return this;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public FileProcessing setLastError(String lastError) {
+        this.lastError = lastError;
+        return this;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public FileProcessing setCreateDate(Date createDate) {
+        this.createDate = createDate;
+        return this;
+    }
+
+    public Date getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+
+    public FileProcessing setNextAttemptDate(Date nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+        return this;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public FileProcessing setStartDate(Date startDate) {
+        this.startDate = startDate;
+        return this;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public FileProcessing setEndDate(Date endDate) {
+        this.endDate = endDate;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("fileId", fileId)
+                .add("state", state)
+                .add("attempt", attempt)
+                .toString();
+    }
+}
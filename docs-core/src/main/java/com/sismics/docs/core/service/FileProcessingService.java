@@ -0,0 +1,760 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.constant.FileProcessingState;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.FileProcessingDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.event.FileEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.FileProcessing;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.FileVariantUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.format.ExtractedContent;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.util.EnvironmentUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Service processing files in the background, apart from the event buses.
+ * Tasks are run by priority, and users are served in turn within a priority,
+ * so a large import does not delay the uploads of other users.
+ * Each processing is a job saved in the database, the pending jobs are scanned regularly
+ * to resume the jobs interrupted by a restart and to retry the failed attempts.
+ *
+ * @author bgamard
+ */
+public class FileProcessingService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileProcessingService.class);
+
+    /**
+     * Default maximum number of characters extracted from a file.
+     */
+    private static final int DEFAULT_CONTENT_MAX_LENGTH = 1_000_000;
+
+    /**
+     * Default maximum number of attempts of a job.
+     */
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Delay before the first retry, multiplied by RETRY_BACKOFF at each attempt.
+     */
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Multiplier of the retry delay.
+     */
+    private static final int RETRY_BACKOFF = 5;
+
+    /**
+     * Delay between two scans of the pending jobs in seconds.
+     */
+    private static final int SCAN_INTERVAL = 30;
+
+    /**
+     * Maximum number of queued tasks after a scan.
+     */
+    private static final int SCAN_QUEUE_SIZE = 1000;
+
+    /**
+     * Delay between two purges of the jobs done.
+     */
+    private static final long PURGE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Retention of the jobs done.
+     */
+    private static final long DONE_RETENTION = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Number of files read at once when creating the jobs of the files without content.
+     */
+    private static final int MISSING_CONTENT_BATCH_SIZE = 1000;
+
+    /**
+     * Number of workers.
+     */
+    private final int threadCount;
+
+    /**
+     * Maximum number of attempts of a job.
+     */
+    private final int maxAttempts = ConfigUtil.getEnvIntegerValue(Constants.FILE_PROCESSING_MAX_ATTEMPTS_ENV, DEFAULT_MAX_ATTEMPTS);
+
+    /**
+     * IDs of the jobs queued or running.
+     */
+    private final Set<String> queuedProcessingIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Date of the last purge of the jobs done.
+     */
+    private long lastPurgeTime;
+
+    /**
+     * Queued tasks of each user, by priority.
+     * Users are served in the order of the map, a served user is moved at its end.
+     */
+    private final Map<FileProcessingPriority, LinkedHashMap<String, Deque<Runnable>>> queueMap = new EnumMap<>(FileProcessingPriority.class);
+
+    /**
+     * Number of queued tasks, by priority.
+     */
+    private final Map<FileProcessingPriority, Integer> queuedCountMap = new EnumMap<>(FileProcessingPriority.class);
+
+    /**
+     * Number of tasks running.
+     */
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+
+    /**
+     * Number of tasks done.
+     */
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Number of tasks failed.
+     */
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Workers are taking tasks.
+     */
+    private boolean running;
+
+    /**
+     * Workers.
+     */
+    private ExecutorService workerExecutor;
+
+    /**
+     * Scanner of the pending jobs.
+     */
+    private ScheduledExecutorService scanExecutor;
+
+    /**
+     * Build the service.
+     *
+     * @param threadCount Number of workers
+     */
+    public FileProcessingService(int threadCount) {
+        this.threadCount = threadCount;
+        for (FileProcessingPriority priority : FileProcessingPriority.values()) {
+            queueMap.put(priority, new LinkedHashMap<>());
+            queuedCountMap.put(priority, 0);
+        }
+    }
+
+    @Override
+    protected void startUp() {
+        log.info("File processing service starting up with {} workers", threadCount);
+
+        // The jobs running when the server stopped are started again
+        TransactionUtil.handle(() -> {
+            int count = new FileProcessingDao().resetRunning();
+            if (count > 0) {
+                log.info("{} interrupted file processings will be resumed", count);
+            }
+        });
+
+        synchronized (this) {
+            running = true;
+        }
+        workerExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("file-processing-%d")
+                .setDaemon(true)
+                .build());
+        for (int i = 0; i < threadCount; i++) {
+            workerExecutor.submit(this::work);
+        }
+
+        // The tasks are run in the calling thread in unit tests, the jobs are scanned on demand only
+        if (!EnvironmentUtil.isUnitTest()) {
+            scanExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("file-processing-scan")
+                    .setDaemon(true)
+                    .build());
+            scanExecutor.scheduleWithFixedDelay(this::scan, 0, SCAN_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    protected void shutDown() throws InterruptedException {
+        log.info("File processing service shutting down");
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+        }
+
+        // Let the running tasks end, the queued jobs are resumed at the next start
+        workerExecutor.shutdown();
+        workerExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        int queuedCount = getQueuedCount();
+        if (queuedCount > 0) {
+            log.info("{} file processings postponed to the next start", queuedCount);
+        }
+    }
+
+    /**
+     * Submit the processing of a file event.
+     * The job must have been saved with the event by FileUtil.startProcessingFile.
+     *
+     * @param event File event
+     * @param isFileCreated True if the file was just created
+     */
+    public void submit(FileEvent event, boolean isFileCreated) {
+        if (!queuedProcessingIdSet.add(event.getProcessingId())) {
+            // Already queued by a scan
+            return;
+        }
+        submit(event.getProcessingId(), event.getUserId(), event.getPriority(), event.getUnencryptedFile(), isFileCreated);
+    }
+
+    /**
+     * Submit the processing of a job, the job ID must have been added to the queued jobs.
+     *
+     * @param processingId Job ID
+     * @param userId User ID
+     * @param priority Priority
+     * @param unencryptedFile Unencrypted file, null to decrypt the stored file
+     * @param isFileCreated True if the file was just created
+     */
+    private void submit(String processingId, String userId, FileProcessingPriority priority,
+                        Path unencryptedFile, boolean isFileCreated) {
+        submit(userId, priority, () -> {
+            try {
+                process(processingId, unencryptedFile, isFileCreated);
+            } finally {
+                queuedProcessingIdSet.remove(processingId);
+            }
+        });
+    }
+
+    /**
+     * Queue the pending jobs ready to run which are not queued yet,
+     * as long as the queues are not full.
+     * The jobs interrupted by a restart, the jobs to retry and the jobs created in batch are run this way.
+     */
+    public void scan() {
+        try {
+            int room = SCAN_QUEUE_SIZE - getQueuedCount();
+            List<FileProcessing> fileProcessingList = new ArrayList<>();
+            TransactionUtil.handle(() -> {
+                FileProcessingDao fileProcessingDao = new FileProcessingDao();
+                if (room > 0) {
+                    fileProcessingList.addAll(fileProcessingDao.findPendingBefore(new Date(), room + queuedProcessingIdSet.size()));
+                }
+
+                // Purge the old jobs done from time to time
+                if (System.currentTimeMillis() - lastPurgeTime > PURGE_INTERVAL) {
+                    lastPurgeTime = System.currentTimeMillis();
+                    int count = fileProcessingDao.deleteDoneBefore(new Date(lastPurgeTime - DONE_RETENTION));
+                    if (count > 0) {
+                        log.info("{} file processings done purged", count);
+                    }
+                }
+            });
+
+            int count = 0;
+            for (FileProcessing fileProcessing : fileProcessingList) {
+                if (count >= room) {
+                    break;
+                }
+                if (!queuedProcessingIdSet.add(fileProcessing.getId())) {
+                    continue;
+                }
+                FileUtil.startProcessingFile(fileProcessing.getFileId());
+                submit(fileProcessing.getId(), fileProcessing.getUserId(), fileProcessing.getPriority(), null, false);
+                count++;
+            }
+            if (count > 0) {
+                log.info("{} pending file processings queued", count);
+            }
+        } catch (Throwable e) {
+            log.error("Error scanning the pending file processings", e);
+        }
+    }
+
+    /**
+     * Create a job for each active file without content, in the current transaction.
+     * The files of formats without content are skipped.
+     * The jobs have the lowest priority and are run by the next scans.
+     *
+     * @return Number of jobs created
+     */
+    public int createMissingContentJobs() {
+        FileDao fileDao = new FileDao();
+        FileProcessingDao fileProcessingDao = new FileProcessingDao();
+        int count = 0;
+        String lastId = null;
+        List<File> fileList;
+        do {
+            fileList = fileDao.findWithoutContentAfterId(lastId, MISSING_CONTENT_BATCH_SIZE);
+            for (File file : fileList) {
+                lastId = file.getId();
+                if (FormatHandlerUtil.find(file.getMimeType()) == null) {
+                    continue;
+                }
+                fileProcessingDao.create(new FileProcessing()
+                        .setFileId(file.getId())
+                        .setUserId(file.getUserId())
+                        .setPriority(FileProcessingPriority.REPROCESS));
+                count++;
+            }
+        } while (fileList.size() == MISSING_CONTENT_BATCH_SIZE);
+
+        log.info("{} file processings created for the files without content", count);
+        return count;
+    }
+
+    /**
+     * Run an attempt of a job :
+     * Generate thumbnails, unless they are generated on their first request
+     * Extract and save text content
+     * A failed attempt is retried later with a growing delay, up to the maximum number of attempts.
+     * A format handler failing is not retried, its error is saved in the job.
+     *
+     * @param processingId Job ID
+     * @param unencryptedFile Unencrypted file, null to decrypt the stored file
+     * @param isFileCreated True if the file was just created
+     */
+    private void process(String processingId, Path unencryptedFile, boolean isFileCreated) {
+        AtomicReference<FileProcessing> fileProcessing = new AtomicReference<>();
+        AtomicReference<File> file = new AtomicReference<>();
+        AtomicReference<User> user = new AtomicReference<>();
+        AtomicReference<String> language = new AtomicReference<>();
+
+        // Open a first transaction to start the attempt and get what we need
+        TransactionUtil.handle(() -> {
+            FileProcessingDao fileProcessingDao = new FileProcessingDao();
+            FileProcessing fileProcessingDb = fileProcessingDao.getById(processingId);
+            if (fileProcessingDb == null || fileProcessingDb.getState() != FileProcessingState.PENDING) {
+                // Already processed
+                return;
+            }
+            fileProcessingDb.setState(FileProcessingState.RUNNING)
+                    .setAttempt(fileProcessingDb.getAttempt() + 1)
+                    .setStartDate(new Date())
+                    .setEndDate(null);
+            fileProcessingDao.update(fileProcessingDb);
+            fileProcessing.set(fileProcessingDb);
+
+            file.set(new FileDao().getActiveById(fileProcessingDb.getFileId()));
+            if (file.get() == null) {
+                // The file has been deleted since
+                return;
+            }
+
+            // Get the creating user from the database for its private key
+            UserDao userDao = new UserDao();
+            user.set(userDao.getById(file.get().getUserId()));
+
+            // The jobs created in batch take the language of the document
+            language.set(fileProcessingDb.getLanguage());
+            if (language.get() == null && file.get().getDocumentId() != null) {
+                Document document = new DocumentDao().getById(file.get().getDocumentId());
+                if (document != null) {
+                    language.set(document.getLanguage());
+                }
+            }
+        });
+        if (fileProcessing.get() == null) {
+            return;
+        }
+
+        // Process the file outside of a transaction
+        if (user.get() == null || file.get() == null) {
+            // The user or file has been deleted
+            TransactionUtil.handle(() -> new FileProcessingDao().update(fileProcessing.get()
+                    .setState(FileProcessingState.DONE)
+                    .setEndDate(new Date())));
+            FileUtil.endProcessingFile(fileProcessing.get().getFileId());
+            return;
+        }
+        String content;
+        String extractionError;
+        String blurHash = null;
+        try {
+            Path inputFile = unencryptedFile;
+            if (inputFile == null || Files.notExists(inputFile)) {
+                // Resumed or retried job, the file is decrypted again
+                inputFile = EncryptionUtil.decryptFile(DirectoryUtil.getStorageDirectory().resolve(file.get().getId()),
+                        user.get().getPrivateKey());
+            }
+
+            // The format handler keeps the file loaded for the thumbnail and the extraction
+            try (FormatHandler formatHandler = FormatHandlerUtil.find(file.get().getMimeType())) {
+                if (formatHandler == null) {
+                    log.info("Format unhandled: " + file.get().getMimeType());
+                    content = null;
+                    extractionError = null;
+                } else {
+                    if (!FileVariantUtil.isLazy()) {
+                        blurHash = generateThumbnails(formatHandler, user.get(), file.get(), inputFile);
+                    }
+                    ExtractedContent extractedContent = newExtractedContent();
+                    extractionError = extractContent(formatHandler, language.get(), file.get(), inputFile, extractedContent);
+                    content = extractedContent.getLength() == 0 ? null : extractedContent.read();
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Error processing the file: " + file.get(), e);
+            retryOrFail(fileProcessing.get(), e.toString());
+            return;
+        }
+
+        // Open a new transaction to save the file content
+        if (!end(fileProcessing.get(), content, blurHash, extractionError, isFileCreated)) {
+            retryOrFail(fileProcessing.get(), "Error saving the content");
+        }
+    }
+
+    /**
+     * End a job, with the content of its file.
+     *
+     * @param fileProcessing Job
+     * @param content Text content
+     * @param blurHash BlurHash of the images generated, null if there is none
+     * @param extractionError Error of the format handler, null if there is none
+     * @param isFileCreated True if the file was just created
+     * @return True if saved
+     */
+    private boolean end(FileProcessing fileProcessing, String content, String blurHash, String extractionError, boolean isFileCreated) {
+        AtomicBoolean saved = new AtomicBoolean();
+        TransactionUtil.handle(() -> {
+            // Save the file to database
+            FileDao fileDao = new FileDao();
+            File freshFile = fileDao.getActiveById(fileProcessing.getFileId());
+            if (freshFile != null) {
+                freshFile.setContent(content);
+                if (blurHash != null) {
+                    freshFile.setBlurHash(blurHash);
+                }
+                fileDao.update(freshFile);
+
+                // Update index with the updated file
+                if (isFileCreated) {
+                    AppContext.getInstance().getIndexingHandler().createFile(freshFile);
+                } else {
+                    AppContext.getInstance().getIndexingHandler().updateFile(freshFile);
+                }
+            }
+
+            fileProcessing.setState(extractionError == null ? FileProcessingState.DONE : FileProcessingState.FAILED)
+                    .setLastError(StringUtils.abbreviate(extractionError, 4000))
+                    .setEndDate(new Date());
+            new FileProcessingDao().update(fileProcessing);
+            saved.set(true);
+        });
+
+        if (saved.get()) {
+            FileUtil.endProcessingFile(fileProcessing.getFileId());
+        }
+        return saved.get();
+    }
+
+    /**
+     * Schedule the next attempt of a failed job, or fail it if there is none left.
+     * The file of a failed job is still indexed, without content.
+     *
+     * @param fileProcessing Job
+     * @param error Error
+     */
+    private void retryOrFail(FileProcessing fileProcessing, String error) {
+        boolean retry = fileProcessing.getAttempt() < maxAttempts;
+        long delay = RETRY_DELAY * (long) Math.pow(RETRY_BACKOFF, fileProcessing.getAttempt() - 1);
+        TransactionUtil.handle(() -> {
+            Date dateNow = new Date();
+            fileProcessing.setState(retry ? FileProcessingState.PENDING : FileProcessingState.FAILED)
+                    .setLastError(StringUtils.abbreviate(error, 4000))
+                    .setEndDate(dateNow)
+                    .setNextAttemptDate(retry ? new Date(dateNow.getTime() + delay) : dateNow);
+            new FileProcessingDao().update(fileProcessing);
+
+            if (!retry) {
+                File freshFile = new FileDao().getActiveById(fileProcessing.getFileId());
+                if (freshFile != null) {
+                    AppContext.getInstance().getIndexingHandler().updateFile(freshFile);
+                }
+            }
+        });
+
+        if (retry) {
+            log.warn(MessageFormat.format("File processing attempt {0} failed, retrying in {1}s: {2}",
+                    fileProcessing.getAttempt(), delay / 1000, fileProcessing));
+        } else {
+            log.error("File processing failed, no attempt left: " + fileProcessing);
+            FileUtil.endProcessingFile(fileProcessing.getFileId());
+        }
+    }
+
+    /**
+     * Generate the thumbnails of a file.
+     * This is executed outside of a transaction, errors are logged only.
+     *
+     * @param formatHandler Format handler
+     * @param user User whom created the file
+     * @param file Fresh file
+     * @param unencryptedFile Unencrypted file
+     * @return BlurHash of the images, null if there is none
+     */
+    private String generateThumbnails(FormatHandler formatHandler, User user, File file, Path unencryptedFile) {
+        try {
+            BufferedImage image = formatHandler.generateThumbnail(unencryptedFile, FileVariantUtil.getMaxSize());
+            if (image != null) {
+                return FileVariantUtil.writeVariants(file.getId(), user.getPrivateKey(), image);
+            }
+        } catch (Throwable e) {
+            log.error("Unable to generate thumbnails for: " + file, e);
+        }
+        return null;
+    }
+
+    /**
+     * Build an empty content, bounded in length.
+     *
+     * @return Extracted content
+     */
+    private ExtractedContent newExtractedContent() {
+        return new ExtractedContent(
+                ConfigUtil.getEnvIntegerValue(Constants.CONTENT_MAX_LENGTH_ENV, DEFAULT_CONTENT_MAX_LENGTH));
+    }
+
+    /**
+     * Extract text content from a file.
+     * This is executed outside of a transaction.
+     * The text written before an error of the format handler is kept.
+     *
+     * @param formatHandler Format handler
+     * @param language Language
+     * @param file Fresh file
+     * @param unencryptedFile Unencrypted file
+     * @param content Extracted content
+     * @return Error of the format handler, null if there is none
+     */
+    private String extractContent(FormatHandler formatHandler, String language, File file, Path unencryptedFile, ExtractedContent content) {
+        long startTime = System.currentTimeMillis();
+        String error = null;
+        log.info("Start extracting content from: " + file);
+        try {
+            formatHandler.extractContent(language, unencryptedFile, content);
+        } catch (Throwable e) {
+            log.error("Error extracting content from: " + file, e);
+            error = e.toString();
+        }
+        log.info(MessageFormat.format("File content extracted in {0}ms: " + file.getId(), System.currentTimeMillis() - startTime));
+        if (content.isTruncated()) {
+            log.warn("File content truncated to " + content.getLength() + " characters: " + file.getId());
+        }
+
+        return error;
+    }
+
+    /**
+     * Submit a task.
+     * Tasks are run in the calling thread in unit tests.
+     *
+     * @param userId User ID
+     * @param priority Priority
+     * @param task Task
+     */
+    public void submit(String userId, FileProcessingPriority priority, Runnable task) {
+        if (EnvironmentUtil.isUnitTest()) {
+            run(task);
+            return;
+        }
+        enqueue(userId, priority, task);
+    }
+
+    /**
+     * Queue a task.
+     *
+     * @param userId User ID
+     * @param priority Priority
+     * @param task Task
+     */
+    synchronized void enqueue(String userId, FileProcessingPriority priority, Runnable task) {
+        queueMap.get(priority).computeIfAbsent(userId, k -> new ArrayDeque<>()).add(task);
+        queuedCountMap.merge(priority, 1, Integer::sum);
+        notify();
+    }
+
+    /**
+     * Remove the next task to run from the queues.
+     *
+     * @return Task, null if there is none
+     */
+    synchronized Runnable poll() {
+        for (Map.Entry<FileProcessingPriority, LinkedHashMap<String, Deque<Runnable>>> entry : queueMap.entrySet()) {
+            LinkedHashMap<String, Deque<Runnable>> userQueueMap = entry.getValue();
+            if (userQueueMap.isEmpty()) {
+                continue;
+            }
+
+            // Take the first task of the next user, then move this user at the end
+            Iterator<Map.Entry<String, Deque<Runnable>>> iterator = userQueueMap.entrySet().iterator();
+            Map.Entry<String, Deque<Runnable>> userQueue = iterator.next();
+            iterator.remove();
+            Runnable task = userQueue.getValue().poll();
+            if (!userQueue.getValue().isEmpty()) {
+                userQueueMap.put(userQueue.getKey(), userQueue.getValue());
+            }
+            queuedCountMap.merge(entry.getKey(), -1, Integer::sum);
+            return task;
+        }
+        return null;
+    }
+
+    /**
+     * Wait for the next task to run.
+     *
+     * @return Task, null if the service is stopping
+     * @throws InterruptedException e
+     */
+    private synchronized Runnable take() throws InterruptedException {
+        while (running) {
+            Runnable task = poll();
+            if (task != null) {
+                return task;
+            }
+            wait();
+        }
+        return null;
+    }
+
+    /**
+     * Run the tasks until the service stops.
+     */
+    private void work() {
+        while (true) {
+            Runnable task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                return;
+            }
+            run(task);
+        }
+    }
+
+    /**
+     * Run a task.
+     *
+     * @param task Task
+     */
+    private void run(Runnable task) {
+        inFlightCount.incrementAndGet();
+        try {
+            task.run();
+            completedCount.incrementAndGet();
+        } catch (Throwable e) {
+            failedCount.incrementAndGet();
+            log.error("Error processing a file", e);
+        } finally {
+            inFlightCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of queued tasks.
+     *
+     * @return Number of queued tasks
+     */
+    public synchronized int getQueuedCount() {
+        int queuedCount = 0;
+        for (int count : queuedCountMap.values()) {
+            queuedCount += count;
+        }
+        return queuedCount;
+    }
+
+    /**
+     * Returns the number of queued tasks of a priority.
+     *
+     * @param priority Priority
+     * @return Number of queued tasks
+     */
+    public synchronized int getQueuedCount(FileProcessingPriority priority) {
+        return queuedCountMap.get(priority);
+    }
+
+    /**
+     * Returns the number of users having queued tasks.
+     *
+     * @return Number of users
+     */
+    public synchronized int getQueuedUserCount() {
+        Set<String> userIdSet = new HashSet<>();
+        for (LinkedHashMap<String, Deque<Runnable>> userQueueMap : queueMap.values()) {
+            userIdSet.addAll(userQueueMap.keySet());
+        }
+        return userIdSet.size();
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
@@ -2,6 +2,7 @@ package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
@@ -260,7 +261,7 @@ public class InboxService extends AbstractScheduledService {
         // Add files to the document
         for (EmailUtil.FileContent fileContent : mailContent.getFileContentList()) {
             FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(), fileContent.getSize(),
-                    document.getLanguage(), "admin", document.getId());
+                    document.getLanguage(), "admin", document.getId(), FileProcessingPriority.IMPORT);
         }
 
         if (ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED)) {
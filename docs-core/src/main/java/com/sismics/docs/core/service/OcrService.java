@@ -0,0 +1,240 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.util.ocr.OcrEngine;
+import com.sismics.docs.core.util.ocr.TesseractCliOcrEngine;
+import com.sismics.docs.core.util.ocr.TesseractJnaOcrEngine;
+import com.sismics.util.ImageDeskew;
+import com.sismics.util.Scalr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service running the OCR of images on a pool of workers.
+ * The memory of the images waiting or being OCR-ized is bounded :
+ * an image is admitted once the memory estimated for its OCR is available.
+ *
+ * @author bgamard
+ */
+public class OcrService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(OcrService.class);
+
+    /**
+     * Size of the longest side of the images given to the OCR engine.
+     */
+    private static final int OCR_SIZE = 3500;
+
+    /**
+     * Size of the longest side of the grid on which the skew of the images is detected.
+     */
+    private static final int DESKEW_SIZE = 1750;
+
+    /**
+     * Number of workers.
+     */
+    private final int threadCount;
+
+    /**
+     * Memory available to the images in kilobytes.
+     */
+    private final int memoryLimit;
+
+    /**
+     * Memory left in kilobytes, fair so a large image is not delayed by smaller ones.
+     */
+    private final Semaphore memorySemaphore;
+
+    /**
+     * OCR engine.
+     */
+    private OcrEngine engine;
+
+    /**
+     * Workers.
+     */
+    private ExecutorService workerExecutor;
+
+    /**
+     * Build the service.
+     *
+     * @param threadCount Number of workers
+     * @param memoryLimit Memory available to the images in megabytes
+     */
+    public OcrService(int threadCount, int memoryLimit) {
+        this.threadCount = threadCount;
+        this.memoryLimit = (int) Math.min((long) memoryLimit * 1024, Integer.MAX_VALUE);
+        this.memorySemaphore = new Semaphore(this.memoryLimit, true);
+    }
+
+    @Override
+    protected void startUp() {
+        // The in-process engine is used if the tesseract library is installed, the command line otherwise
+        engine = new TesseractCliOcrEngine();
+        if (!"cli".equals(System.getenv(Constants.OCR_ENGINE_ENV))) {
+            OcrEngine jnaEngine = new TesseractJnaOcrEngine();
+            if (jnaEngine.accept()) {
+                engine = jnaEngine;
+            }
+        }
+        log.info("OCR service starting up with {} workers, {}MB and the engine {}",
+                threadCount, memoryLimit / 1024, engine.getClass().getSimpleName());
+
+        workerExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("ocr-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    @Override
+    protected void shutDown() throws InterruptedException {
+        log.info("OCR service shutting down");
+        workerExecutor.shutdownNow();
+        if (workerExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+            engine.close();
+        }
+    }
+
+    /**
+     * Estimate the memory needed to OCR an image.
+     * The image is upscaled and rotated in color, then converted to grayscale.
+     *
+     * @param width Image width
+     * @param height Image height
+     * @return Memory in kilobytes
+     */
+    static int estimateMemory(int width, int height) {
+        double scale = (double) OCR_SIZE / Math.max(Math.max(width, height), 1);
+        long pixelCount = (long) width * height;
+        long scaledPixelCount = (long) (pixelCount * scale * scale);
+        long memory = pixelCount * 4 + scaledPixelCount * 9;
+        return (int) Math.min(memory / 1024 + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Wait until the memory to OCR an image is available, and reserve it.
+     * An image needing more than the limit is admitted alone.
+     *
+     * @param width Image width
+     * @param height Image height
+     * @return Memory reserved, to give to submit
+     * @throws InterruptedException e
+     */
+    public int admit(int width, int height) throws InterruptedException {
+        int memory = Math.min(estimateMemory(width, height), memoryLimit);
+        memorySemaphore.acquire(memory);
+        return memory;
+    }
+
+    /**
+     * Release a memory reserved for an image which will not be submitted.
+     *
+     * @param memory Memory reserved
+     */
+    public void release(int memory) {
+        memorySemaphore.release(memory);
+    }
+
+    /**
+     * OCR an image on the workers.
+     * The memory reserved is released once done.
+     *
+     * @param language Language
+     * @param image Image, flushed once done
+     * @param memory Memory reserved
+     * @return Future text
+     */
+    public Future<String> submit(String language, BufferedImage image, int memory) {
+        try {
+            return workerExecutor.submit(() -> {
+                try {
+                    return recognize(language, image);
+                } finally {
+                    image.flush();
+                    release(memory);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(memory);
+            throw e;
+        }
+    }
+
+    /**
+     * OCR an image on the workers and wait for the text.
+     *
+     * @param language Language
+     * @param image Image, flushed once done
+     * @return Text
+     * @throws Exception e
+     */
+    public String ocr(String language, BufferedImage image) throws Exception {
+        int memory = admit(image.getWidth(), image.getHeight());
+        return get(submit(language, image, memory));
+    }
+
+    /**
+     * Wait for the text of an image submitted.
+     *
+     * @param future Future text
+     * @return Text
+     * @throws Exception The error of the OCR
+     */
+    public static String get(Future<String> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Upscale, grayscale and deskew an image, then OCR it.
+     *
+     * @param language Language
+     * @param image Image
+     * @return Text
+     * @throws Exception e
+     */
+    private String recognize(String language, BufferedImage image) throws Exception {
+        BufferedImage resizedImage = Scalr.resize(image, Scalr.Method.AUTOMATIC, Scalr.Mode.AUTOMATIC, OCR_SIZE, Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
+        image.flush();
+        ImageDeskew imageDeskew = new ImageDeskew(resizedImage, DESKEW_SIZE);
+        BufferedImage deskewedImage = Scalr.rotate(resizedImage, - imageDeskew.getSkewAngle(), Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
+        resizedImage.flush();
+        try {
+            return engine.recognize(language, deskewedImage);
+        } finally {
+            deskewedImage.flush();
+        }
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Returns the memory available to new images.
+     *
+     * @return Memory in kilobytes
+     */
+    public int getAvailableMemory() {
+        return memorySemaphore.availablePermits();
+    }
+}
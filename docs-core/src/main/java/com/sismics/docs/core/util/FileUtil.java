@@ -1,20 +1,19 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
-import com.google.common.io.CharStreams;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.FileProcessingDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
 import com.sismics.docs.core.event.FileCreatedAsyncEvent;
+import com.sismics.docs.core.event.FileEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.FileProcessing;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.util.ImageDeskew;
-import com.sismics.util.Scalr;
 import com.sismics.util.context.ThreadLocalContext;
-import com.sismics.util.io.InputStreamReaderThread;
 import com.sismics.util.mime.MimeTypeUtil;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CountingInputStream;
@@ -25,12 +24,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -53,6 +49,7 @@ public class FileUtil {
     
     /**
      * Optical character recognition on an image.
+     * The image is upscaled, grayscaled and deskewed, then OCR-ized by the OCR service.
      *
      * @param language Language to OCR
      * @param image Buffered image
@@ -60,27 +57,7 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String ocrFile(String language, BufferedImage image) throws Exception {
-        // Upscale, grayscale and deskew the image
-        BufferedImage resizedImage = Scalr.resize(image, Scalr.Method.AUTOMATIC, Scalr.Mode.AUTOMATIC, 3500, Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
-        image.flush();
-        ImageDeskew imageDeskew = new ImageDeskew(resizedImage);
-        BufferedImage deskewedImage = Scalr.rotate(resizedImage, - imageDeskew.getSkewAngle(), Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
-        resizedImage.flush();
-        Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
-        ImageIO.write(deskewedImage, "tiff", tmpFile.toFile());
-
-        List<String> result = Lists.newLinkedList(Arrays.asList("tesseract", tmpFile.toAbsolutePath().toString(), "stdout", "-l", language));
-        ProcessBuilder pb = new ProcessBuilder(result);
-        Process process = pb.start();
-
-        // Consume the process error stream
-        final String commandName = pb.command().get(0);
-        new InputStreamReaderThread(process.getErrorStream(), commandName).start();
-
-        // Consume the data as text
-        try (InputStream is = process.getInputStream()) {
-            return CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
-        }
+        return AppContext.getInstance().getOcrService().ocr(language, image);
     }
 
     /**
@@ -90,17 +67,11 @@ public class FileUtil {
      */
     public static void delete(String fileId) throws IOException {
         Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        Path webFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_web");
-        Path thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_thumb");
-        
         if (Files.exists(storedFile)) {
             Files.delete(storedFile);
         }
-        if (Files.exists(webFile)) {
-            Files.delete(webFile);
-        }
-        if (Files.exists(thumbnailFile)) {
-            Files.delete(thumbnailFile);
+        for (String variant : FileVariantUtil.getVariantNames()) {
+            Files.deleteIfExists(FileVariantUtil.getVariantFile(fileId, variant));
         }
     }
 
@@ -118,6 +89,25 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
+        return createFile(name, previousFileId, unencryptedFile, fileSize, language, userId, documentId, FileProcessingPriority.INTERACTIVE);
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param unencryptedFile Path to the unencrypted file
+     * @param fileSize File size
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @param priority Processing priority
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId,
+                                    FileProcessingPriority priority) throws Exception {
         // Validate mime type
         String mimeType;
         try {
@@ -197,12 +187,13 @@ public class FileUtil {
         userDao.updateQuota(user);
 
         // Raise a new file created event and document updated event if we have a document
-        startProcessingFile(fileId);
         FileCreatedAsyncEvent fileCreatedAsyncEvent = new FileCreatedAsyncEvent();
         fileCreatedAsyncEvent.setUserId(userId);
         fileCreatedAsyncEvent.setLanguage(language);
         fileCreatedAsyncEvent.setFileId(file.getId());
         fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile);
+        fileCreatedAsyncEvent.setPriority(priority);
+        startProcessingFile(fileCreatedAsyncEvent);
         ThreadLocalContext.get().addAsyncEvent(fileCreatedAsyncEvent);
 
         if (documentId != null) {
@@ -216,7 +207,25 @@ public class FileUtil {
     }
 
     /**
-     * Start processing a file.
+     * Start processing a file, in the current transaction.
+     * A processing job is saved, so the processing survives a restart.
+     * The event must be raised afterward to start the processing right away.
+     *
+     * @param event File event
+     */
+    public static void startProcessingFile(FileEvent event) {
+        FileProcessingDao fileProcessingDao = new FileProcessingDao();
+        String processingId = fileProcessingDao.create(new FileProcessing()
+                .setFileId(event.getFileId())
+                .setUserId(event.getUserId())
+                .setLanguage(event.getLanguage())
+                .setPriority(event.getPriority()));
+        event.setProcessingId(processingId);
+        startProcessingFile(event.getFileId());
+    }
+
+    /**
+     * Mark a file as processing.
      *
      * @param fileId File ID
      */
@@ -0,0 +1,424 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.util.BlurHash;
+import com.sismics.util.Scalr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Utilities to write the images generated from the files.
+ * Each file has a web image and a thumbnail, and a ladder of sizes in between and around
+ * so the clients can fetch the image closest to the size they display.
+ * They are generated while processing the files, or on their first request.
+ *
+ * @author bgamard
+ */
+public class FileVariantUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileVariantUtil.class);
+
+    /**
+     * Size of the longest side of the web images.
+     */
+    public static final int WEB_SIZE = 1280;
+
+    /**
+     * Size of the longest side of the thumbnails.
+     */
+    public static final int THUMBNAIL_SIZE = 256;
+
+    /**
+     * Default sizes of the ladder.
+     */
+    private static final String DEFAULT_SIZES = "128,256,512,1024,2048";
+
+    /**
+     * Size of the longest side of the image a BlurHash is computed from.
+     */
+    private static final int BLURHASH_SIZE = 32;
+
+    /**
+     * Encoder of the images.
+     */
+    private static final ImageEncoder ENCODER = ImageEncoder.fromEnvironment();
+
+    /**
+     * Variants by size of their longest side.
+     */
+    private static final NavigableMap<Integer, String> VARIANTS = buildVariants(System.getenv(Constants.IMAGE_SIZES_ENV));
+
+    /**
+     * True if the variants are generated on their first request only.
+     */
+    private static final boolean LAZY = "true".equals(System.getenv(Constants.IMAGE_LAZY_ENV));
+
+    /**
+     * Maximum number of files without image remembered.
+     */
+    private static final int NO_IMAGE_CACHE_SIZE = 10000;
+
+    /**
+     * Maximum time a request waits for the generation of the variants in seconds.
+     * The generation goes on in the background, the next requests get the variants.
+     */
+    private static final int GENERATION_WAIT = 5;
+
+    /**
+     * Delay before generating again the variants of a file after a failure in minutes.
+     */
+    private static final int FAILURE_RETRY_DELAY = 10;
+
+    /**
+     * On-demand generations in progress by file ID, the concurrent requests of a file wait for the same generation.
+     */
+    private static final ConcurrentMap<String, Future<Void>> generationMap = new ConcurrentHashMap<>();
+
+    /**
+     * IDs of the files without image, not decoded again at each request.
+     */
+    private static final Cache<String, Boolean> noImageCache = CacheBuilder.newBuilder()
+            .maximumSize(NO_IMAGE_CACHE_SIZE)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    /**
+     * IDs of the files whose variants failed to generate, not decoded again at each request.
+     */
+    private static final Cache<String, Boolean> failureCache = CacheBuilder.newBuilder()
+            .maximumSize(NO_IMAGE_CACHE_SIZE)
+            .expireAfterWrite(FAILURE_RETRY_DELAY, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * Build the variants from a list of sizes.
+     * The web image and the thumbnail are always generated, the other sizes are named after their size.
+     *
+     * @param sizes Sizes separated by commas, null for the default sizes
+     * @return Variants by size
+     */
+    static NavigableMap<Integer, String> buildVariants(String sizes) {
+        NavigableMap<Integer, String> variants = new TreeMap<>();
+        for (String size : Splitter.on(',').trimResults().omitEmptyStrings().split(Strings.isNullOrEmpty(sizes) ? DEFAULT_SIZES : sizes)) {
+            try {
+                int value = Integer.parseInt(size);
+                if (value > 0) {
+                    variants.put(value, Integer.toString(value));
+                }
+            } catch (NumberFormatException e) {
+                log.warn(Constants.IMAGE_SIZES_ENV + " needs to be a list of numbers, ignoring: " + size);
+            }
+        }
+        variants.put(WEB_SIZE, "web");
+        variants.put(THUMBNAIL_SIZE, "thumb");
+        return Collections.unmodifiableNavigableMap(variants);
+    }
+
+    /**
+     * Returns the size of the largest variant, the size images should be generated at.
+     *
+     * @return Size of the longest side
+     */
+    public static int getMaxSize() {
+        return VARIANTS.lastKey();
+    }
+
+    /**
+     * Returns the names of all variants.
+     *
+     * @return Variant names
+     */
+    public static Collection<String> getVariantNames() {
+        return VARIANTS.values();
+    }
+
+    /**
+     * Returns true if the variants are generated on their first request only,
+     * and not while processing the files.
+     *
+     * @return True if lazy
+     */
+    public static boolean isLazy() {
+        return LAZY;
+    }
+
+    /**
+     * Returns true if the variants of a file are stored.
+     *
+     * @param fileId File ID
+     * @return True if the thumbnail, always generated, exists
+     */
+    public static boolean hasVariants(String fileId) {
+        return Files.exists(getVariantFile(fileId, "thumb"));
+    }
+
+    /**
+     * Generate the variants of a file from its stored original, on request.
+     * The generation runs on the file processing workers, bounding the number of images decoded at once,
+     * and the concurrent requests of a file wait for the same generation, a few seconds at most.
+     * The BlurHash of the image is stored once generated. Errors are logged only,
+     * and the file is not generated again before a delay.
+     *
+     * @param file File
+     * @param privateKey Private key of the user whom created the file
+     */
+    public static void generateVariants(File file, String privateKey) {
+        String fileId = file.getId();
+        FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
+        if (formatHandler == null || noImageCache.getIfPresent(fileId) != null || failureCache.getIfPresent(fileId) != null) {
+            return;
+        }
+
+        FutureTask<Void> generation = new FutureTask<Void>(() -> {
+            try {
+                String blurHash = generate(file, privateKey, formatHandler);
+                if (blurHash != null) {
+                    TransactionUtil.handle(() -> new FileDao().updateBlurHash(fileId, blurHash));
+                }
+            } catch (Exception e) {
+                failureCache.put(fileId, true);
+                log.error("Unable to generate variants for: " + file, e);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                generationMap.remove(fileId, this);
+            }
+        };
+        Future<Void> runningGeneration = generationMap.putIfAbsent(fileId, generation);
+        if (runningGeneration == null) {
+            runningGeneration = generation;
+            AppContext.getInstance().getFileProcessingService().submit(file.getUserId(), FileProcessingPriority.INTERACTIVE, generation);
+        }
+
+        try {
+            runningGeneration.get(GENERATION_WAIT, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            log.error("Unable to generate variants for: " + file, e.getCause());
+        } catch (TimeoutException e) {
+            log.info("Variants of {} not generated yet, served later", fileId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Generate the variants of a file from its stored original.
+     *
+     * @param file File
+     * @param privateKey Private key of the user whom created the file
+     * @param formatHandler Format handler of the file
+     * @return BlurHash of the image, null if the file has no image or if its variants were already stored
+     * @throws Exception e
+     */
+    private static String generate(File file, String privateKey, FormatHandler formatHandler) throws Exception {
+        if (hasVariants(file.getId())) {
+            // Generated since the request checked
+            return null;
+        }
+
+        BufferedImage image = render(file, privateKey, formatHandler);
+        if (image == null) {
+            noImageCache.put(file.getId(), true);
+            return null;
+        }
+        log.info("Variants generated on request for: " + file.getId());
+        return writeVariants(file.getId(), privateKey, image);
+    }
+
+    /**
+     * Render the image of a file from its stored original, at the size of the largest variant.
+     *
+     * @param file File
+     * @param privateKey Private key of the user whom created the file
+     * @param formatHandler Format handler of the file, closed once done
+     * @return Image, null if the file has no image
+     * @throws Exception e
+     */
+    private static BufferedImage render(File file, String privateKey, FormatHandler formatHandler) throws Exception {
+        Path unencryptedFile = EncryptionUtil.decryptFile(DirectoryUtil.getStorageDirectory().resolve(file.getId()), privateKey);
+        try {
+            return formatHandler.generateThumbnail(unencryptedFile, getMaxSize());
+        } finally {
+            formatHandler.close();
+        }
+    }
+
+    /**
+     * Write the variants of a file.
+     * Each variant is generated from the next larger one, the sizes above the image are skipped
+     * except for the web image and the thumbnail.
+     *
+     * @param fileId File ID
+     * @param privateKey Private key of the user whom created the file
+     * @param image Image, flushed once done
+     * @return BlurHash of the image
+     * @throws Exception e
+     */
+    public static String writeVariants(String fileId, String privateKey, BufferedImage image) throws Exception {
+        int imageSize = Math.max(image.getWidth(), image.getHeight());
+        BufferedImage source = image;
+        for (Map.Entry<Integer, String> variant : VARIANTS.descendingMap().entrySet()) {
+            int size = variant.getKey();
+            if (size > imageSize + 1 && size != WEB_SIZE && size != THUMBNAIL_SIZE) {
+                // Not upscaled, a pixel may be lost rounding the rendering size
+                continue;
+            }
+
+            BufferedImage resizedImage = Scalr.resize(source, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, size);
+            write(fileId, variant.getValue(), privateKey, resizedImage);
+            if (size < imageSize) {
+                // The next variants are generated from this one
+                if (source != image) {
+                    source.flush();
+                }
+                source = resizedImage;
+            } else {
+                resizedImage.flush();
+            }
+        }
+
+        BufferedImage blurHashImage = Scalr.resize(source, Scalr.Method.BALANCED, Scalr.Mode.AUTOMATIC, BLURHASH_SIZE);
+        String blurHash = BlurHash.encode(blurHashImage, 4, 3);
+        blurHashImage.flush();
+        source.flush();
+        image.flush();
+        return blurHash;
+    }
+
+    /**
+     * Encode again the variants of a file with the current encoder and sizes.
+     * The variants are rendered again from the stored original, so they lose no quality at each run
+     * and the sizes above the previous largest variant can be generated.
+     * The largest variant stored is used only if the original can't be rendered.
+     *
+     * @param file File
+     * @param privateKey Private key of the user whom created the file
+     * @return BlurHash of the image, null if the file has no variant
+     * @throws Exception e
+     */
+    public static String reencodeVariants(File file, String privateKey) throws Exception {
+        String fileId = file.getId();
+        Path sourceFile = null;
+        for (String variant : VARIANTS.descendingMap().values()) {
+            Path variantFile = getVariantFile(fileId, variant);
+            if (Files.exists(variantFile)) {
+                sourceFile = variantFile;
+                break;
+            }
+        }
+        if (sourceFile == null) {
+            return null;
+        }
+
+        BufferedImage image = null;
+        FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
+        if (formatHandler != null && Files.exists(DirectoryUtil.getStorageDirectory().resolve(fileId))) {
+            try {
+                image = render(file, privateKey, formatHandler);
+            } catch (Exception e) {
+                log.warn("Unable to render the original of the file " + fileId + ", encoding again its largest image", e);
+            }
+        }
+        if (image == null) {
+            try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(sourceFile), privateKey)) {
+                image = ImageIO.read(inputStream);
+            }
+        }
+        if (image == null) {
+            return null;
+        }
+        return writeVariants(fileId, privateKey, image);
+    }
+
+    /**
+     * Returns the stored variant closest to a size : the smallest one at least as large,
+     * or the largest one if none is large enough.
+     *
+     * @param fileId File ID
+     * @param size Size of the longest side wanted
+     * @return Variant name, null if the file has no variant
+     */
+    public static String negotiate(String fileId, int size) {
+        for (String variant : VARIANTS.tailMap(size, true).values()) {
+            if (Files.exists(getVariantFile(fileId, variant))) {
+                return variant;
+            }
+        }
+        for (String variant : VARIANTS.headMap(size, false).descendingMap().values()) {
+            if (Files.exists(getVariantFile(fileId, variant))) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the stored file of a variant.
+     *
+     * @param fileId File ID
+     * @param variant Variant name
+     * @return Stored file
+     */
+    public static Path getVariantFile(String fileId, String variant) {
+        return DirectoryUtil.getStorageDirectory().resolve(fileId + "_" + variant);
+    }
+
+    /**
+     * Encode, encrypt and store an image.
+     * The image is written aside, then moved in place so it is never read partially written.
+     *
+     * @param fileId File ID
+     * @param variant Variant
+     * @param privateKey Private key
+     * @param image Image
+     * @throws Exception e
+     */
+    private static void write(String fileId, String variant, String privateKey, BufferedImage image) throws Exception {
+        Path outputFile = getVariantFile(fileId, variant);
+        Path temporaryFile = getVariantFile(fileId, variant + "_tmp");
+        Cipher cipher = EncryptionUtil.getEncryptionCipher(privateKey);
+        try {
+            try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(temporaryFile), cipher)) {
+                ENCODER.encode(image, outputStream);
+            }
+            Files.move(temporaryFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.util.ImageUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoder of the images generated from the files.
+ *
+ * @author bgamard
+ */
+public class ImageEncoder {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ImageEncoder.class);
+
+    /**
+     * Default compression quality in percents.
+     */
+    private static final int DEFAULT_QUALITY = 85;
+
+    /**
+     * Image format.
+     */
+    private final String formatName;
+
+    /**
+     * Compression quality, from 0 to 1.
+     */
+    private final float quality;
+
+    /**
+     * True to write progressive images.
+     */
+    private final boolean progressive;
+
+    /**
+     * Build an encoder.
+     * The format falls back to JPEG if no image writer is available for it.
+     *
+     * @param formatName Image format, "jpeg" or "webp"
+     * @param quality Compression quality in percents
+     * @param progressive True to write progressive images
+     */
+    public ImageEncoder(String formatName, int quality, boolean progressive) {
+        if (!"jpeg".equals(formatName) && !("webp".equals(formatName) && ImageUtil.canWrite(formatName))) {
+            log.warn("Cannot write images in the format " + formatName + ", falling back to JPEG");
+            formatName = "jpeg";
+        }
+        this.formatName = formatName;
+        this.quality = Math.max(1, Math.min(quality, 100)) / 100f;
+        this.progressive = progressive;
+    }
+
+    /**
+     * Build the encoder configured by the environment.
+     *
+     * @return Image encoder
+     */
+    public static ImageEncoder fromEnvironment() {
+        String formatName = Strings.isNullOrEmpty(System.getenv(Constants.IMAGE_FORMAT_ENV)) ?
+                "jpeg" : System.getenv(Constants.IMAGE_FORMAT_ENV).toLowerCase();
+        return new ImageEncoder(formatName,
+                ConfigUtil.getEnvIntegerValue(Constants.IMAGE_QUALITY_ENV, DEFAULT_QUALITY),
+                !"false".equals(System.getenv(Constants.IMAGE_PROGRESSIVE_ENV)));
+    }
+
+    /**
+     * Encode an image.
+     *
+     * @param image Image
+     * @param outputStream Output stream
+     * @throws IOException e
+     */
+    public void encode(BufferedImage image, OutputStream outputStream) throws IOException {
+        ImageUtil.writeImage(image, formatName, quality, progressive, outputStream);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("formatName", formatName)
+                .add("quality", quality)
+                .add("progressive", progressive)
+                .toString();
+    }
+}
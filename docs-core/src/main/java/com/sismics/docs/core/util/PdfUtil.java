@@ -107,9 +107,10 @@ public class PdfUtil {
 
                 // Decrypt the file to a temporary file
                 Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, file.getPrivateKey());
-                FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
-                if (formatHandler != null) {
-                    formatHandler.appendToPdf(unencryptedFile, doc, fitImageToPage, margin, memUsageSettings, closer);
+                try (FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType())) {
+                    if (formatHandler != null) {
+                        formatHandler.appendToPdf(unencryptedFile, doc, fitImageToPage, margin, memUsageSettings, closer);
+                    }
                 }
             }
             
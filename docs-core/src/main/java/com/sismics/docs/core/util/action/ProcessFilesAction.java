@@ -1,5 +1,6 @@
 package com.sismics.docs.core.util.action;
 
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.dto.DocumentDto;
@@ -44,12 +45,13 @@ public class ProcessFilesAction implements Action {
                 Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
 
                 // Start the asynchronous processing
-                FileUtil.startProcessingFile(file.getId());
                 FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
                 event.setUserId("admin");
                 event.setLanguage(documentDto.getLanguage());
                 event.setFileId(file.getId());
                 event.setUnencryptedFile(unencryptedFile);
+                event.setPriority(FileProcessingPriority.REPROCESS);
+                FileUtil.startProcessingFile(event);
                 ThreadLocalContext.get().addAsyncEvent(event);
             }
         } catch (Exception e) {
@@ -12,6 +12,7 @@ import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -26,6 +27,11 @@ public class DocxFormatHandler implements FormatHandler {
      */
     private Path temporaryPdfFile;
 
+    /**
+     * PDF format handler of the temporary PDF file.
+     */
+    private final PdfFormatHandler pdfFormatHandler = new PdfFormatHandler();
+
     @Override
     public boolean accept(String mimeType) {
         return MimeType.OFFICE_DOCUMENT.equals(mimeType);
@@ -34,19 +40,30 @@ public class DocxFormatHandler implements FormatHandler {
     @Override
     public BufferedImage generateThumbnail(Path file) throws Exception {
         // Use the PDF format handler
-        return new PdfFormatHandler().generateThumbnail(getGeneratedPdf(file));
+        return pdfFormatHandler.generateThumbnail(getGeneratedPdf(file));
+    }
+
+    @Override
+    public BufferedImage generateThumbnail(Path file, int size) throws Exception {
+        // Use the PDF format handler
+        return pdfFormatHandler.generateThumbnail(getGeneratedPdf(file), size);
     }
 
     @Override
-    public String extractContent(String language, Path file) throws Exception {
+    public void extractContent(String language, Path file, Writer writer) throws Exception {
         // Use the PDF format handler
-        return new PdfFormatHandler().extractContent(language, getGeneratedPdf(file));
+        pdfFormatHandler.extractContent(language, getGeneratedPdf(file), writer);
     }
 
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         // Use the PDF format handler
-        new PdfFormatHandler().appendToPdf(getGeneratedPdf(file), doc, fitImageToPage, margin, memUsageSettings, closer);
+        pdfFormatHandler.appendToPdf(getGeneratedPdf(file), doc, fitImageToPage, margin, memUsageSettings, closer);
+    }
+
+    @Override
+    public void close() {
+        pdfFormatHandler.close();
     }
 
     /**
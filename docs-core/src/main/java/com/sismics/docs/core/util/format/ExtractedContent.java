@@ -0,0 +1,72 @@
+package com.sismics.docs.core.util.format;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Text content written by a format handler.
+ * The text beyond the maximum length is discarded.
+ *
+ * @author bgamard
+ */
+public class ExtractedContent extends Writer {
+    /**
+     * Maximum number of characters.
+     */
+    private final int maxLength;
+
+    /**
+     * Text written.
+     */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * True if some text has been discarded.
+     */
+    private boolean truncated;
+
+    /**
+     * Build an empty content.
+     *
+     * @param maxLength Maximum number of characters
+     */
+    public ExtractedContent(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        if (len > maxLength - buffer.length()) {
+            len = Math.max(0, maxLength - buffer.length());
+            truncated = true;
+        }
+        buffer.append(cbuf, off, len);
+    }
+
+    @Override
+    public void flush() {
+        // NOP
+    }
+
+    @Override
+    public void close() {
+        // NOP
+    }
+
+    public int getLength() {
+        return buffer.length();
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Read the whole text.
+     *
+     * @return Text
+     */
+    public String read() {
+        return buffer.toString();
+    }
+}
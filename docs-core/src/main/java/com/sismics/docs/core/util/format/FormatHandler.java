@@ -5,14 +5,22 @@ import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.awt.image.BufferedImage;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.file.Path;
 
 /**
  * A format handler.
+ * An instance handles a single file, and can keep it loaded between the calls until closed.
  *
  * @author bgamard
  */
-public interface FormatHandler {
+public interface FormatHandler extends AutoCloseable {
+    /**
+     * Separator of the pages in the extracted text content (form feed).
+     */
+    String PAGE_SEPARATOR = "\f";
+
     /**
      * Returns true if this format handler can handle this MIME type.
      *
@@ -31,14 +39,42 @@ public interface FormatHandler {
     BufferedImage generateThumbnail(Path file) throws Exception;
 
     /**
-     * Extract text content.
+     * Generate a thumbnail, as close to a size as the format allows to limit the memory used.
+     * The thumbnail can be larger, it is resized afterward.
+     *
+     * @param file File
+     * @param size Size of the longest side wanted
+     * @return Thumbnail
+     * @throws Exception e
+     */
+    default BufferedImage generateThumbnail(Path file, int size) throws Exception {
+        return generateThumbnail(file);
+    }
+
+    /**
+     * Extract text content, written as it is produced.
+     * Paginated formats separate the pages with {@link #PAGE_SEPARATOR}.
      *
      * @param language Language
      * @param file File
-     * @return Text content
+     * @param writer Writer of the text content
      * @throws Exception e
      */
-    String extractContent(String language, Path file) throws Exception;
+    void extractContent(String language, Path file, Writer writer) throws Exception;
+
+    /**
+     * Extract text content in memory.
+     *
+     * @param language Language
+     * @param file File
+     * @return Text content, null if there is none
+     * @throws Exception e
+     */
+    default String extractContent(String language, Path file) throws Exception {
+        StringWriter writer = new StringWriter();
+        extractContent(language, file, writer);
+        return writer.getBuffer().length() == 0 ? null : writer.toString();
+    }
 
     /**
      * Append to a PDF.
@@ -52,4 +88,11 @@ public interface FormatHandler {
      * @throws Exception e
      */
     void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception;
+
+    /**
+     * Release the file kept loaded between the calls.
+     */
+    @Override
+    default void close() {
+    }
 }
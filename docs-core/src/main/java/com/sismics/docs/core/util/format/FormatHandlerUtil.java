@@ -3,6 +3,7 @@ package com.sismics.docs.core.util.format;
 import com.google.common.collect.Lists;
 import com.sismics.util.ClasspathScanner;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -37,4 +38,27 @@ public class FormatHandlerUtil {
 
         return null;
     }
+
+    /**
+     * Split an extracted text content in pages.
+     * A content without page separator is a single page.
+     *
+     * @param content Text content
+     * @return Text of each page, the first page at index 0
+     */
+    public static List<String> splitPages(String content) {
+        List<String> pageList = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = content.indexOf(FormatHandler.PAGE_SEPARATOR, start)) != -1) {
+            pageList.add(content.substring(start, end));
+            start = end + FormatHandler.PAGE_SEPARATOR.length();
+        }
+
+        // The last page is terminated by a separator, or not
+        if (start < content.length() || pageList.isEmpty()) {
+            pageList.add(content.substring(start));
+        }
+        return pageList;
+    }
 }
@@ -5,6 +5,7 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.util.ImageUtil;
 import com.sismics.util.mime.MimeType;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -18,6 +19,7 @@ import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -45,13 +47,21 @@ public class ImageFormatHandler implements FormatHandler {
     }
 
     @Override
-    public String extractContent(String language, Path file) throws Exception {
+    public BufferedImage generateThumbnail(Path file, int size) throws Exception {
+        return ImageUtil.readSubsampled(file, size);
+    }
+
+    @Override
+    public void extractContent(String language, Path file, Writer writer) throws Exception {
         if (language == null || !ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
-            return null;
+            return;
         }
 
         try (InputStream inputStream = Files.newInputStream(file)) {
-            return FileUtil.ocrFile(language, ImageIO.read(inputStream));
+            String content = FileUtil.ocrFile(language, ImageIO.read(inputStream));
+            if (content != null) {
+                writer.write(content);
+            }
         }
     }
 
@@ -1,13 +1,16 @@
 package com.sismics.docs.core.util.format;
 
+import com.google.common.base.Strings;
 import com.google.common.io.Closer;
-import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.OcrService;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.util.mime.MimeType;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -15,9 +18,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.image.BufferedImage;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Future;
 
 /**
  * PDF format handler.
@@ -30,6 +37,26 @@ public class PdfFormatHandler implements FormatHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(PdfFormatHandler.class);
 
+    /**
+     * Resolution of the pages rendered for OCR.
+     */
+    private static final int OCR_DPI = 300;
+
+    /**
+     * Main memory used to parse a PDF, the rest is buffered in a temporary file.
+     */
+    private static final long MAX_MAIN_MEMORY = 1000000;
+
+    /**
+     * Cached PDF loaded file, shared by the thumbnail and the text extraction.
+     */
+    private PDDocument pdfDocument;
+
+    /**
+     * Path of the cached PDF loaded file.
+     */
+    private Path pdfFile;
+
     @Override
     public boolean accept(String mimeType) {
         return mimeType.equals(MimeType.APPLICATION_PDF);
@@ -37,41 +64,141 @@ public class PdfFormatHandler implements FormatHandler {
 
     @Override
     public BufferedImage generateThumbnail(Path file) throws Exception {
-        try (InputStream inputStream = Files.newInputStream(file);
-             PDDocument pdfDocument = PDDocument.load(inputStream)) {
-            PDFRenderer renderer = new PDFRenderer(pdfDocument);
-            return renderer.renderImage(0);
-        }
+        PDFRenderer renderer = new PDFRenderer(load(file));
+        return renderer.renderImage(0);
+    }
+
+    @Override
+    public BufferedImage generateThumbnail(Path file, int size) throws Exception {
+        // Render the first page directly at the size needed, the longest side is the same whatever the rotation
+        PDDocument pdfDocument = load(file);
+        PDRectangle cropBox = pdfDocument.getPage(0).getCropBox();
+        float dpi = size * 72f / Math.max(Math.max(cropBox.getWidth(), cropBox.getHeight()), 1);
+        PDFRenderer renderer = new PDFRenderer(pdfDocument);
+        return renderer.renderImageWithDPI(0, dpi, ImageType.RGB);
     }
 
     @Override
-    public String extractContent(String language, Path file) {
-        String content = null;
-        try (InputStream inputStream = Files.newInputStream(file);
-             PDDocument pdfDocument = PDDocument.load(inputStream)) {
-            content = new PDFTextStripper().getText(pdfDocument);
+    public void extractContent(String language, Path file, Writer writer) {
+        try {
+            PDDocument pdfDocument = load(file);
+
+            // The text is written page by page, unless the document has none
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setPageEnd(PAGE_SEPARATOR);
+            BlankPrefixWriter textWriter = new BlankPrefixWriter(writer);
+            stripper.writeText(pdfDocument, textWriter);
+
+            // No text content, try to OCR it
+            if (textWriter.isBlank() && language != null && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
+                ocr(language, pdfDocument, writer);
+            }
         } catch (Exception e) {
             log.error("Error while extracting text from the PDF", e);
         }
+    }
+
+    @Override
+    public void close() {
+        if (pdfDocument != null) {
+            try {
+                pdfDocument.close();
+            } catch (IOException e) {
+                log.error("Error closing the PDF", e);
+            }
+            pdfDocument = null;
+            pdfFile = null;
+        }
+    }
+
+    /**
+     * Load a PDF, once for all the calls on the same file until this handler is closed.
+     * The file is read as needed instead of being copied in memory.
+     *
+     * @param file PDF file
+     * @return PDF document
+     * @throws IOException e
+     */
+    private PDDocument load(Path file) throws IOException {
+        if (!file.equals(pdfFile)) {
+            close();
+            pdfDocument = PDDocument.load(file.toFile(), MemoryUsageSetting.setupMixed(MAX_MAIN_MEMORY));
+            pdfFile = file;
+        }
+        return pdfDocument;
+    }
 
-        // No text content, try to OCR it
-        if (language != null && content != null && content.trim().isEmpty() && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
-            StringBuilder sb = new StringBuilder();
-            try (InputStream inputStream = Files.newInputStream(file);
-                 PDDocument pdfDocument = PDDocument.load(inputStream)) {
-                PDFRenderer renderer = new PDFRenderer(pdfDocument);
-                for (int pageIndex = 0; pageIndex < pdfDocument.getNumberOfPages(); pageIndex++) {
-                    log.info("OCR page " + (pageIndex + 1) + "/" + pdfDocument.getNumberOfPages() + " of PDF file containing only images");
-                    sb.append(" ");
-                    sb.append(FileUtil.ocrFile(language, renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY)));
+    /**
+     * OCR the pages of a PDF.
+     * The pages are rendered one by one in this thread as the memory of the OCR service allows,
+     * OCR-ized in parallel, and written in order as soon as possible.
+     *
+     * @param language Language
+     * @param pdfDocument PDF document
+     * @param writer Writer of the text content
+     */
+    private void ocr(String language, PDDocument pdfDocument, Writer writer) {
+        OcrService ocrService = AppContext.getInstance().getOcrService();
+        Deque<Future<String>> pageQueue = new ArrayDeque<>();
+        try {
+            PDFRenderer renderer = new PDFRenderer(pdfDocument);
+            int pageCount = pdfDocument.getNumberOfPages();
+            for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+                PDRectangle cropBox = pdfDocument.getPage(pageIndex).getCropBox();
+                int memory = ocrService.admit(toPixels(cropBox.getWidth()), toPixels(cropBox.getHeight()));
+                BufferedImage image;
+                try {
+                    image = renderer.renderImageWithDPI(pageIndex, OCR_DPI, ImageType.GRAY);
+                } catch (Throwable e) {
+                    ocrService.release(memory);
+                    throw e;
+                }
+                log.info("OCR page " + (pageIndex + 1) + "/" + pageCount + " of PDF file containing only images");
+                pageQueue.add(ocrService.submit(language, image, memory));
+
+                // Write the first pages done
+                while (!pageQueue.isEmpty() && pageQueue.peek().isDone()) {
+                    writePage(pageQueue.poll(), writer);
                 }
-                return sb.toString();
-            } catch (Exception e) {
-                log.error("Error while OCR-izing the PDF", e);
             }
+
+            while (!pageQueue.isEmpty()) {
+                writePage(pageQueue.poll(), writer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error while OCR-izing the PDF", e);
+        }
+    }
+
+    /**
+     * Wait for the text of an OCR-ized page and write it.
+     * A page failing is written empty, so the next pages keep their number.
+     *
+     * @param page Future text of the page
+     * @param writer Writer of the text content
+     * @throws Exception e
+     */
+    private void writePage(Future<String> page, Writer writer) throws Exception {
+        try {
+            writer.write(Strings.nullToEmpty(OcrService.get(page)));
+        } catch (IOException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error while OCR-izing a page of the PDF", e);
         }
+        writer.write(PAGE_SEPARATOR);
+    }
 
-        return content;
+    /**
+     * Convert a length in PDF units to pixels at the OCR resolution.
+     *
+     * @param length Length in PDF units
+     * @return Length in pixels
+     */
+    private static int toPixels(float length) {
+        return (int) Math.ceil(length / 72 * OCR_DPI);
     }
 
     @Override
@@ -81,4 +208,55 @@ public class PdfFormatHandler implements FormatHandler {
         PDFMergerUtility pdfMergerUtility = new PDFMergerUtility();
         pdfMergerUtility.appendDocument(doc, mergeDoc);
     }
+
+    /**
+     * Writer holding back the text until a character other than a whitespace is written.
+     */
+    private static class BlankPrefixWriter extends FilterWriter {
+        /**
+         * Whitespaces written so far, null once a text has been written.
+         */
+        private StringBuilder blankPrefix = new StringBuilder();
+
+        BlankPrefixWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            write(new char[] { (char) c }, 0, 1);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            write(str.toCharArray(), off, len);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (blankPrefix != null) {
+                int end = off + len;
+                int i = off;
+                while (i < end && Character.isWhitespace(cbuf[i])) {
+                    i++;
+                }
+                if (i == end) {
+                    blankPrefix.append(cbuf, off, len);
+                    return;
+                }
+                out.write(blankPrefix.toString());
+                blankPrefix = null;
+            }
+            out.write(cbuf, off, len);
+        }
+
+        /**
+         * Returns true if only whitespaces have been written.
+         *
+         * @return True if blank
+         */
+        boolean isBlank() {
+            return blankPrefix != null;
+        }
+    }
 }
@@ -17,6 +17,7 @@ import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -48,9 +49,9 @@ public class PptxFormatHandler implements FormatHandler {
     }
 
     @Override
-    public String extractContent(String language, Path file) throws Exception {
+    public void extractContent(String language, Path file, Writer writer) throws Exception {
         XMLSlideShow pptx = loadPPtxFile(file);
-        return new SlideShowExtractor<>(pptx).getText();
+        writer.write(new SlideShowExtractor<>(pptx).getText());
     }
 
     @Override
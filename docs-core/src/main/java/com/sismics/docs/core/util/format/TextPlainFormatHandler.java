@@ -9,7 +9,10 @@ import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -20,6 +23,11 @@ import java.nio.file.Path;
  * @author bgamard
  */
 public class TextPlainFormatHandler implements FormatHandler {
+    /**
+     * Number of characters rendered in the thumbnail, more than a page.
+     */
+    private static final int THUMBNAIL_LENGTH = 10000;
+
     @Override
     public boolean accept(String mimeType) {
         return mimeType.equals(MimeType.TEXT_CSV) || mimeType.equals(MimeType.TEXT_PLAIN);
@@ -27,26 +35,68 @@ public class TextPlainFormatHandler implements FormatHandler {
 
     @Override
     public BufferedImage generateThumbnail(Path file) throws Exception {
+        // Use the PDF format handler
+        try (PdfFormatHandler pdfFormatHandler = new PdfFormatHandler()) {
+            return pdfFormatHandler.generateThumbnail(generateStartPdf(file));
+        }
+    }
+
+    @Override
+    public BufferedImage generateThumbnail(Path file, int size) throws Exception {
+        // Use the PDF format handler
+        try (PdfFormatHandler pdfFormatHandler = new PdfFormatHandler()) {
+            return pdfFormatHandler.generateThumbnail(generateStartPdf(file), size);
+        }
+    }
+
+    @Override
+    public void extractContent(String language, Path file, Writer writer) throws Exception {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.transferTo(writer);
+        }
+    }
+
+    /**
+     * Generate a PDF from the beginning of a text file.
+     *
+     * @param file File
+     * @return PDF file
+     * @throws Exception e
+     */
+    private Path generateStartPdf(Path file) throws Exception {
         Document output = new Document(PageSize.A4, 40, 40, 40, 40);
         Path tempFile = AppContext.getInstance().getFileService().createTemporaryFile();
         OutputStream pdfOutputStream = Files.newOutputStream(tempFile);
         PdfWriter.getInstance(output, pdfOutputStream);
 
         output.open();
-        String content = Files.readString(file, StandardCharsets.UTF_8);
+        String content = readStart(file);
         Font font = FontFactory.getFont("LiberationMono-Regular");
         Paragraph paragraph = new Paragraph(content, font);
         paragraph.setAlignment(Element.ALIGN_LEFT);
         output.add(paragraph);
         output.close();
 
-        // Use the PDF format handler
-        return new PdfFormatHandler().generateThumbnail(tempFile);
+        return tempFile;
     }
 
-    @Override
-    public String extractContent(String language, Path file) throws Exception {
-        return Files.readString(file, StandardCharsets.UTF_8);
+    /**
+     * Read the beginning of a text file.
+     *
+     * @param file File
+     * @return Text, up to {@link #THUMBNAIL_LENGTH} characters
+     * @throws IOException e
+     */
+    private String readStart(Path file) throws IOException {
+        char[] chars = new char[THUMBNAIL_LENGTH];
+        int length = 0;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int read;
+            while (length < chars.length && (read = reader.read(chars, length, chars.length - length)) != -1) {
+                length += read;
+            }
+        }
+        return new String(chars, 0, length);
     }
 
     @Override
@@ -1,7 +1,6 @@
 package com.sismics.docs.core.util.format;
 
 import com.google.common.collect.Lists;
-import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
 import com.sismics.util.io.InputStreamReaderThread;
 import com.sismics.util.mime.MimeType;
@@ -12,6 +11,9 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Arrays;
@@ -47,7 +49,7 @@ public class VideoFormatHandler implements FormatHandler {
     }
 
     @Override
-    public String extractContent(String language, Path file) {
+    public void extractContent(String language, Path file, Writer writer) {
         List<String> result = Lists.newLinkedList();
         result.add("mediainfo");
         result.add(file.toAbsolutePath().toString());
@@ -56,18 +58,18 @@ public class VideoFormatHandler implements FormatHandler {
         try {
             process = pb.start();
         } catch (IOException e) {
-            return null;
+            return;
         }
 
         // Consume the process error stream
         final String commandName = pb.command().get(0);
         new InputStreamReaderThread(process.getErrorStream(), commandName).start();
 
-        // Consume the data as a string
-        try (InputStream is = process.getInputStream()) {
-            return new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+        // Stream the data as text
+        try (Reader reader = new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)) {
+            reader.transferTo(writer);
         } catch (Exception e) {
-            return null;
+            // No content
         }
     }
 
@@ -0,0 +1,292 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.DocumentFacetsDto;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Indexing handler caching the search results of another handler.
+ * Results are cached until the search version of the handler changes.
+ *
+ * @author bgamard
+ */
+public class CachedIndexingHandler implements IndexingHandler {
+    /**
+     * Cached handler.
+     */
+    private final IndexingHandler handler;
+
+    /**
+     * Result pages of the recent searches, weighted by their number of documents. Null if disabled.
+     */
+    private final Cache<List<Object>, SearchResult> searchCache;
+
+    /**
+     * Constructor.
+     *
+     * @param handler Cached handler
+     */
+    public CachedIndexingHandler(IndexingHandler handler) {
+        this.handler = handler;
+
+        int searchCacheSize = ConfigUtil.getEnvIntegerValue(Constants.SEARCH_CACHE_SIZE_ENV, 10000);
+        if (searchCacheSize > 0) {
+            searchCache = CacheBuilder.newBuilder()
+                    .maximumWeight(searchCacheSize)
+                    .weigher((List<Object> key, SearchResult value) -> value.documentDtoList.size() + 1)
+                    .recordStats()
+                    .build();
+        } else {
+            searchCache = null;
+        }
+    }
+
+    @Override
+    public boolean accept() {
+        return handler.accept();
+    }
+
+    @Override
+    public void startUp() throws Exception {
+        handler.startUp();
+    }
+
+    @Override
+    public void shutDown() {
+        handler.shutDown();
+    }
+
+    @Override
+    public IndexStatus getStatus() {
+        IndexStatus status = handler.getStatus();
+        if (searchCache != null) {
+            CacheStats stats = searchCache.stats();
+            status.setSearchCacheHitCount(stats.hitCount())
+                    .setSearchCacheMissCount(stats.missCount())
+                    .setSearchCacheSize(searchCache.size());
+        }
+        return status;
+    }
+
+    @Override
+    public void clearIndex() {
+        handler.clearIndex();
+    }
+
+    @Override
+    public void startRebuild() throws Exception {
+        handler.startRebuild();
+    }
+
+    @Override
+    public void endRebuild(boolean success) {
+        handler.endRebuild(success);
+    }
+
+    @Override
+    public void createDocuments(List<Document> documentList) {
+        handler.createDocuments(documentList);
+    }
+
+    @Override
+    public void createFiles(List<File> fileList) {
+        handler.createFiles(fileList);
+    }
+
+    @Override
+    public void createDocument(Document document) {
+        handler.createDocument(document);
+    }
+
+    @Override
+    public void createFile(File file) {
+        handler.createFile(file);
+    }
+
+    @Override
+    public void updateDocument(Document document) {
+        handler.updateDocument(document);
+    }
+
+    @Override
+    public void updateFile(File file) {
+        handler.updateFile(file);
+    }
+
+    @Override
+    public void deleteDocument(String id) {
+        handler.deleteDocument(id);
+    }
+
+    @Override
+    public void createAcl(String sourceId, PermType perm, String targetId) {
+        handler.createAcl(sourceId, perm, targetId);
+    }
+
+    @Override
+    public void deleteAcl(String sourceId, PermType perm, String targetId) {
+        handler.deleteAcl(sourceId, perm, targetId);
+    }
+
+    @Override
+    public void updateDocumentAcls(List<String> documentIdList) {
+        handler.updateDocumentAcls(documentIdList);
+    }
+
+    @Override
+    public Object getSearchVersion() throws Exception {
+        return handler.getSearchVersion();
+    }
+
+    @Override
+    public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        Object version = searchCache == null ? null : handler.getSearchVersion();
+        if (version == null) {
+            handler.findByCriteria(paginatedList, suggestionList, criteria, sortCriteria);
+            return;
+        }
+
+        // Pages are shared by all users having the same targets, until the next change
+        List<Object> key = getSearchCacheKey(version, paginatedList, criteria, sortCriteria);
+        SearchResult searchResult = searchCache.getIfPresent(key);
+        if (searchResult == null) {
+            PaginatedList<DocumentDto> resolvedList = new PaginatedList<>(paginatedList.getLimit(), paginatedList.getOffset());
+            List<String> resolvedSuggestionList = new ArrayList<>();
+            handler.findByCriteria(resolvedList, resolvedSuggestionList, criteria, sortCriteria);
+            searchResult = new SearchResult(resolvedList.getResultCount(), copy(resolvedList.getResultList()), resolvedSuggestionList);
+            searchCache.put(key, searchResult);
+        }
+
+        // Each caller gets its own documents, the cached ones are never handed out
+        paginatedList.setResultCount(searchResult.resultCount);
+        paginatedList.setResultList(copy(searchResult.documentDtoList));
+        suggestionList.addAll(searchResult.suggestionList);
+    }
+
+    @Override
+    public DocumentFacetsDto findFacets(DocumentCriteria criteria) throws Exception {
+        return handler.findFacets(criteria);
+    }
+
+    @Override
+    public List<String> suggest(String search, List<String> targetIdList, int limit) throws Exception {
+        return handler.suggest(search, targetIdList, limit);
+    }
+
+    /**
+     * Build the search cache key of a search.
+     * Criteria are normalized, so equivalent searches share the same key.
+     *
+     * @param version Search version
+     * @param paginatedList Paginated list
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return Key
+     */
+    private List<Object> getSearchCacheKey(Object version, PaginatedList<DocumentDto> paginatedList, DocumentCriteria criteria, SortCriteria sortCriteria) {
+        return Arrays.asList(version,
+                sorted(criteria.getTargetIdList()),
+                Strings.nullToEmpty(criteria.getSimpleSearch()).trim(),
+                Strings.nullToEmpty(criteria.getFullSearch()).trim(),
+                criteria.getCreateDateMin() == null ? null : criteria.getCreateDateMin().getTime(),
+                criteria.getCreateDateMax() == null ? null : criteria.getCreateDateMax().getTime(),
+                criteria.getUpdateDateMin() == null ? null : criteria.getUpdateDateMin().getTime(),
+                criteria.getUpdateDateMax() == null ? null : criteria.getUpdateDateMax().getTime(),
+                sortedGroups(criteria.getTagIdList()),
+                sortedGroups(criteria.getExcludedTagIdList()),
+                Boolean.TRUE.equals(criteria.getShared()),
+                criteria.getLanguage(),
+                criteria.getCreatorId(),
+                Boolean.TRUE.equals(criteria.getActiveRoute()),
+                criteria.getMimeType(),
+                sorted(criteria.getTitleList()),
+                sortCriteria == null ? null : sortCriteria.getColumn(),
+                sortCriteria == null ? null : sortCriteria.isAsc(),
+                paginatedList.getOffset(),
+                paginatedList.getLimit());
+    }
+
+    /**
+     * Returns a sorted copy of a list.
+     *
+     * @param list List (optional)
+     * @return Sorted list
+     */
+    private List<String> sorted(List<String> list) {
+        List<String> sortedList = list == null ? new ArrayList<>() : new ArrayList<>(list);
+        Collections.sort(sortedList);
+        return sortedList;
+    }
+
+    /**
+     * Returns a sorted copy of groups of values, each group being sorted too.
+     *
+     * @param groupList Groups
+     * @return Sorted groups
+     */
+    private List<List<String>> sortedGroups(List<List<String>> groupList) {
+        List<List<String>> sortedGroupList = new ArrayList<>();
+        for (List<String> group : groupList) {
+            sortedGroupList.add(sorted(group));
+        }
+        sortedGroupList.sort(Comparator.comparing(Object::toString));
+        return sortedGroupList;
+    }
+
+    /**
+     * Returns an unmodifiable list of copies of documents.
+     *
+     * @param documentDtoList Documents
+     * @return Copies
+     */
+    private List<DocumentDto> copy(List<DocumentDto> documentDtoList) {
+        List<DocumentDto> copyList = new ArrayList<>(documentDtoList.size());
+        for (DocumentDto documentDto : documentDtoList) {
+            copyList.add(documentDto.copy());
+        }
+        return Collections.unmodifiableList(copyList);
+    }
+
+    /**
+     * Result page of a search, shared by the search cache.
+     */
+    private static class SearchResult {
+        /**
+         * Total number of results.
+         */
+        private final int resultCount;
+
+        /**
+         * Documents of the page.
+         */
+        private final List<DocumentDto> documentDtoList;
+
+        /**
+         * Search suggestions.
+         */
+        private final List<String> suggestionList;
+
+        SearchResult(int resultCount, List<DocumentDto> documentDtoList, List<String> suggestionList) {
+            this.resultCount = resultCount;
+            this.documentDtoList = documentDtoList;
+            this.suggestionList = Collections.unmodifiableList(suggestionList);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.util.SecurityUtil;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL search of documents, shared by the indexing handlers.
+ * Columns c0 to c8 of the query are the sortable columns of the document list.
+ *
+ * @author bgamard
+ */
+public class DocumentSearchSql {
+    /**
+     * Create the base query on documents, with their share count and current route step.
+     *
+     * @param extraColumns Columns selected after the document columns, empty for none
+     * @param parameterMap Query parameters (updated by side effects)
+     * @param criteria Search criteria
+     * @return Query, without conditions
+     */
+    public static StringBuilder createQuery(String extraColumns, Map<String, Object> parameterMap, DocumentCriteria criteria) {
+        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
+        sb.append(" s.count c5, ");
+        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
+        sb.append(extraColumns);
+        sb.append(" from T_DOCUMENT d ");
+        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
+                "   FROM T_SHARE s, T_ACL ac " +
+                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
+                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
+        sb.append(" left join (select rs.*, rs3.idDocument " +
+                "from T_ROUTE_STEP rs " +
+                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
+                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+
+        parameterMap.put("targetIdList", criteria.getTargetIdList());
+        return sb;
+    }
+
+    /**
+     * Add the search criteria to a query created by {@link #createQuery}.
+     * The joins are appended to the query, the conditions are returned to be added in the where clause.
+     *
+     * @param sb Query (updated by side effects)
+     * @param parameterMap Query parameters (updated by side effects)
+     * @param criteria Search criteria
+     * @return Conditions
+     */
+    public static List<String> addCriteria(StringBuilder sb, Map<String, Object> parameterMap, DocumentCriteria criteria) {
+        List<String> criteriaList = new ArrayList<>();
+        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            // Read permission is enough for searching
+            sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = d.DOC_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
+            sb.append(" left join T_DOCUMENT_TAG dta on dta.DOT_IDDOCUMENT_C = d.DOC_ID_C and dta.DOT_DELETEDATE_D is null ");
+            sb.append(" left join T_ACL a2 on a2.ACL_TARGETID_C in (:targetIdList) and a2.ACL_SOURCEID_C = dta.DOT_IDTAG_C and a2.ACL_PERM_C = 'READ' and a2.ACL_DELETEDATE_D is null ");
+            criteriaList.add("(a.ACL_ID_C is not null or a2.ACL_ID_C is not null)");
+        }
+        if (criteria.getCreateDateMin() != null) {
+            criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
+            parameterMap.put("createDateMin", criteria.getCreateDateMin());
+        }
+        if (criteria.getCreateDateMax() != null) {
+            criteriaList.add("d.DOC_CREATEDATE_D <= :createDateMax");
+            parameterMap.put("createDateMax", criteria.getCreateDateMax());
+        }
+        if (criteria.getUpdateDateMin() != null) {
+            criteriaList.add("d.DOC_UPDATEDATE_D >= :updateDateMin");
+            parameterMap.put("updateDateMin", criteria.getUpdateDateMin());
+        }
+        if (criteria.getUpdateDateMax() != null) {
+            criteriaList.add("d.DOC_UPDATEDATE_D <= :updateDateMax");
+            parameterMap.put("updateDateMax", criteria.getUpdateDateMax());
+        }
+        if (!criteria.getTitleList().isEmpty()) {
+            criteriaList.add("d.DOC_TITLE_C in :title");
+            parameterMap.put("title", criteria.getTitleList());
+        }
+        if (!criteria.getTagIdList().isEmpty()) {
+            int index = 0;
+            for (List<String> tagIdList : criteria.getTagIdList()) {
+                List<String> tagCriteriaList = Lists.newArrayList();
+                for (String tagId : tagIdList) {
+                    sb.append(String.format("left join T_DOCUMENT_TAG dt%d on dt%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt%d.DOT_IDTAG_C = :tagId%d and dt%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
+                    parameterMap.put("tagId" + index, tagId);
+                    tagCriteriaList.add(String.format("dt%d.DOT_ID_C is not null", index));
+                    index++;
+                }
+                criteriaList.add("(" + Joiner.on(" OR ").join(tagCriteriaList) + ")");
+            }
+        }
+        if (!criteria.getExcludedTagIdList().isEmpty()) {
+            int index = 0;
+            for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+                List<String> tagCriteriaList = Lists.newArrayList();
+                for (String tagId : tagIdList) {
+                    sb.append(String.format("left join T_DOCUMENT_TAG dtex%d on dtex%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dtex%d.DOT_IDTAG_C = :tagIdEx%d and dtex%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
+                    parameterMap.put("tagIdEx" + index, tagId);
+                    tagCriteriaList.add(String.format("dtex%d.DOT_ID_C is null", index));
+                    index++;
+                }
+                criteriaList.add("(" + Joiner.on(" AND ").join(tagCriteriaList) + ")");
+            }
+        }
+        if (criteria.getShared() != null && criteria.getShared()) {
+            criteriaList.add("s.count > 0");
+        }
+        if (criteria.getMimeType() != null) {
+            sb.append("left join T_FILE f0 on f0.FIL_IDDOC_C = d.DOC_ID_C and f0.FIL_MIMETYPE_C = :mimeType and f0.FIL_DELETEDATE_D is null");
+            parameterMap.put("mimeType", criteria.getMimeType());
+            criteriaList.add("f0.FIL_ID_C is not null");
+        }
+        if (criteria.getLanguage() != null) {
+            criteriaList.add("d.DOC_LANGUAGE_C = :language");
+            parameterMap.put("language", criteria.getLanguage());
+        }
+        if (criteria.getCreatorId() != null) {
+            criteriaList.add("d.DOC_IDUSER_C = :creatorId");
+            parameterMap.put("creatorId", criteria.getCreatorId());
+        }
+        if (criteria.getActiveRoute() != null && criteria.getActiveRoute()) {
+            criteriaList.add("rs2.RTP_ID_C is not null");
+        }
+
+        criteriaList.add("d.DOC_DELETEDATE_D is null");
+        return criteriaList;
+    }
+
+    /**
+     * Assemble the documents returned by a query created by {@link #createQuery}.
+     *
+     * @param l Rows
+     * @param highlightMap Highlights indexed by document ID
+     * @return Documents
+     */
+    public static List<DocumentDto> assemble(List<Object[]> l, Map<String, String> highlightMap) {
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        for (Object[] o : l) {
+            int i = 0;
+            DocumentDto documentDto = new DocumentDto();
+            documentDto.setId((String) o[i++]);
+            documentDto.setTitle((String) o[i++]);
+            documentDto.setDescription((String) o[i++]);
+            documentDto.setCreateTimestamp(((Timestamp) o[i++]).getTime());
+            documentDto.setLanguage((String) o[i++]);
+            documentDto.setFileId((String) o[i++]);
+            Number shareCount = (Number) o[i++];
+            documentDto.setShared(shareCount != null && shareCount.intValue() > 0);
+            documentDto.setActiveRoute(o[i++] != null);
+            documentDto.setCurrentStepName((String) o[i++]);
+            documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
+            documentDto.setHighlight(highlightMap.get(documentDto.getId()));
+            documentDtoList.add(documentDto);
+        }
+        return documentDtoList;
+    }
+}
@@ -0,0 +1,106 @@
+package com.sismics.docs.core.util.indexing;
+
+/**
+ * Status of the index storage and of the search result cache.
+ *
+ * @author bgamard
+ */
+public class IndexStatus {
+    /**
+     * Storage mode.
+     */
+    private String storage;
+
+    /**
+     * Size of the index (in bytes).
+     */
+    private long size;
+
+    /**
+     * Memory used by the index on the Java heap (in bytes).
+     */
+    private long heapSize;
+
+    /**
+     * Memory used by the index outside the Java heap, direct buffers or mapped files (in bytes).
+     */
+    private long offHeapSize;
+
+    /**
+     * Number of searches served by the result cache.
+     */
+    private long searchCacheHitCount;
+
+    /**
+     * Number of searches missing the result cache.
+     */
+    private long searchCacheMissCount;
+
+    /**
+     * Number of result pages in the cache.
+     */
+    private long searchCacheSize;
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public IndexStatus setStorage(String storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public IndexStatus setSize(long size) {
+        this.size = size;
+        return this;
+    }
+
+    public long getHeapSize() {
+        return heapSize;
+    }
+
+    public IndexStatus setHeapSize(long heapSize) {
+        this.heapSize = heapSize;
+        return this;
+    }
+
+    public long getOffHeapSize() {
+        return offHeapSize;
+    }
+
+    public IndexStatus setOffHeapSize(long offHeapSize) {
+        this.offHeapSize = offHeapSize;
+        return this;
+    }
+
+    public long getSearchCacheHitCount() {
+        return searchCacheHitCount;
+    }
+
+    public IndexStatus setSearchCacheHitCount(long searchCacheHitCount) {
+        this.searchCacheHitCount = searchCacheHitCount;
+        return this;
+    }
+
+    public long getSearchCacheMissCount() {
+        return searchCacheMissCount;
+    }
+
+    public IndexStatus setSearchCacheMissCount(long searchCacheMissCount) {
+        this.searchCacheMissCount = searchCacheMissCount;
+        return this;
+    }
+
+    public long getSearchCacheSize() {
+        return searchCacheSize;
+    }
+
+    public IndexStatus setSearchCacheSize(long searchCacheSize) {
+        this.searchCacheSize = searchCacheSize;
+        return this;
+    }
+}
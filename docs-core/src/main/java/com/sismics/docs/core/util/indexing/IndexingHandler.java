@@ -3,6 +3,7 @@ package com.sismics.docs.core.util.indexing;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.DocumentFacetsDto;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.jpa.PaginatedList;
@@ -35,13 +36,37 @@ public interface IndexingHandler {
      */
     void shutDown();
 
+    /**
+     * Returns the status of the index storage.
+     *
+     * @return Index status
+     */
+    IndexStatus getStatus();
+
     /**
      * Clear the index.
      */
     void clearIndex();
 
+    /**
+     * Start a rebuild of the index.
+     * The current index keeps serving searches and receiving updates until the end of the rebuild.
+     *
+     * @throws Exception e
+     */
+    void startRebuild() throws Exception;
+
+    /**
+     * End a rebuild of the index.
+     * On success, the changes made during the rebuild are applied to the new index, which replaces the current one.
+     *
+     * @param success False to discard the new index
+     */
+    void endRebuild(boolean success);
+
     /**
      * Index a list of documents.
+     * During a rebuild, documents are indexed in the new index.
      *
      * @param documentList All documents
      */
@@ -49,6 +74,7 @@ public interface IndexingHandler {
 
     /**
      * Index a list of files.
+     * During a rebuild, files are indexed in the new index.
      *
      * @param fileList All files
      */
@@ -107,6 +133,22 @@ public interface IndexingHandler {
      */
     void deleteAcl(String sourceId, PermType perm, String targetId);
 
+    /**
+     * Update the permissions of documents, after a change of the permissions they inherit.
+     *
+     * @param documentIdList Document IDs
+     */
+    void updateDocumentAcls(List<String> documentIdList);
+
+    /**
+     * Returns the version of the searched data.
+     * Search results can be reused as long as the version doesn't change.
+     *
+     * @return Version, null if search results must not be reused
+     * @throws Exception e
+     */
+    Object getSearchVersion() throws Exception;
+
     /**
      * Searches documents by criteria.
      *
@@ -117,4 +159,25 @@ public interface IndexingHandler {
      * @throws Exception e
      */
     void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception;
+
+    /**
+     * Count the documents matching criteria by tag, MIME type, language, creator and creation year.
+     *
+     * @param criteria Search criteria
+     * @return Facet counts
+     * @throws Exception e
+     */
+    DocumentFacetsDto findFacets(DocumentCriteria criteria) throws Exception;
+
+    /**
+     * Suggest search terms completing the last word of a search query.
+     * Only the words of the titles readable by the targets are suggested.
+     *
+     * @param search Search query
+     * @param targetIdList Targets reading the documents
+     * @param limit Maximum number of suggestions
+     * @return Suggestions
+     * @throws Exception e
+     */
+    List<String> suggest(String search, List<String> targetIdList, int limit) throws Exception;
 }
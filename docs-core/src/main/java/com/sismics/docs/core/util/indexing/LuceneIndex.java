@@ -0,0 +1,349 @@
+package com.sismics.docs.core.util.indexing;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Lucene index split in shards.
+ * Documents are routed to a shard by the hash of their ID, searches read all shards at once.
+ *
+ * @author bgamard
+ */
+public class LuceneIndex {
+    /**
+     * Path of the index in the file storage, null in memory storages.
+     */
+    private final Path path;
+
+    /**
+     * Directory of each shard.
+     */
+    private final List<Directory> directoryList;
+
+    /**
+     * Index writer of each shard.
+     */
+    private final List<IndexWriter> writerList;
+
+    /**
+     * Near-real-time searcher manager of each shard.
+     */
+    private final List<SearcherManager> searcherManagerList = new ArrayList<>();
+
+    /**
+     * Open an index.
+     *
+     * @param path Index path, null in memory storages
+     * @param directoryList Directory of each shard
+     * @param writerList Index writer of each shard
+     * @throws IOException e
+     */
+    public LuceneIndex(Path path, List<Directory> directoryList, List<IndexWriter> writerList) throws IOException {
+        this.path = path;
+        this.directoryList = directoryList;
+        this.writerList = writerList;
+        for (IndexWriter writer : writerList) {
+            searcherManagerList.add(new SearcherManager(writer, new SearcherFactory()));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public List<Directory> getDirectoryList() {
+        return directoryList;
+    }
+
+    /**
+     * Returns the index writer of the shard owning an ID.
+     *
+     * @param id Document or file ID
+     * @return Index writer
+     */
+    private IndexWriter getWriter(String id) {
+        return writerList.get(Math.floorMod(id.hashCode(), writerList.size()));
+    }
+
+    /**
+     * Add Lucene documents, each to its shard.
+     *
+     * @param documentList Lucene documents, with an "id" field
+     * @throws IOException e
+     */
+    public void addDocuments(List<Document> documentList) throws IOException {
+        if (writerList.size() == 1) {
+            writerList.get(0).addDocuments(documentList);
+            return;
+        }
+
+        List<List<Document>> shardDocumentList = new ArrayList<>();
+        for (int i = 0; i < writerList.size(); i++) {
+            shardDocumentList.add(new ArrayList<>());
+        }
+        for (Document document : documentList) {
+            shardDocumentList.get(Math.floorMod(document.get("id").hashCode(), writerList.size())).add(document);
+        }
+        for (int i = 0; i < writerList.size(); i++) {
+            if (!shardDocumentList.get(i).isEmpty()) {
+                writerList.get(i).addDocuments(shardDocumentList.get(i));
+            }
+        }
+    }
+
+    /**
+     * Replace a Lucene document.
+     *
+     * @param id Document or file ID
+     * @param document New Lucene document
+     * @throws IOException e
+     */
+    public void updateDocument(String id, Document document) throws IOException {
+        getWriter(id).updateDocument(new Term("id", id), document);
+    }
+
+    /**
+     * Replace all Lucene documents sharing an ID, atomically.
+     *
+     * @param id File ID
+     * @param documentList New Lucene documents, all with this ID
+     * @throws IOException e
+     */
+    public void updateDocuments(String id, List<Document> documentList) throws IOException {
+        getWriter(id).updateDocuments(new Term("id", id), documentList);
+    }
+
+    /**
+     * Delete the Lucene documents having an ID.
+     *
+     * @param id Document or file ID
+     * @throws IOException e
+     */
+    public void deleteDocument(String id) throws IOException {
+        getWriter(id).deleteDocuments(new Term("id", id));
+    }
+
+    /**
+     * Delete all Lucene documents.
+     *
+     * @throws IOException e
+     */
+    public void deleteAll() throws IOException {
+        for (IndexWriter writer : writerList) {
+            writer.deleteAll();
+        }
+    }
+
+    /**
+     * Set the user data of the next commits.
+     *
+     * @param commitData Commit user data
+     */
+    public void setLiveCommitData(Map<String, String> commitData) {
+        for (IndexWriter writer : writerList) {
+            writer.setLiveCommitData(commitData.entrySet());
+        }
+    }
+
+    /**
+     * Commit the shards having pending changes.
+     *
+     * @param commitData Commit user data
+     * @throws IOException e
+     */
+    public void commit(Map<String, String> commitData) throws IOException {
+        for (IndexWriter writer : writerList) {
+            if (writer.hasUncommittedChanges()) {
+                writer.setLiveCommitData(commitData.entrySet());
+                writer.commit();
+            }
+        }
+    }
+
+    /**
+     * Refresh the searchers of the shards having changed.
+     *
+     * @param blocking True to wait for a refresh in progress
+     * @throws IOException e
+     */
+    public void refresh(boolean blocking) throws IOException {
+        for (SearcherManager searcherManager : searcherManagerList) {
+            if (blocking) {
+                searcherManager.maybeRefreshBlocking();
+            } else {
+                searcherManager.maybeRefresh();
+            }
+        }
+    }
+
+    /**
+     * Acquire a searcher on all shards, to be closed after use.
+     *
+     * @param executor Executor searching the segments concurrently, null to search in the calling thread
+     * @return Searcher
+     * @throws IOException e
+     */
+    public Searcher acquire(Executor executor) throws IOException {
+        List<IndexSearcher> shardSearcherList = new ArrayList<>();
+        try {
+            for (SearcherManager searcherManager : searcherManagerList) {
+                shardSearcherList.add(searcherManager.acquire());
+            }
+            return new Searcher(shardSearcherList, executor);
+        } catch (IOException e) {
+            release(shardSearcherList);
+            throw e;
+        }
+    }
+
+    /**
+     * Release searchers acquired on the shards.
+     *
+     * @param shardSearcherList Searchers
+     * @throws IOException e
+     */
+    private void release(List<IndexSearcher> shardSearcherList) throws IOException {
+        for (int i = 0; i < shardSearcherList.size(); i++) {
+            searcherManagerList.get(i).release(shardSearcherList.get(i));
+        }
+    }
+
+    /**
+     * Returns the memory used by the shards on the Java heap.
+     * Only heap directories are accounted.
+     *
+     * @return Size in bytes
+     */
+    public long getHeapSize() {
+        long size = 0;
+        for (Directory directory : directoryList) {
+            if (directory instanceof RAMDirectory) {
+                size += ((RAMDirectory) directory).ramBytesUsed();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size of the index files of all shards.
+     *
+     * @return Size in bytes
+     * @throws IOException e
+     */
+    public long getSize() throws IOException {
+        long size = 0;
+        for (Directory directory : directoryList) {
+            for (String name : directory.listAll()) {
+                try {
+                    size += directory.fileLength(name);
+                } catch (IOException e) {
+                    // The file has been deleted by a merge in the meantime
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Close the index, pending changes are committed.
+     *
+     * @throws IOException e
+     */
+    public void close() throws IOException {
+        for (SearcherManager searcherManager : searcherManagerList) {
+            searcherManager.close();
+        }
+        for (IndexWriter writer : writerList) {
+            writer.close();
+        }
+        for (Directory directory : directoryList) {
+            directory.close();
+        }
+    }
+
+    /**
+     * Close the index, pending changes are discarded.
+     *
+     * @throws IOException e
+     */
+    public void rollback() throws IOException {
+        for (SearcherManager searcherManager : searcherManagerList) {
+            searcherManager.close();
+        }
+        for (IndexWriter writer : writerList) {
+            writer.rollback();
+        }
+        for (Directory directory : directoryList) {
+            directory.close();
+        }
+    }
+
+    /**
+     * Searcher on all shards of an index.
+     */
+    public class Searcher implements Closeable {
+        /**
+         * Searcher of each shard.
+         */
+        private final List<IndexSearcher> shardSearcherList;
+
+        /**
+         * Searcher on all shards.
+         */
+        private final IndexSearcher searcher;
+
+        /**
+         * Build a searcher on the shards.
+         *
+         * @param shardSearcherList Searcher of each shard
+         * @param executor Executor, null to search in the calling thread
+         */
+        private Searcher(List<IndexSearcher> shardSearcherList, Executor executor) throws IOException {
+            this.shardSearcherList = shardSearcherList;
+            IndexReader[] readers = new IndexReader[shardSearcherList.size()];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = shardSearcherList.get(i).getIndexReader();
+            }
+            this.searcher = new IndexSearcher(new MultiReader(readers, false), executor);
+        }
+
+        public IndexSearcher getSearcher() {
+            return searcher;
+        }
+
+        /**
+         * Returns the version of the searched index, changing with each refresh of a shard.
+         *
+         * @return Version
+         */
+        public long getVersion() {
+            long version = 0;
+            for (IndexSearcher shardSearcher : shardSearcherList) {
+                version += ((DirectoryReader) shardSearcher.getIndexReader()).getVersion();
+            }
+            return version;
+        }
+
+        @Override
+        public void close() throws IOException {
+            release(shardSearcherList);
+        }
+    }
+}
@@ -2,71 +2,154 @@ package com.sismics.docs.core.util.indexing;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.RouteStepDao;
+import com.sismics.docs.core.dao.ShareDao;
+import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.DocumentFacetsDto;
+import com.sismics.docs.core.dao.dto.RouteStepDto;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.ClasspathScanner;
+import com.sismics.util.EnvironmentUtil;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.CheckIndex;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.simple.SimpleQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
-import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.spell.LuceneDictionary;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.ByteBuffersDataOutput;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.SingleInstanceLockFactory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.sql.Timestamp;
+import java.text.BreakIterator;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Lucene indexing handler.
- * Documents and files are indexed in Lucene, but only used for fulltext search.
- * Other search criteria are still using the database.
+ * Documents and files are indexed in Lucene, fulltext searches are filtered, sorted and paginated by the index.
+ * Listing documents without fulltext search is still using the database.
+ * Writes are applied immediately and visible after the next searcher refresh,
+ * the index is committed on a time or size budget.
+ * A rebuild writes a new index while the live one keeps serving, then both are swapped.
+ * The index can be split in shards searched concurrently.
+ * Result pages are cached until the index or the searcher changes.
+ * Each commit records a watermark of the database changes it contains, the changes since the watermark
+ * are indexed again on startup, and a background job repairs the drift between the database and the index.
  *
  * @author bgamard
  */
@@ -78,19 +161,196 @@ public class LuceneIndexingHandler implements IndexingHandler {
     private static final Logger log = LoggerFactory.getLogger(LuceneIndexingHandler.class);
 
     /**
-     * Lucene directory.
+     * Version of the index layout, the index is rebuilt when it changes.
      */
-    private Directory directory;
+    private static final String INDEX_VERSION = "8";
 
     /**
-     * Directory reader.
+     * Commit user data key of the index layout version.
      */
-    private DirectoryReader directoryReader;
+    private static final String INDEX_VERSION_KEY = "version";
 
     /**
-     * Index writer.
+     * Commit user data key of the watermark, the timestamp before which all database changes are in the commit.
      */
-    private IndexWriter indexWriter;
+    private static final String WATERMARK_KEY = "watermark";
+
+    /**
+     * Maximum delay between a change in the database and its indexing.
+     * The watermark is kept this much behind the commits, and the reconciliation ignores more recent changes.
+     */
+    private static final long INDEXING_DELAY = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Length of the prefix of long texts used for sorting.
+     */
+    private static final int SORT_PREFIX_LENGTH = 100;
+
+    /**
+     * Target length of a highlight.
+     */
+    private static final int HIGHLIGHT_LENGTH = 100;
+
+    /**
+     * Maximum number of matched pages returned by file.
+     */
+    private static final int MAX_MATCHED_PAGES = 100;
+
+    /**
+     * Number of suggester candidates looked up by suggestion returned, the candidates are checked against the permissions.
+     */
+    private static final int SUGGESTION_CANDIDATE_FACTOR = 5;
+
+    /**
+     * Lucene documents holding a file content: single page files, and pages of paginated files.
+     */
+    private static final Query CONTENT_DOCTYPE_QUERY = new TermInSetQuery("doctype", new BytesRef("file"), new BytesRef("page"));
+
+    /**
+     * Type of the file content field, offsets are indexed for highlighting.
+     * The content is not stored, highlights read it from the database.
+     */
+    private static final FieldType CONTENT_FIELD_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+    static {
+        CONTENT_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_FIELD_TYPE.freeze();
+    }
+
+    /**
+     * Prefix of the index directories in the file storage.
+     */
+    private static final String INDEX_DIRECTORY_PREFIX = "index-";
+
+    /**
+     * Prefix of the shard directories in an index directory, used with more than one shard.
+     */
+    private static final String SHARD_DIRECTORY_PREFIX = "shard-";
+
+    /**
+     * Largest index mapped in memory by the automatic storage on a 32 bits JVM, limited by the address space.
+     */
+    private static final long MMAP_MAX_SIZE_32_BITS = 256L * 1024 * 1024;
+
+    /**
+     * Storage modes of the index.
+     */
+    private enum Storage {
+        /**
+         * Java heap, lost on restart.
+         */
+        RAM(false),
+
+        /**
+         * Direct buffers outside the Java heap, lost on restart.
+         */
+        BYTEBUFFERS(false),
+
+        /**
+         * Files read with NIO.
+         */
+        FILE(true),
+
+        /**
+         * Files mapped in memory.
+         */
+        MMAP(true);
+
+        /**
+         * True if the index is stored in files.
+         */
+        private final boolean persistent;
+
+        Storage(boolean persistent) {
+            this.persistent = persistent;
+        }
+    }
+
+    /**
+     * Storage of the index.
+     */
+    private volatile Storage storage;
+
+    /**
+     * Number of shards of the index.
+     */
+    private int shardCount;
+
+    /**
+     * Live index, its near-real-time searchers are refreshed in the background.
+     */
+    private volatile LuceneIndex index;
+
+    /**
+     * Executor searching the shards and segments concurrently, null to search in the calling thread.
+     */
+    private ExecutorService searchExecutor;
+
+    /**
+     * Writes to the live index and searcher acquisitions hold the read lock, swapping the index holds the write lock.
+     */
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    /**
+     * Index being rebuilt, null if no rebuild is running.
+     */
+    private volatile IndexRebuild indexRebuild;
+
+    /**
+     * Executor refreshing the searcher and committing the index.
+     */
+    private ScheduledExecutorService maintenanceExecutor;
+
+    /**
+     * Executor catching up and reconciling the index with the database.
+     */
+    private ScheduledExecutorService reconcileExecutor;
+
+    /**
+     * Watermark of the index found on startup, kept in the commits until the changes since are indexed again.
+     * Null if there is nothing to catch up.
+     */
+    private volatile Long catchUpWatermark;
+
+    /**
+     * Number of documents or files compared by a reconciliation batch.
+     */
+    private int reconcileBatchSize;
+
+    /**
+     * True if the reconciliation is comparing files, false for documents.
+     */
+    private boolean reconcileFiles;
+
+    /**
+     * ID of the last document or file compared by the reconciliation, null to start over.
+     */
+    private String reconcileLastId;
+
+    /**
+     * Number of changes applied since the last commit.
+     */
+    private final AtomicInteger uncommittedChangeCount = new AtomicInteger();
+
+    /**
+     * Maximum number of uncommitted changes before forcing a commit.
+     */
+    private int commitMaxChanges;
+
+    /**
+     * Search terms suggester, rebuilt when the index changes.
+     */
+    private volatile Lookup suggester;
+
+    /**
+     * Version of the index reader the suggester has been built from.
+     */
+    private long suggesterVersion = -1;
+
+    /**
+     * Number of writes to the index, part of the search version.
+     * Every change of the database affecting searches is followed by a write to the index.
+     */
+    private final AtomicLong generation = new AtomicLong();
 
     @Override
     public boolean accept() {
@@ -98,385 +358,1550 @@ public class LuceneIndexingHandler implements IndexingHandler {
         return true;
     }
 
-    @Override
-    public void startUp() throws Exception {
+    @Override
+    public void startUp() throws Exception {
+        shardCount = Math.max(1, ConfigUtil.getEnvIntegerValue(Constants.LUCENE_SHARDS_ENV, 1));
+        int searchThreadCount = ConfigUtil.getEnvIntegerValue(Constants.LUCENE_SEARCH_THREADS_ENV,
+                Runtime.getRuntime().availableProcessors());
+        if (searchThreadCount > 1) {
+            searchExecutor = Executors.newFixedThreadPool(searchThreadCount, new ThreadFactoryBuilder()
+                    .setNameFormat("lucene-search-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        log.info("Lucene index split in {} shards, searched by {} threads", shardCount, Math.max(1, searchThreadCount));
+
+        try {
+            initLucene();
+        } catch (Exception e) {
+            // An error occurred initializing Lucene, the index is out of date or broken, delete everything
+            log.info("Unable to initialize Lucene, cleaning up the index: " + e.getMessage());
+            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+            log.info("Deleted index size: {} bytes", getPathSize(luceneDirectory));
+            Files.walk(luceneDirectory)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(java.io.File::delete);
+
+            // Re-initialize and schedule a full reindex
+            initLucene();
+            RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
+            AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
+        }
+
+        // Memory storages start empty, index everything again
+        if (!storage.persistent && !EnvironmentUtil.isUnitTest()) {
+            log.info("Lucene storage is not persistent, scheduling a full reindex");
+            AppContext.getInstance().getAsyncEventBus().post(new RebuildIndexAsyncEvent());
+        }
+
+        startMaintenance();
+    }
+
+    private void initLucene() throws Exception {
+        storage = getStorage();
+        Path indexPath = null;
+        if (storage.persistent) {
+            indexPath = findIndexPath();
+            log.info("Using {} Lucene storage: {}", storage, indexPath);
+
+            // The documents are spread according to the number of shards, it can't change without a rebuild
+            boolean sharded = Files.isDirectory(indexPath.resolve(SHARD_DIRECTORY_PREFIX + 0));
+            if (indexExists(indexPath) && (sharded != shardCount > 1
+                    || Files.exists(indexPath.resolve(SHARD_DIRECTORY_PREFIX + shardCount)))) {
+                throw new Exception("Index shard count has changed");
+            }
+        } else {
+            log.info("Using {} Lucene storage", storage);
+        }
+
+        // Open the shards, near-real-time searchers are opened on the writers and see uncommitted changes
+        LuceneIndex newIndex = openIndex(indexPath);
+
+        // Check index version and rebuild it if necessary
+        Long watermark = null;
+        try {
+            for (Directory directory : newIndex.getDirectoryList()) {
+                checkIndex(directory);
+                Long shardWatermark = getWatermark(directory);
+                if (shardWatermark != null) {
+                    watermark = watermark == null ? shardWatermark : Math.min(watermark, shardWatermark);
+                }
+            }
+        } catch (Exception e) {
+            newIndex.rollback();
+            throw e;
+        }
+
+        // The changes since the last commit are indexed again in the background
+        catchUpWatermark = watermark;
+        newIndex.setLiveCommitData(getCommitData());
+        index = newIndex;
+    }
+
+    /**
+     * Check the version and the health of an existing shard.
+     *
+     * @param directory Shard directory
+     * @throws Exception If the shard is outdated or broken
+     */
+    private void checkIndex(Directory directory) throws Exception {
+        if (!DirectoryReader.indexExists(directory)) {
+            return;
+        }
+
+        log.info("Checking index health and version");
+        String indexVersion = SegmentInfos.readLatestCommit(directory).getUserData().get(INDEX_VERSION_KEY);
+        if (!INDEX_VERSION.equals(indexVersion)) {
+            throw new Exception("Index version " + indexVersion + " is outdated");
+        }
+        try (CheckIndex checkIndex = new CheckIndex(directory)) {
+            CheckIndex.Status status = checkIndex.checkIndex();
+            if (!status.clean) {
+                throw new Exception("Index is dirty");
+            }
+        }
+    }
+
+    /**
+     * Returns the watermark of the last commit of a shard.
+     *
+     * @param directory Shard directory
+     * @return Watermark, null if the shard has never been committed
+     * @throws IOException e
+     */
+    private Long getWatermark(Directory directory) throws IOException {
+        if (!DirectoryReader.indexExists(directory)) {
+            return null;
+        }
+        String watermark = SegmentInfos.readLatestCommit(directory).getUserData().get(WATERMARK_KEY);
+        return watermark == null ? null : Long.parseLong(watermark);
+    }
+
+    /**
+     * Returns the user data of the next commit.
+     * The watermark doesn't move while the changes of a previous run are being caught up.
+     *
+     * @return Commit user data
+     */
+    private Map<String, String> getCommitData() {
+        long watermark = System.currentTimeMillis() - INDEXING_DELAY;
+        Long pendingWatermark = catchUpWatermark;
+        if (pendingWatermark != null) {
+            watermark = Math.min(watermark, pendingWatermark);
+        }
+
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(INDEX_VERSION_KEY, INDEX_VERSION);
+        commitData.put(WATERMARK_KEY, Long.toString(watermark));
+        return commitData;
+    }
+
+    /**
+     * Open an index and its shards.
+     *
+     * @param path Index path, null for memory storages
+     * @return Index
+     * @throws IOException e
+     */
+    private LuceneIndex openIndex(Path path) throws IOException {
+        List<Directory> directoryList = new ArrayList<>();
+        List<IndexWriter> writerList = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            Path shardPath = path;
+            if (path != null && shardCount > 1) {
+                shardPath = Files.createDirectories(path.resolve(SHARD_DIRECTORY_PREFIX + i));
+            }
+            Directory directory = openDirectory(shardPath);
+            directoryList.add(directory);
+            writerList.add(createIndexWriter(directory));
+        }
+        return new LuceneIndex(path, directoryList, writerList);
+    }
+
+    /**
+     * Returns true if an index has been committed in a path.
+     *
+     * @param path Index path
+     * @return True if the index exists
+     * @throws IOException e
+     */
+    private boolean indexExists(Path path) throws IOException {
+        Path shardPath = path.resolve(SHARD_DIRECTORY_PREFIX + 0);
+        try (Directory directory = new NIOFSDirectory(Files.isDirectory(shardPath) ? shardPath : path, NoLockFactory.INSTANCE)) {
+            return DirectoryReader.indexExists(directory);
+        }
+    }
+
+    /**
+     * Returns the configured storage of the index.
+     * Without storage configured, or with AUTO, the index is mapped in memory if the JVM can map it,
+     * otherwise it is read from files.
+     *
+     * @return Storage
+     * @throws IOException e
+     */
+    private Storage getStorage() throws IOException {
+        ConfigDao configDao = new ConfigDao();
+        Config luceneStorageConfig = configDao.getById(ConfigType.LUCENE_DIRECTORY_STORAGE);
+        String luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
+        for (Storage value : Storage.values()) {
+            if (value.name().equals(luceneStorage)) {
+                return value;
+            }
+        }
+
+        if (!MMapDirectory.UNMAP_SUPPORTED) {
+            return Storage.FILE;
+        }
+        if (org.apache.lucene.util.Constants.JRE_IS_64BIT) {
+            return Storage.MMAP;
+        }
+        return getPathSize(findIndexPath()) <= MMAP_MAX_SIZE_32_BITS ? Storage.MMAP : Storage.FILE;
+    }
+
+    /**
+     * Returns the size of the index files in a path.
+     *
+     * @param path Index path
+     * @return Size in bytes
+     * @throws IOException e
+     */
+    private long getPathSize(Path path) throws IOException {
+        try (Stream<Path> stream = Files.walk(path)) {
+            return stream.filter(Files::isRegularFile)
+                    .mapToLong(file -> file.toFile().length())
+                    .sum();
+        }
+    }
+
+    /**
+     * Find the path of the live index in the file storage.
+     * The most recent index directory having a commit is the live one, others are leftovers of interrupted rebuilds.
+     * An index stored directly in the Lucene directory by older versions is used as is.
+     *
+     * @return Index path
+     * @throws IOException e
+     */
+    private Path findIndexPath() throws IOException {
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        List<Path> indexPathList;
+        try (Stream<Path> stream = Files.list(luceneDirectory)) {
+            indexPathList = stream
+                    .filter(path -> Files.isDirectory(path) && path.getFileName().toString().startsWith(INDEX_DIRECTORY_PREFIX))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+
+        Path livePath = null;
+        for (Path path : indexPathList) {
+            if (livePath == null && indexExists(path)) {
+                livePath = path;
+                continue;
+            }
+            deleteIndexPath(path);
+        }
+
+        if (livePath == null) {
+            try (Directory legacyDirectory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE)) {
+                if (DirectoryReader.indexExists(legacyDirectory)) {
+                    return luceneDirectory;
+                }
+            }
+            livePath = Files.createDirectories(newIndexPath());
+        }
+        return livePath;
+    }
+
+    /**
+     * Returns the path of a new index directory.
+     *
+     * @return New index path
+     */
+    private Path newIndexPath() {
+        return DirectoryUtil.getLuceneDirectory().resolve(INDEX_DIRECTORY_PREFIX + System.currentTimeMillis());
+    }
+
+    /**
+     * Delete an index from the file storage.
+     * Only index files are deleted from the Lucene directory itself, in order to keep other indexes.
+     *
+     * @param path Index path
+     */
+    private void deleteIndexPath(Path path) {
+        boolean legacy = path.equals(DirectoryUtil.getLuceneDirectory());
+        try (Stream<Path> stream = Files.walk(path)) {
+            stream.sorted(Comparator.reverseOrder())
+                    .filter(file -> !legacy || (Files.isRegularFile(file) && file.getParent().equals(path)))
+                    .map(Path::toFile)
+                    .forEach(java.io.File::delete);
+        } catch (IOException e) {
+            log.error("Error deleting the index " + path, e);
+        }
+    }
+
+    /**
+     * Open a Lucene directory.
+     *
+     * @param path Index path, null for memory storages
+     * @return Directory
+     * @throws IOException e
+     */
+    private Directory openDirectory(Path path) throws IOException {
+        switch (storage) {
+            case BYTEBUFFERS:
+                return new ByteBuffersDirectory(new SingleInstanceLockFactory(),
+                        () -> new ByteBuffersDataOutput(ByteBuffersDataOutput.DEFAULT_MIN_BITS_PER_BLOCK,
+                                ByteBuffersDataOutput.DEFAULT_MAX_BITS_PER_BLOCK,
+                                ByteBuffer::allocateDirect, ByteBuffersDataOutput.NO_REUSE),
+                        ByteBuffersDirectory.OUTPUT_AS_MANY_BUFFERS);
+            case FILE:
+                return new NIOFSDirectory(path, NoLockFactory.INSTANCE);
+            case MMAP:
+                return new MMapDirectory(path, NoLockFactory.INSTANCE);
+            default:
+                return new RAMDirectory();
+        }
+    }
+
+    /**
+     * Create an index writer.
+     *
+     * @param directory Directory
+     * @return Index writer
+     * @throws IOException e
+     */
+    private IndexWriter createIndexWriter(Directory directory) throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setCommitOnClose(true);
+        config.setMergeScheduler(new ConcurrentMergeScheduler());
+        return new IndexWriter(directory, config);
+    }
+
+    /**
+     * Start the background refresh of the searcher and the periodic commit of the index.
+     * Writes are visible to searches after a refresh, and durable after a commit.
+     */
+    private void startMaintenance() {
+        commitMaxChanges = ConfigUtil.getEnvIntegerValue(Constants.LUCENE_COMMIT_MAX_CHANGES_ENV, 1000);
+        if (EnvironmentUtil.isUnitTest()) {
+            // Searcher is refreshed synchronously after each write
+            return;
+        }
+
+        int refreshInterval = ConfigUtil.getEnvIntegerValue(Constants.LUCENE_REFRESH_INTERVAL_ENV, 1000);
+        int commitInterval = ConfigUtil.getEnvIntegerValue(Constants.LUCENE_COMMIT_INTERVAL_ENV, 30);
+        int suggesterRefreshInterval = ConfigUtil.getEnvIntegerValue(Constants.LUCENE_SUGGESTER_REFRESH_INTERVAL_ENV, 60);
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-maintenance-%d")
+                .setDaemon(true)
+                .build());
+        maintenanceExecutor.scheduleWithFixedDelay(this::refreshSearcher, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        maintenanceExecutor.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.SECONDS);
+        maintenanceExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                refreshSuggester();
+            } catch (Throwable e) {
+                log.error("Error building the search suggester", e);
+            }
+        }, 0, suggesterRefreshInterval, TimeUnit.SECONDS);
+        log.info("Lucene searcher refreshed every {}ms, index committed every {}s or {} changes", refreshInterval, commitInterval, commitMaxChanges);
+
+        // Catch up with the last run, then compare the index with the database batch after batch
+        int reconcileInterval = ConfigUtil.getEnvIntegerValue(Constants.LUCENE_RECONCILE_INTERVAL_ENV, 10);
+        reconcileBatchSize = ConfigUtil.getEnvIntegerValue(Constants.LUCENE_RECONCILE_BATCH_SIZE_ENV, 500);
+        reconcileExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-reconcile-%d")
+                .setDaemon(true)
+                .build());
+        reconcileExecutor.execute(this::catchUp);
+        if (reconcileInterval > 0 && reconcileBatchSize > 0) {
+            reconcileExecutor.scheduleWithFixedDelay(this::reconcile, reconcileInterval, reconcileInterval, TimeUnit.SECONDS);
+            log.info("Lucene index reconciled with the database by batches of {} every {}s", reconcileBatchSize, reconcileInterval);
+        }
+    }
+
+    /**
+     * Index again the documents and files changed since the watermark found on startup.
+     * They may be missing from the index if the application stopped before committing them.
+     */
+    private void catchUp() {
+        Long watermark = catchUpWatermark;
+        if (watermark == null) {
+            return;
+        }
+
+        try {
+            AtomicReference<List<String>> changedIdList = new AtomicReference<>();
+            TransactionUtil.handle(() -> {
+                Date date = new Date(watermark);
+                List<String> idList = new ArrayList<>(new DocumentDao().findIdChangedSince(date));
+                idList.addAll(new FileDao().findIdChangedSince(date));
+                changedIdList.set(idList);
+            });
+            if (changedIdList.get() == null) {
+                log.error("Unable to read the changes since the index watermark, catch up postponed to the next startup");
+                return;
+            }
+
+            log.info("Catching up the index with {} documents and files changed since {}", changedIdList.get().size(), new Date(watermark));
+            for (List<String> idList : Lists.partition(changedIdList.get(), 100)) {
+                if (!reindex(idList)) {
+                    log.error("Error catching up the index, catch up postponed to the next startup");
+                    return;
+                }
+            }
+            catchUpWatermark = null;
+            log.info("Index caught up with the database");
+        } catch (Throwable e) {
+            log.error("Error catching up the index", e);
+        }
+    }
+
+    /**
+     * Compare the next batch of documents or files between the database and the index, and repair the drift.
+     * Documents and files missing from the index or having another update date are indexed again,
+     * the ones deleted from the database are deleted from the index.
+     */
+    private void reconcile() {
+        if (indexRebuild != null) {
+            // The index will be up to date at the end of the rebuild
+            return;
+        }
+
+        try {
+            boolean files = reconcileFiles;
+            String lastId = reconcileLastId;
+            AtomicReference<Map<String, Date>> page = new AtomicReference<>();
+            TransactionUtil.handle(() -> page.set(files ?
+                    new FileDao().findUpdateDateAfterId(lastId, reconcileBatchSize) :
+                    new DocumentDao().findUpdateDateAfterId(lastId, reconcileBatchSize)));
+            Map<String, Date> updateDateMap = page.get();
+            if (updateDateMap == null) {
+                return;
+            }
+
+            // The last page also covers the index entries after the last ID of the database
+            boolean lastPage = updateDateMap.size() < reconcileBatchSize;
+            String pageLastId = lastPage ? null : Iterables.getLast(updateDateMap.keySet());
+            Map<String, Long> indexedUpdateDateMap = getIndexedUpdateDates(files ? "file" : "document", lastId, pageLastId);
+
+            // Recent changes may still be on their way to the index
+            long maxUpdateDate = System.currentTimeMillis() - INDEXING_DELAY;
+            List<String> driftIdList = new ArrayList<>();
+            for (Map.Entry<String, Date> entry : updateDateMap.entrySet()) {
+                Long indexedUpdateDate = indexedUpdateDateMap.remove(entry.getKey());
+                long updateDate = entry.getValue().getTime();
+                if ((indexedUpdateDate == null || indexedUpdateDate != updateDate) && updateDate < maxUpdateDate) {
+                    driftIdList.add(entry.getKey());
+                }
+            }
+            driftIdList.addAll(indexedUpdateDateMap.keySet());
+
+            if (!driftIdList.isEmpty()) {
+                log.warn("Index drift detected on {} {}, indexing them again", driftIdList.size(), files ? "files" : "documents");
+                reindex(driftIdList);
+            }
+
+            if (lastPage) {
+                reconcileFiles = !files;
+                reconcileLastId = null;
+            } else {
+                reconcileLastId = pageLastId;
+            }
+        } catch (Throwable e) {
+            log.error("Error reconciling the index with the database", e);
+        }
+    }
+
+    /**
+     * Returns the update dates of the documents or files in the index, in a range of IDs.
+     *
+     * @param doctype Document type (document or file)
+     * @param lowerId Lower ID, excluded, null for no lower bound
+     * @param upperId Upper ID, included, null for no upper bound
+     * @return Update dates indexed by ID, null for an entry without update date
+     * @throws IOException e
+     */
+    private Map<String, Long> getIndexedUpdateDates(String doctype, String lowerId, String upperId) throws IOException {
+        Query query = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("doctype", doctype)), BooleanClause.Occur.FILTER)
+                .add(TermRangeQuery.newStringRange("id", lowerId, upperId, false, true), BooleanClause.Occur.FILTER)
+                .build();
+
+        Map<String, Long> updateDateMap = new HashMap<>();
+        try (LuceneIndex.Searcher indexSearcher = acquireSearcher(null)) {
+            indexSearcher.getSearcher().search(query, new SimpleCollector() {
+                private LeafReader reader;
+                private NumericDocValues updateDates;
+
+                @Override
+                protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                    reader = context.reader();
+                    updateDates = DocValues.getNumeric(reader, "update_date");
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    String id = reader.document(doc, Collections.singleton("id")).get("id");
+                    updateDateMap.put(id, updateDates.advanceExact(doc) ? updateDates.longValue() : null);
+                }
+
+                @Override
+                public ScoreMode scoreMode() {
+                    return ScoreMode.COMPLETE_NO_SCORES;
+                }
+            });
+        }
+        return updateDateMap;
+    }
+
+    /**
+     * Index again documents and files in the live index, from the current state of the database.
+     *
+     * @param idList Document or file IDs
+     * @return True if the documents and files have been read
+     */
+    private boolean reindex(List<String> idList) {
+        AtomicBoolean done = new AtomicBoolean();
+        TransactionUtil.handle(() -> {
+            List<org.apache.lucene.document.Document> luceneDocumentList = loadDocuments(idList);
+            handle(index -> {
+                // Deleted documents and files are not added again
+                for (String id : idList) {
+                    captureChange(id);
+                    index.deleteDocument(id);
+                }
+                index.addDocuments(luceneDocumentList);
+            });
+            done.set(true);
+        });
+        return done.get();
+    }
+
+    /**
+     * Refresh the searcher if the index has changed.
+     */
+    private void refreshSearcher() {
+        indexLock.readLock().lock();
+        try {
+            index.refresh(false);
+        } catch (Throwable e) {
+            log.error("Error refreshing the index searcher", e);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Acquire a searcher on the live index, to be closed after use.
+     * The index cannot be swapped and closed between its read and the acquisition,
+     * the searcher keeps its readers open after a swap until it is closed.
+     *
+     * @param executor Executor searching the segments concurrently, null to search in the calling thread
+     * @return Searcher
+     * @throws IOException e
+     */
+    private LuceneIndex.Searcher acquireSearcher(Executor executor) throws IOException {
+        indexLock.readLock().lock();
         try {
-            initLucene();
-        } catch (Exception e) {
-            // An error occurred initializing Lucene, the index is out of date or broken, delete everything
-            log.info("Unable to initialize Lucene, cleaning up the index: " + e.getMessage());
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            Files.walk(luceneDirectory)
-                    .sorted(Comparator.reverseOrder())
-                    .map(Path::toFile)
-                    .forEach(java.io.File::delete);
-
-            // Re-initialize and schedule a full reindex
-            initLucene();
-            RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
-            AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
+            return index.acquire(executor);
+        } finally {
+            indexLock.readLock().unlock();
         }
     }
 
-    private void initLucene() throws Exception {
-        ConfigDao configDao = new ConfigDao();
-        Config luceneStorageConfig = configDao.getById(ConfigType.LUCENE_DIRECTORY_STORAGE);
-        String luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
+    /**
+     * Rebuild the search suggester if the index has changed since the last build.
+     *
+     * @throws IOException e
+     */
+    private synchronized void refreshSuggester() throws IOException {
+        try (LuceneIndex.Searcher indexSearcher = acquireSearcher(null)) {
+            if (indexSearcher.getVersion() == suggesterVersion) {
+                return;
+            }
 
-        // RAM directory storage by default
-        if (luceneStorage == null || luceneStorage.equals("RAM")) {
-            directory = new RAMDirectory();
-            log.info("Using RAM Lucene storage");
-        } else if (luceneStorage.equals("FILE")) {
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            log.info("Using file Lucene storage: {}", luceneDirectory);
-            directory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE);
+            // Temporary files of the build are kept in memory, out of the index directory
+            FuzzySuggester fuzzySuggester = new FuzzySuggester(new ByteBuffersDirectory(), "suggester", new StandardAnalyzer());
+            fuzzySuggester.build(new LuceneDictionary(indexSearcher.getSearcher().getIndexReader(), "title"));
+            suggester = fuzzySuggester;
+            suggesterVersion = indexSearcher.getVersion();
         }
+    }
 
-        // Create an index writer
-        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
-        config.setCommitOnClose(true);
-        config.setMergeScheduler(new ConcurrentMergeScheduler());
-        indexWriter = new IndexWriter(directory, config);
-
-        // Check index version and rebuild it if necessary
-        if (DirectoryReader.indexExists(directory)) {
-            log.info("Checking index health and version");
-            try (CheckIndex checkIndex = new CheckIndex(directory)) {
-                CheckIndex.Status status = checkIndex.checkIndex();
-                if (!status.clean) {
-                    throw new Exception("Index is dirty");
-                }
-            }
+    /**
+     * Commit pending changes to the index.
+     */
+    private void commit() {
+        indexLock.readLock().lock();
+        try {
+            uncommittedChangeCount.set(0);
+            index.commit(getCommitData());
+        } catch (Throwable e) {
+            log.error("Cannot commit index writer", e);
+        } finally {
+            indexLock.readLock().unlock();
         }
     }
 
     @Override
     public void shutDown() {
-        if (directoryReader != null) {
+        if (reconcileExecutor != null) {
+            reconcileExecutor.shutdown();
             try {
-                directoryReader.close();
-            } catch (IOException e) {
-                log.error("Error closing the index reader", e);
+                reconcileExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
             }
         }
-        if (indexWriter != null) {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdown();
             try {
-                indexWriter.close();
-            } catch (IOException e) {
-                log.error("Error closing the index writer, index may be corrupt", e);
+                maintenanceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
             }
         }
-        if (directory != null) {
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+        endRebuild(false);
+        if (index != null) {
             try {
-                directory.close();
+                index.commit(getCommitData());
+                index.close();
             } catch (IOException e) {
-                log.error("Error closing Lucene index", e);
+                log.error("Error closing the index, index may be corrupt", e);
             }
         }
     }
 
+    @Override
+    public IndexStatus getStatus() {
+        LuceneIndex currentIndex = index;
+        long size = 0;
+        try {
+            size = currentIndex.getSize();
+        } catch (IOException e) {
+            log.error("Error computing the index size", e);
+        }
+
+        IndexStatus status = new IndexStatus()
+                .setStorage(storage.name())
+                .setSize(size);
+        switch (storage) {
+            case RAM:
+                status.setHeapSize(currentIndex.getHeapSize());
+                break;
+            case BYTEBUFFERS:
+            case MMAP:
+                status.setOffHeapSize(size);
+                break;
+            default:
+                break;
+        }
+        return status;
+    }
+
     @Override
     public void clearIndex() {
-        handle(IndexWriter::deleteAll);
+        handle(LuceneIndex::deleteAll);
+    }
+
+    @Override
+    public synchronized void startRebuild() throws Exception {
+        if (indexRebuild != null) {
+            throw new IllegalStateException("An index rebuild is already running");
+        }
+
+        Path rebuildPath = storage.persistent ? Files.createDirectories(newIndexPath()) : null;
+        indexRebuild = new IndexRebuild(openIndex(rebuildPath));
+        log.info("Rebuilding the index in {} storage {}", storage, rebuildPath == null ? "" : rebuildPath);
+    }
+
+    @Override
+    public synchronized void endRebuild(boolean success) {
+        IndexRebuild rebuild = indexRebuild;
+        if (rebuild == null) {
+            return;
+        }
+
+        if (!success) {
+            // Discard the new index, the live one is still up to date
+            indexRebuild = null;
+            closeIndex(rebuild.index);
+            log.info("Index rebuild discarded");
+            return;
+        }
+
+        LuceneIndex oldIndex;
+        try {
+            // Replay the changes captured during the rebuild, the live index is still receiving updates
+            replay(rebuild);
+
+            indexLock.writeLock().lock();
+            try {
+                // Replay the last changes and swap the indexes, writes to the live index are blocked
+                replay(rebuild);
+                rebuild.index.commit(getCommitData());
+                rebuild.index.refresh(true);
+
+                oldIndex = index;
+                index = rebuild.index;
+                indexRebuild = null;
+                generation.incrementAndGet();
+                uncommittedChangeCount.set(0);
+                suggesterVersion = -1;
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("Error swapping the rebuilt index, keeping the live index", e);
+            indexRebuild = null;
+            closeIndex(rebuild.index);
+            return;
+        }
+
+        // Searches in progress keep their reader on the old index until they release it
+        long oldSize = 0;
+        long newSize = 0;
+        try {
+            oldSize = oldIndex.getSize();
+            newSize = rebuild.index.getSize();
+        } catch (IOException e) {
+            log.error("Error computing the index size", e);
+        }
+        closeIndex(oldIndex);
+        log.info("Rebuilt index swapped with the live index, size: {} bytes (previously {} bytes)", newSize, oldSize);
+    }
+
+    /**
+     * Apply the changes captured during a rebuild to the new index, from the current state of the database.
+     *
+     * @param rebuild Index rebuild
+     */
+    private void replay(IndexRebuild rebuild) {
+        while (!rebuild.changedIdSet.isEmpty()) {
+            List<String> idList = new ArrayList<>();
+            Iterator<String> iterator = rebuild.changedIdSet.iterator();
+            while (iterator.hasNext() && idList.size() < 100) {
+                idList.add(iterator.next());
+                iterator.remove();
+            }
+
+            TransactionUtil.handle(() -> {
+                List<org.apache.lucene.document.Document> luceneDocumentList = loadDocuments(idList);
+                try {
+                    // Deleted documents and files are not added again
+                    for (String id : idList) {
+                        rebuild.index.deleteDocument(id);
+                    }
+                    rebuild.index.addDocuments(luceneDocumentList);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Build the Lucene documents of documents and files from the current state of the database.
+     * Deleted documents and files are skipped.
+     *
+     * @param idList Document or file IDs
+     * @return Lucene documents
+     */
+    private List<org.apache.lucene.document.Document> loadDocuments(List<String> idList) {
+        DocumentDao documentDao = new DocumentDao();
+        FileDao fileDao = new FileDao();
+        List<Document> documentList = new ArrayList<>();
+        List<File> fileList = new ArrayList<>();
+        for (String id : idList) {
+            Document document = documentDao.getById(id);
+            if (document != null) {
+                documentList.add(document);
+                continue;
+            }
+            File file = fileDao.getActiveById(id);
+            if (file != null) {
+                fileList.add(file);
+            }
+        }
+
+        List<org.apache.lucene.document.Document> luceneDocumentList = new ArrayList<>(getDocumentsFromDocuments(documentList));
+        luceneDocumentList.addAll(getDocumentsFromFiles(fileList));
+        return luceneDocumentList;
+    }
+
+    /**
+     * Close an index, and delete it from the file storage.
+     *
+     * @param closedIndex Index to close
+     */
+    private void closeIndex(LuceneIndex closedIndex) {
+        try {
+            closedIndex.rollback();
+        } catch (IOException e) {
+            log.error("Error closing the index", e);
+        }
+        if (closedIndex.getPath() != null) {
+            deleteIndexPath(closedIndex.getPath());
+        }
+    }
+
+    /**
+     * Capture a change of the live index to replay it on the index being rebuilt.
+     *
+     * @param id Document or file ID
+     */
+    private void captureChange(String id) {
+        IndexRebuild rebuild = indexRebuild;
+        if (rebuild != null) {
+            rebuild.changedIdSet.add(id);
+        }
     }
 
     @Override
     public void createDocuments(List<Document> documentList) {
-        handle(indexWriter -> {
+        List<org.apache.lucene.document.Document> luceneDocumentList = getDocumentsFromDocuments(documentList);
+        IndexRebuild rebuild = indexRebuild;
+        if (rebuild != null) {
+            try {
+                rebuild.index.addDocuments(luceneDocumentList);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        handle(index -> {
             for (Document document : documentList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-                indexWriter.addDocument(luceneDocument);
+                captureChange(document.getId());
             }
+            index.addDocuments(luceneDocumentList);
         });
     }
 
     @Override
     public void createFiles(List<File> fileList) {
-        handle(indexWriter -> {
+        List<org.apache.lucene.document.Document> luceneDocumentList = getDocumentsFromFiles(fileList);
+        IndexRebuild rebuild = indexRebuild;
+        if (rebuild != null) {
+            try {
+                rebuild.index.addDocuments(luceneDocumentList);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        handle(index -> {
             for (File file : fileList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-                indexWriter.addDocument(luceneDocument);
+                captureChange(file.getId());
             }
+            index.addDocuments(luceneDocumentList);
         });
     }
 
     @Override
     public void createDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.addDocument(luceneDocument);
+        List<org.apache.lucene.document.Document> luceneDocumentList = getDocumentsFromDocuments(Collections.singletonList(document));
+        handle(index -> {
+            // Replaced if the catch up or the reconciliation has already indexed it
+            captureChange(document.getId());
+            index.updateDocument(document.getId(), luceneDocumentList.get(0));
         });
     }
 
     @Override
     public void createFile(final File file) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-            indexWriter.addDocument(luceneDocument);
+        handle(index -> {
+            // Replaced if the catch up or the reconciliation has already indexed it
+            captureChange(file.getId());
+            index.updateDocuments(file.getId(), getDocumentsFromFile(file));
         });
     }
 
     @Override
     public void updateFile(final File file) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-            indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
+        handle(index -> {
+            captureChange(file.getId());
+            index.updateDocuments(file.getId(), getDocumentsFromFile(file));
         });
     }
 
     @Override
     public void updateDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+        updateDocuments(Collections.singletonList(document));
+    }
+
+    /**
+     * Update a list of indexed documents.
+     *
+     * @param documentList Documents
+     */
+    private void updateDocuments(List<Document> documentList) {
+        DocumentIndexData indexData = new DocumentIndexData(documentList);
+        handle(index -> {
+            for (Document document : documentList) {
+                captureChange(document.getId());
+                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, indexData);
+                index.updateDocument(document.getId(), luceneDocument);
+            }
         });
     }
 
     @Override
     public void deleteDocument(final String id) {
-        handle(indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
+        handle(index -> {
+            captureChange(id);
+            index.deleteDocument(id);
+        });
     }
 
     @Override
     public void createAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        if (perm == PermType.READ) {
+            updateAclSource(sourceId);
+        }
     }
 
     @Override
     public void deleteAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        if (perm == PermType.READ) {
+            updateAclSource(sourceId);
+        }
+    }
+
+    /**
+     * Update the indexed permissions of the documents depending on an ACL source.
+     *
+     * @param sourceId ACL source ID (document or tag)
+     */
+    private void updateAclSource(String sourceId) {
+        DocumentDao documentDao = new DocumentDao();
+        Document document = documentDao.getById(sourceId);
+        if (document != null) {
+            updateDocument(document);
+            return;
+        }
+
+        // The source is a tag, update all documents inheriting its permissions
+        List<Document> documentList = documentDao.findByTagId(sourceId, null, 100);
+        while (!documentList.isEmpty()) {
+            updateDocuments(documentList);
+            documentList = documentDao.findByTagId(sourceId, documentList.get(documentList.size() - 1).getId(), 100);
+        }
+    }
+
+    @Override
+    public void updateDocumentAcls(List<String> documentIdList) {
+        DocumentDao documentDao = new DocumentDao();
+        for (List<String> idList : Lists.partition(documentIdList, 100)) {
+            List<Document> documentList = documentDao.getDocuments(idList);
+            if (!documentList.isEmpty()) {
+                updateDocuments(documentList);
+            }
+        }
+    }
+
+    @Override
+    public Object getSearchVersion() throws IOException {
+        // The generation is read before the searcher version, a concurrent write can only make the version older
+        long currentGeneration = generation.get();
+        try (LuceneIndex.Searcher indexSearcher = acquireSearcher(null)) {
+            return Arrays.asList(currentGeneration, indexSearcher.getVersion());
+        }
     }
 
     @Override
     public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
         Map<String, Object> parameterMap = new HashMap<>();
-        List<String> criteriaList = new ArrayList<>();
-        Map<String, String> documentSearchMap = Maps.newHashMap();
-
-        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
-        sb.append(" s.count c5, ");
-        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
-        sb.append(" from T_DOCUMENT d ");
-        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
-                "   FROM T_SHARE s, T_ACL ac " +
-                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
-                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
-        sb.append(" left join (select rs.*, rs3.idDocument " +
-                "from T_ROUTE_STEP rs " +
-                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
-                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
-
-        // Add search criterias
-        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
-            // Read permission is enough for searching
-            sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = d.DOC_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
-            sb.append(" left join T_DOCUMENT_TAG dta on dta.DOT_IDDOCUMENT_C = d.DOC_ID_C and dta.DOT_DELETEDATE_D is null ");
-            sb.append(" left join T_ACL a2 on a2.ACL_TARGETID_C in (:targetIdList) and a2.ACL_SOURCEID_C = dta.DOT_IDTAG_C and a2.ACL_PERM_C = 'READ' and a2.ACL_DELETEDATE_D is null ");
-            criteriaList.add("(a.ACL_ID_C is not null or a2.ACL_ID_C is not null)");
-        }
-        parameterMap.put("targetIdList", criteria.getTargetIdList());
+        Map<String, String> highlightMap = new HashMap<>();
+        Map<String, Map<String, List<Integer>>> matchedPageMap = new HashMap<>();
+
+        StringBuilder sb = DocumentSearchSql.createQuery("", parameterMap, criteria);
+
+        List<Object[]> l;
         if (!Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
-            documentSearchMap = search(criteria.getSimpleSearch(), criteria.getFullSearch());
-            if (documentSearchMap.isEmpty()) {
-                // If the search doesn't find any document, the request should return nothing
-                documentSearchMap.put(UUID.randomUUID().toString(), null);
-            }
-            criteriaList.add("d.DOC_ID_C in :documentIdList");
-            parameterMap.put("documentIdList", documentSearchMap.keySet());
+            // Search, filter, sort and paginate in the index, then fetch only the returned page
+            List<String> documentIdList = search(paginatedList, highlightMap, matchedPageMap, criteria, sortCriteria);
+            l = findPage(sb, parameterMap, documentIdList);
+            suggestionList.addAll(suggest(criteria.getFullSearch(), criteria.getTargetIdList(), 10));
+        } else {
+            l = findByCriteria(paginatedList, sb, parameterMap, criteria, sortCriteria);
+        }
+
+        // Assemble results
+        List<DocumentDto> documentDtoList = DocumentSearchSql.assemble(l, highlightMap);
+        for (DocumentDto documentDto : documentDtoList) {
+            documentDto.setMatchedPageMap(matchedPageMap.get(documentDto.getId()));
+        }
+        paginatedList.setResultList(documentDtoList);
+    }
 
-            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+    /**
+     * Search documents in the database.
+     *
+     * @param paginatedList Paginated list (updated by side effects)
+     * @param sb Base query
+     * @param parameterMap Query parameters
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return Rows of the current page
+     */
+    private List<Object[]> findByCriteria(PaginatedList<DocumentDto> paginatedList, StringBuilder sb, Map<String, Object> parameterMap,
+                                          DocumentCriteria criteria, SortCriteria sortCriteria) {
+        List<String> criteriaList = DocumentSearchSql.addCriteria(sb, parameterMap, criteria);
+        sb.append(" where ");
+        sb.append(Joiner.on(" and ").join(criteriaList));
+
+        // Perform the search
+        QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
+        return PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+    }
+
+    /**
+     * Fetch a page of documents found in the index.
+     *
+     * @param sb Base query
+     * @param parameterMap Query parameters
+     * @param documentIdList Document IDs of the page, in order
+     * @return Rows of the page, in the same order
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> findPage(StringBuilder sb, Map<String, Object> parameterMap, List<String> documentIdList) {
+        if (documentIdList.isEmpty()) {
+            return new ArrayList<>();
         }
-        if (criteria.getCreateDateMin() != null) {
-            criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
-            parameterMap.put("createDateMin", criteria.getCreateDateMin());
+
+        sb.append(" where d.DOC_ID_C in (:documentIdList) and d.DOC_DELETEDATE_D is null ");
+        parameterMap.put("documentIdList", documentIdList);
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+
+        // Keep the order of the index
+        Map<String, Object[]> rowMap = new HashMap<>();
+        for (Object[] o : l) {
+            rowMap.put((String) o[0], o);
         }
-        if (criteria.getCreateDateMax() != null) {
-            criteriaList.add("d.DOC_CREATEDATE_D <= :createDateMax");
-            parameterMap.put("createDateMax", criteria.getCreateDateMax());
+        List<Object[]> orderedList = new ArrayList<>();
+        for (String documentId : documentIdList) {
+            Object[] o = rowMap.get(documentId);
+            if (o != null) {
+                orderedList.add(o);
+            }
         }
-        if (criteria.getUpdateDateMin() != null) {
-            criteriaList.add("d.DOC_UPDATEDATE_D >= :updateDateMin");
-            parameterMap.put("updateDateMin", criteria.getUpdateDateMin());
+        return orderedList;
+    }
+
+    @Override
+    public List<String> suggest(String search, List<String> targetIdList, int limit) throws Exception {
+        if (EnvironmentUtil.isUnitTest()) {
+            // No background refresh in unit tests
+            refreshSuggester();
         }
-        if (criteria.getUpdateDateMax() != null) {
-            criteriaList.add("d.DOC_UPDATEDATE_D <= :updateDateMax");
-            parameterMap.put("updateDateMax", criteria.getUpdateDateMax());
+
+        List<String> suggestionList = new ArrayList<>();
+        Lookup currentSuggester = suggester;
+        if (currentSuggester == null || Strings.isNullOrEmpty(search)) {
+            // The suggester is not built yet
+            return suggestionList;
         }
-        if (!criteria.getTitleList().isEmpty()) {
-            criteriaList.add("d.DOC_TITLE_C in :title");
-            parameterMap.put("title", criteria.getTitleList());
-        }
-        if (!criteria.getTagIdList().isEmpty()) {
-            int index = 0;
-            for (List<String> tagIdList : criteria.getTagIdList()) {
-                List<String> tagCriteriaList = Lists.newArrayList();
-                for (String tagId : tagIdList) {
-                    sb.append(String.format("left join T_DOCUMENT_TAG dt%d on dt%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt%d.DOT_IDTAG_C = :tagId%d and dt%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
-                    parameterMap.put("tagId" + index, tagId);
-                    tagCriteriaList.add(String.format("dt%d.DOT_ID_C is not null", index));
-                    index++;
+
+        // The suggester is built from all the titles, keep the words of a title readable by the targets
+        int lastIndex = search.lastIndexOf(' ');
+        String suggestQuery = search.substring(Math.max(lastIndex, 0));
+        List<Lookup.LookupResult> lookupResultList = currentSuggester.lookup(suggestQuery, false, limit * SUGGESTION_CANDIDATE_FACTOR);
+        try (LuceneIndex.Searcher indexSearcher = acquireSearcher(null)) {
+            IndexSearcher searcher = indexSearcher.getSearcher();
+            for (Lookup.LookupResult lookupResult : lookupResultList) {
+                String word = lookupResult.key.toString();
+                BooleanQuery.Builder query = new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term("title", word)), BooleanClause.Occur.FILTER)
+                        .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+                if (!SecurityUtil.skipAclCheck(targetIdList)) {
+                    query.add(new TermInSetQuery("acl", toBytesRefList(targetIdList)), BooleanClause.Occur.FILTER);
                 }
-                criteriaList.add("(" + Joiner.on(" OR ").join(tagCriteriaList) + ")");
-            }
-        }
-        if (!criteria.getExcludedTagIdList().isEmpty()) {
-            int index = 0;
-            for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
-                List<String> tagCriteriaList = Lists.newArrayList();
-                for (String tagId : tagIdList) {
-                    sb.append(String.format("left join T_DOCUMENT_TAG dtex%d on dtex%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dtex%d.DOT_IDTAG_C = :tagIdEx%d and dtex%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
-                    parameterMap.put("tagIdEx" + index, tagId);
-                    tagCriteriaList.add(String.format("dtex%d.DOT_ID_C is null", index));
-                    index++;
+                if (searcher.count(query.build()) > 0) {
+                    suggestionList.add(word);
+                    if (suggestionList.size() == limit) {
+                        break;
+                    }
                 }
-                criteriaList.add("(" + Joiner.on(" AND ").join(tagCriteriaList) + ")");
             }
         }
+        return suggestionList;
+    }
+
+    /**
+     * Fulltext search in files and documents.
+     * All criteria, the sort and the pagination are applied by the index.
+     *
+     * @param paginatedList Paginated list (the result count is updated by side effects)
+     * @param highlightMap Highlights indexed by document ID (updated by side effects)
+     * @param matchedPageMap Matched pages by file ID, indexed by document ID (updated by side effects)
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return Document IDs of the current page, in order
+     * @throws Exception e
+     */
+    private List<String> search(PaginatedList<DocumentDto> paginatedList, Map<String, String> highlightMap,
+                                Map<String, Map<String, List<Integer>>> matchedPageMap,
+                                DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        Query fileQuery = buildFileQuery(criteria);
+
+        // Search
+        List<String> documentIdList = new ArrayList<>();
+        try (LuceneIndex.Searcher indexSearcher = acquireSearcher(searchExecutor)) {
+            // Shards and segments are searched concurrently
+            IndexSearcher searcher = indexSearcher.getSearcher();
+            Query query = buildQuery(searcher, fileQuery, criteria);
+            if (sortCriteria != null && sortCriteria.getColumn() == 7) {
+                query = scoreCurrentRouteStep(query, criteria);
+            }
+
+            // Collect only the documents up to the current page, but count all of them
+            int offset = paginatedList.getOffset();
+            int limit = paginatedList.getLimit();
+            TopFieldDocs topDocs = searcher.search(query, TopFieldCollector.createSharedManager(
+                    getSort(sortCriteria), Math.max(1, offset + limit), null, Integer.MAX_VALUE));
+            paginatedList.setResultCount((int) topDocs.totalHits.value);
+
+            for (int i = offset; i < Math.min(offset + limit, topDocs.scoreDocs.length); i++) {
+                documentIdList.add(searcher.doc(topDocs.scoreDocs[i].doc).get("id"));
+            }
+
+            // Highlight only the returned documents
+            highlightFiles(searcher, fileQuery, documentIdList, highlightMap);
+            findMatchedPages(searcher, fileQuery, documentIdList, matchedPageMap);
+        }
+
+        return documentIdList;
+    }
+
+    @Override
+    public DocumentFacetsDto findFacets(DocumentCriteria criteria) throws Exception {
+        boolean fulltext = !Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch());
+        try (LuceneIndex.Searcher indexSearcher = acquireSearcher(searchExecutor)) {
+            IndexSearcher searcher = indexSearcher.getSearcher();
+            Query query;
+            if (fulltext) {
+                query = buildQuery(searcher, buildFileQuery(criteria), criteria);
+            } else {
+                BooleanQuery.Builder allQuery = new BooleanQuery.Builder()
+                        .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+                addCriteriaFilters(allQuery, criteria);
+                query = allQuery.build();
+            }
+
+            // All facets are counted in one pass, from the doc values
+            return searcher.search(query, new CollectorManager<FacetCollector, DocumentFacetsDto>() {
+                @Override
+                public FacetCollector newCollector() {
+                    return new FacetCollector();
+                }
+
+                @Override
+                public DocumentFacetsDto reduce(Collection<FacetCollector> collectors) throws IOException {
+                    DocumentFacetsDto documentFacetsDto = new DocumentFacetsDto();
+                    long total = 0;
+                    for (FacetCollector collector : collectors) {
+                        collector.flush();
+                        total += collector.total;
+                        merge(documentFacetsDto.getTagCountMap(), collector.tagCountMap);
+                        merge(documentFacetsDto.getMimeTypeCountMap(), collector.mimeTypeCountMap);
+                        merge(documentFacetsDto.getLanguageCountMap(), collector.languageCountMap);
+                        merge(documentFacetsDto.getCreatorCountMap(), collector.creatorCountMap);
+                        merge(documentFacetsDto.getYearCountMap(), collector.yearCountMap);
+                    }
+                    return documentFacetsDto.setTotal(total);
+                }
+
+                private void merge(Map<String, Long> countMap, Map<String, Long> collectorCountMap) {
+                    collectorCountMap.forEach((value, count) -> countMap.merge(value, count, Long::sum));
+                }
+            });
+        }
+    }
+
+    /**
+     * Build the fulltext query on files.
+     *
+     * @param criteria Search criteria
+     * @return Query on files
+     * @throws Exception e
+     */
+    private Query buildFileQuery(DocumentCriteria criteria) throws Exception {
+        String simpleSearchQuery = Strings.nullToEmpty(criteria.getSimpleSearch());
+        String fullSearchQuery = Strings.nullToEmpty(criteria.getFullSearch());
+        String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
+        Analyzer analyzer = new StandardAnalyzer();
+        return new BooleanQuery.Builder()
+                .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
+                .build();
+    }
+
+    /**
+     * Build the fulltext query on documents, filtered by the search criteria.
+     *
+     * @param searcher Index searcher
+     * @param fileQuery Query on files
+     * @param criteria Search criteria
+     * @return Query on documents
+     * @throws Exception e
+     */
+    private Query buildQuery(IndexSearcher searcher, Query fileQuery, DocumentCriteria criteria) throws Exception {
+        // The fulltext query searches in all fields
+        String simpleSearchQuery = Strings.nullToEmpty(criteria.getSimpleSearch());
+        String fullSearchQuery = Strings.nullToEmpty(criteria.getFullSearch());
+        String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
+        Analyzer analyzer = new StandardAnalyzer();
+
+        // Search on documents
+        BooleanQuery.Builder documentQuery = new BooleanQuery.Builder()
+                .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "identifier").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "publisher").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "format").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "source").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "type").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "coverage").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "rights").parse(searchQuery), BooleanClause.Occur.SHOULD);
+
+        // Documents having a matching file
+        Set<String> fileDocumentIdSet = searchFiles(searcher, fileQuery);
+        if (!fileDocumentIdSet.isEmpty()) {
+            documentQuery.add(new TermInSetQuery("id", toBytesRefList(fileDocumentIdSet)), BooleanClause.Occur.SHOULD);
+        }
+
+        // Apply all criteria as filters, they don't contribute to the score
+        BooleanQuery.Builder query = new BooleanQuery.Builder()
+                .add(documentQuery.build(), BooleanClause.Occur.MUST);
+        addCriteriaFilters(query, criteria);
+        return query.build();
+    }
+
+    /**
+     * Add the search criteria as filters of a document query.
+     *
+     * @param query Query to filter
+     * @param criteria Search criteria
+     */
+    private void addCriteriaFilters(BooleanQuery.Builder query, DocumentCriteria criteria) {
+        query.add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+
+        // Only documents readable by the targets
+        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            query.add(new TermInSetQuery("acl", toBytesRefList(criteria.getTargetIdList())), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getCreateDateMin() != null || criteria.getCreateDateMax() != null) {
+            query.add(LongPoint.newRangeQuery("create_date",
+                    criteria.getCreateDateMin() == null ? Long.MIN_VALUE : criteria.getCreateDateMin().getTime(),
+                    criteria.getCreateDateMax() == null ? Long.MAX_VALUE : criteria.getCreateDateMax().getTime()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getUpdateDateMin() != null || criteria.getUpdateDateMax() != null) {
+            query.add(LongPoint.newRangeQuery("update_date",
+                    criteria.getUpdateDateMin() == null ? Long.MIN_VALUE : criteria.getUpdateDateMin().getTime(),
+                    criteria.getUpdateDateMax() == null ? Long.MAX_VALUE : criteria.getUpdateDateMax().getTime()), BooleanClause.Occur.FILTER);
+        }
+        if (!criteria.getTitleList().isEmpty()) {
+            query.add(new TermInSetQuery("title_exact", toBytesRefList(criteria.getTitleList())), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getTagIdList()) {
+            query.add(new TermInSetQuery("tag", toBytesRefList(tagIdList)), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+            query.add(new TermInSetQuery("tag", toBytesRefList(tagIdList)), BooleanClause.Occur.MUST_NOT);
+        }
         if (criteria.getShared() != null && criteria.getShared()) {
-            criteriaList.add("s.count > 0");
+            query.add(LongPoint.newRangeQuery("share_count", 1, Long.MAX_VALUE), BooleanClause.Occur.FILTER);
         }
         if (criteria.getMimeType() != null) {
-            sb.append("left join T_FILE f0 on f0.FIL_IDDOC_C = d.DOC_ID_C and f0.FIL_MIMETYPE_C = :mimeType and f0.FIL_DELETEDATE_D is null");
-            parameterMap.put("mimeType", criteria.getMimeType());
-            criteriaList.add("f0.FIL_ID_C is not null");
+            query.add(new TermQuery(new Term("mime", criteria.getMimeType())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getLanguage() != null) {
-            criteriaList.add("d.DOC_LANGUAGE_C = :language");
-            parameterMap.put("language", criteria.getLanguage());
+            query.add(new TermQuery(new Term("language", criteria.getLanguage())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getCreatorId() != null) {
-            criteriaList.add("d.DOC_IDUSER_C = :creatorId");
-            parameterMap.put("creatorId", criteria.getCreatorId());
+            query.add(new TermQuery(new Term("creator", criteria.getCreatorId())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getActiveRoute() != null && criteria.getActiveRoute()) {
-            criteriaList.add("rs2.RTP_ID_C is not null");
+            query.add(new TermInSetQuery("route_target", toBytesRefList(criteria.getTargetIdList())), BooleanClause.Occur.FILTER);
         }
+    }
 
-        criteriaList.add("d.DOC_DELETEDATE_D is null");
+    /**
+     * Score the documents having a current route step assigned to the targets 1, the others 0,
+     * the equivalent of the database sort on the current route step.
+     * In the database, the documents having a step are then ordered by step ID, here by document ID.
+     * The documents without step come first in ascending order, as with H2 while PostgreSQL puts the nulls last.
+     *
+     * @param query Document query, not scored
+     * @param criteria Search criteria
+     * @return Scored query
+     */
+    private Query scoreCurrentRouteStep(Query query, DocumentCriteria criteria) {
+        return new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.FILTER)
+                .add(new ConstantScoreQuery(new TermInSetQuery("route_target", toBytesRefList(criteria.getTargetIdList()))),
+                        BooleanClause.Occur.SHOULD)
+                .build();
+    }
 
-        sb.append(" where ");
-        sb.append(Joiner.on(" and ").join(criteriaList));
+    /**
+     * Build the index sort equivalent to the database sort columns.
+     *
+     * @param sortCriteria Sort criteria
+     * @return Sort
+     */
+    private Sort getSort(SortCriteria sortCriteria) {
+        boolean reverse = sortCriteria != null && !sortCriteria.isAsc();
+        int column = sortCriteria == null ? 0 : sortCriteria.getColumn();
+        SortField sortField;
+        switch (column) {
+            case 1:
+                sortField = new SortField("title_exact", SortField.Type.STRING, reverse);
+                break;
+            case 2:
+                sortField = new SortField("description_sort", SortField.Type.STRING, reverse);
+                break;
+            case 3:
+                sortField = new SortField("create_date", SortField.Type.LONG, reverse);
+                break;
+            case 4:
+                sortField = new SortField("language", SortField.Type.STRING, reverse);
+                break;
+            case 5:
+                sortField = new SortField("share_count", SortField.Type.LONG, reverse);
+                break;
+            case 7:
+                // Scored by scoreCurrentRouteStep, a sort on scores is descending unless reversed
+                sortField = new SortField(null, SortField.Type.SCORE, !reverse);
+                break;
+            case 8:
+                sortField = new SortField("update_date", SortField.Type.LONG, reverse);
+                break;
+            default:
+                return new Sort(new SortField("id", SortField.Type.STRING, reverse));
+        }
 
-        // Perform the search
-        QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
-        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+        // The ID breaks ties for a stable pagination
+        return new Sort(sortField, new SortField("id", SortField.Type.STRING));
+    }
 
-        // Assemble results
-        List<DocumentDto> documentDtoList = new ArrayList<>();
-        for (Object[] o : l) {
-            int i = 0;
-            DocumentDto documentDto = new DocumentDto();
-            documentDto.setId((String) o[i++]);
-            documentDto.setTitle((String) o[i++]);
-            documentDto.setDescription((String) o[i++]);
-            documentDto.setCreateTimestamp(((Timestamp) o[i++]).getTime());
-            documentDto.setLanguage((String) o[i++]);
-            documentDto.setFileId((String) o[i++]);
-            Number shareCount = (Number) o[i++];
-            documentDto.setShared(shareCount != null && shareCount.intValue() > 0);
-            documentDto.setActiveRoute(o[i++] != null);
-            documentDto.setCurrentStepName((String) o[i++]);
-            documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
-            documentDto.setHighlight(documentSearchMap.get(documentDto.getId()));
-            documentDtoList.add(documentDto);
-        }
+    /**
+     * Search files and collect the IDs of their documents.
+     *
+     * @param searcher Index searcher
+     * @param fileQuery Query on files
+     * @return Document IDs
+     * @throws IOException e
+     */
+    private Set<String> searchFiles(IndexSearcher searcher, Query fileQuery) throws IOException {
+        Query query = new BooleanQuery.Builder()
+                .add(fileQuery, BooleanClause.Occur.MUST)
+                .add(CONTENT_DOCTYPE_QUERY, BooleanClause.Occur.FILTER)
+                .build();
 
-        paginatedList.setResultList(documentDtoList);
+        return searcher.search(query, new CollectorManager<DocumentIdCollector, Set<String>>() {
+            @Override
+            public DocumentIdCollector newCollector() {
+                return new DocumentIdCollector();
+            }
+
+            @Override
+            public Set<String> reduce(Collection<DocumentIdCollector> collectors) {
+                Set<String> documentIdSet = new HashSet<>();
+                for (DocumentIdCollector collector : collectors) {
+                    documentIdSet.addAll(collector.documentIdSet);
+                }
+                return documentIdSet;
+            }
+        });
     }
 
     /**
-     * Suggest search terms according to the user query.
+     * Highlight the best matching file or page of each document.
+     * Passages are built from the offsets stored in the postings, the content is not analyzed again.
+     * The content is read from the database, it must not have changed since its indexing.
+     * Only the matched page of a paginated file is read.
      *
-     * @param search User search query
-     * @param suggestionList Suggestion of search query (updated by side effects)
-     * @throws Exception e
+     * @param searcher Index searcher
+     * @param fileQuery Query on files
+     * @param documentIdList Document IDs to highlight
+     * @param highlightMap Highlights indexed by document ID (updated by side effects)
+     * @throws IOException e
      */
-    private void suggestSearchTerms(String search, List<String> suggestionList) throws Exception {
-        DirectoryReader directoryReader = getDirectoryReader();
-        if (directoryReader == null) {
+    private void highlightFiles(IndexSearcher searcher, Query fileQuery, List<String> documentIdList, Map<String, String> highlightMap) throws IOException {
+        if (documentIdList.isEmpty()) {
             return;
         }
 
-        FuzzySuggester suggester = new FuzzySuggester(directory, "", new StandardAnalyzer());
-        LuceneDictionary dictionary = new LuceneDictionary(directoryReader, "title");
-        suggester.build(dictionary);
-        int lastIndex = search.lastIndexOf(' ');
-        String suggestQuery = search.substring(Math.max(lastIndex, 0));
-        List<Lookup.LookupResult> lookupResultList = suggester.lookup(suggestQuery, false, 10);
-        for (Lookup.LookupResult lookupResult : lookupResultList) {
-            suggestionList.add(lookupResult.key.toString());
+        // Best matching file of each document, searched at once for the whole page
+        Query query = new BooleanQuery.Builder()
+                .add(fileQuery, BooleanClause.Occur.MUST)
+                .add(CONTENT_DOCTYPE_QUERY, BooleanClause.Occur.FILTER)
+                .add(new TermInSetQuery("document_id", toBytesRefList(documentIdList)), BooleanClause.Occur.FILTER)
+                .build();
+        Map<String, ScoreDoc> bestFileMap = searcher.search(query, new CollectorManager<BestFileCollector, Map<String, ScoreDoc>>() {
+            @Override
+            public BestFileCollector newCollector() {
+                return new BestFileCollector();
+            }
+
+            @Override
+            public Map<String, ScoreDoc> reduce(Collection<BestFileCollector> collectors) {
+                Map<String, ScoreDoc> bestFileMap = new HashMap<>();
+                for (BestFileCollector collector : collectors) {
+                    collector.bestFileMap.forEach((documentId, scoreDoc) -> bestFileMap.merge(documentId, scoreDoc, BestFileCollector::best));
+                }
+                return bestFileMap;
+            }
+        });
+
+        List<String> highlightDocumentIdList = new ArrayList<>();
+        List<ScoreDoc> scoreDocList = new ArrayList<>();
+        for (String documentId : documentIdList) {
+            ScoreDoc scoreDoc = bestFileMap.get(documentId);
+            if (scoreDoc != null) {
+                highlightDocumentIdList.add(documentId);
+                scoreDocList.add(scoreDoc);
+            }
+        }
+        if (scoreDocList.isEmpty()) {
+            return;
+        }
+
+        UnifiedHighlighter highlighter = new UnifiedHighlighter(searcher, new StandardAnalyzer()) {
+            @Override
+            protected List<CharSequence[]> loadFieldValues(String[] fields, DocIdSetIterator docIter, int cacheCharsThreshold) throws IOException {
+                List<org.apache.lucene.document.Document> storedList = new ArrayList<>();
+                List<String> fileIdList = new ArrayList<>();
+                for (int doc = docIter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docIter.nextDoc()) {
+                    org.apache.lucene.document.Document stored = searcher.doc(doc, Sets.newHashSet("id", "page_count", "page_start", "page_length"));
+                    storedList.add(stored);
+                    if (stored.getField("page_count") == null && stored.getField("page_start") == null) {
+                        fileIdList.add(stored.get("id"));
+                    }
+                }
+
+                FileDao fileDao = new FileDao();
+                Map<String, String> contentMap = fileDao.getContentMap(fileIdList);
+                List<CharSequence[]> fieldValueList = new ArrayList<>();
+                for (org.apache.lucene.document.Document stored : storedList) {
+                    String content;
+                    if (stored.getField("page_count") != null) {
+                        // Paginated file matched by its name, its content is in its pages
+                        content = null;
+                    } else if (stored.getField("page_start") == null) {
+                        content = contentMap.get(stored.get("id"));
+                    } else {
+                        // Read only the matched page of the content
+                        content = fileDao.getContentPart(stored.get("id"),
+                                stored.getField("page_start").numericValue().intValue(),
+                                stored.getField("page_length").numericValue().intValue());
+                    }
+
+                    // Only the content field is highlighted
+                    CharSequence[] fieldValues = new CharSequence[fields.length];
+                    Arrays.fill(fieldValues, Strings.nullToEmpty(content));
+                    fieldValueList.add(fieldValues);
+                }
+                return fieldValueList;
+            }
+        };
+        highlighter.setFormatter(new DefaultPassageFormatter("<strong>", "</strong>", "... ", true));
+        highlighter.setMaxNoHighlightPassages(0);
+        highlighter.setBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(
+                BreakIterator.getSentenceInstance(Locale.ROOT), HIGHLIGHT_LENGTH));
+        TopDocs topDocs = new TopDocs(new TotalHits(scoreDocList.size(), TotalHits.Relation.EQUAL_TO),
+                scoreDocList.toArray(new ScoreDoc[0]));
+        String[] highlights;
+        try {
+            highlights = highlighter.highlight("content", fileQuery, topDocs);
+        } catch (RuntimeException e) {
+            // The content has been changed since its indexing, the offsets are out of date
+            log.warn("Error highlighting the search results", e);
+            return;
+        }
+        for (int i = 0; i < highlights.length; i++) {
+            highlightMap.put(highlightDocumentIdList.get(i), highlights[i]);
         }
     }
 
     /**
-     * Fulltext search in files and documents.
+     * Find the pages of the paginated files matching the query.
      *
-     * @param simpleSearchQuery Search query on metadatas
-     * @param fullSearchQuery Search query on all fields
-     * @return Map of document IDs as key and highlight as value
-     * @throws Exception e
+     * @param searcher Index searcher
+     * @param fileQuery Query on files
+     * @param documentIdList Document IDs
+     * @param matchedPageMap Matched pages by file ID, indexed by document ID (updated by side effects)
+     * @throws IOException e
      */
-    private Map<String, String> search(String simpleSearchQuery, String fullSearchQuery) throws Exception {
-        // The fulltext query searches in all fields
-        String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
-
-        // Build search query
-        Analyzer analyzer = new StandardAnalyzer();
+    private void findMatchedPages(IndexSearcher searcher, Query fileQuery, List<String> documentIdList,
+                                  Map<String, Map<String, List<Integer>>> matchedPageMap) throws IOException {
+        if (documentIdList.isEmpty()) {
+            return;
+        }
 
-        // Search on documents and files
-        BooleanQuery query = new BooleanQuery.Builder()
-                .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "identifier").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "publisher").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "format").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "source").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "type").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "coverage").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "rights").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
+        Query query = new BooleanQuery.Builder()
+                .add(fileQuery, BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term("doctype", "page")), BooleanClause.Occur.FILTER)
+                .add(new TermInSetQuery("document_id", toBytesRefList(documentIdList)), BooleanClause.Occur.FILTER)
                 .build();
+        Map<String, Map<String, Set<Integer>>> pageSetMap = new HashMap<>();
+        searcher.search(query, new SimpleCollector() {
+            private SortedDocValues documentIdValues;
+            private SortedDocValues fileIdValues;
+            private NumericDocValues pageValues;
 
-        // Search
-        DirectoryReader directoryReader = getDirectoryReader();
-        Map<String, String> documentMap = Maps.newHashMap();
-        if (directoryReader == null) {
-            // The directory reader is not yet initialized (probably because there is nothing indexed)
-            return documentMap;
-        }
-        IndexSearcher searcher = new IndexSearcher(directoryReader);
-        TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-        ScoreDoc[] docs = topDocs.scoreDocs;
-
-        SimpleHTMLFormatter simpleHTMLFormatter = new SimpleHTMLFormatter("<strong>", "</strong>");
-        SimpleHTMLEncoder simpleHTMLEncoder = new SimpleHTMLEncoder();
-        Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(query));
-
-        // Extract document IDs and highlights
-        for (ScoreDoc doc : docs) {
-            org.apache.lucene.document.Document document = searcher.doc(doc.doc);
-            String type = document.get("doctype");
-            String documentId = null;
-            String highlight = null;
-            if (type.equals("document")) {
-                documentId = document.get("id");
-            } else if (type.equals("file")) {
-                documentId = document.get("document_id");
-                String content = document.get("content");
-                if (content != null) {
-                    highlight = highlighter.getBestFragment(analyzer, "content", content);
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                documentIdValues = DocValues.getSorted(context.reader(), "document_id");
+                fileIdValues = DocValues.getSorted(context.reader(), "id");
+                pageValues = DocValues.getNumeric(context.reader(), "page");
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (documentIdValues.advanceExact(doc) && fileIdValues.advanceExact(doc) && pageValues.advanceExact(doc)) {
+                    pageSetMap.computeIfAbsent(documentIdValues.binaryValue().utf8ToString(), k -> new HashMap<>())
+                            .computeIfAbsent(fileIdValues.binaryValue().utf8ToString(), k -> new TreeSet<>())
+                            .add((int) pageValues.longValue());
                 }
             }
 
-            if (documentId != null) {
-                documentMap.put(documentId, highlight);
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
             }
+        });
+
+        for (Map.Entry<String, Map<String, Set<Integer>>> documentEntry : pageSetMap.entrySet()) {
+            Map<String, List<Integer>> filePageMap = new HashMap<>();
+            for (Map.Entry<String, Set<Integer>> fileEntry : documentEntry.getValue().entrySet()) {
+                filePageMap.put(fileEntry.getKey(), fileEntry.getValue().stream()
+                        .limit(MAX_MATCHED_PAGES)
+                        .collect(Collectors.toList()));
+            }
+            matchedPageMap.put(documentEntry.getKey(), filePageMap);
         }
+    }
 
-        return documentMap;
+    /**
+     * Convert strings to terms.
+     *
+     * @param valueList Values
+     * @return Terms
+     */
+    private List<BytesRef> toBytesRefList(Collection<String> valueList) {
+        List<BytesRef> bytesRefList = new ArrayList<>();
+        for (String value : valueList) {
+            bytesRefList.add(new BytesRef(value));
+        }
+        return bytesRefList;
     }
 
     /**
@@ -492,16 +1917,89 @@ public class LuceneIndexingHandler implements IndexingHandler {
         return simpleQueryParser;
     }
 
+    /**
+     * Build Lucene documents from database documents.
+     *
+     * @param documentList Documents
+     * @return Lucene documents
+     */
+    private List<org.apache.lucene.document.Document> getDocumentsFromDocuments(List<Document> documentList) {
+        DocumentIndexData indexData = new DocumentIndexData(documentList);
+        List<org.apache.lucene.document.Document> luceneDocumentList = new ArrayList<>();
+        for (Document document : documentList) {
+            luceneDocumentList.add(getDocumentFromDocument(document, indexData));
+        }
+        return luceneDocumentList;
+    }
+
+    /**
+     * Build Lucene documents from files.
+     *
+     * @param fileList Files
+     * @return Lucene documents
+     */
+    private List<org.apache.lucene.document.Document> getDocumentsFromFiles(List<File> fileList) {
+        List<org.apache.lucene.document.Document> luceneDocumentList = new ArrayList<>();
+        for (File file : fileList) {
+            luceneDocumentList.addAll(getDocumentsFromFile(file));
+        }
+        return luceneDocumentList;
+    }
+
     /**
      * Build Lucene document from database document.
      *
      * @param document Document
+     * @param indexData Related data of the documents
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromDocument(Document document) {
+    private org.apache.lucene.document.Document getDocumentFromDocument(Document document, DocumentIndexData indexData) {
+        String documentId = document.getId();
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
-        luceneDocument.add(new StringField("id", document.getId(), Field.Store.YES));
+        luceneDocument.add(new StringField("id", documentId, Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("id", new BytesRef(documentId)));
         luceneDocument.add(new StringField("doctype", "document", Field.Store.YES));
+        for (String targetId : indexData.readTargetIdMap.getOrDefault(documentId, Collections.emptySet())) {
+            luceneDocument.add(new StringField("acl", targetId, Field.Store.NO));
+        }
+
+        // Search criteria and sort fields
+        for (String tagId : indexData.tagIdMap.getOrDefault(documentId, Collections.emptySet())) {
+            luceneDocument.add(new StringField("tag", tagId, Field.Store.NO));
+            luceneDocument.add(new SortedSetDocValuesField("tag", new BytesRef(tagId)));
+        }
+        for (String mimeType : indexData.mimeTypeMap.getOrDefault(documentId, Collections.emptySet())) {
+            luceneDocument.add(new StringField("mime", mimeType, Field.Store.NO));
+            luceneDocument.add(new SortedSetDocValuesField("mime", new BytesRef(mimeType)));
+        }
+        for (RouteStepDto routeStepDto : indexData.currentStepMap.getOrDefault(documentId, Collections.emptyList())) {
+            luceneDocument.add(new StringField("route_target", routeStepDto.getTargetId(), Field.Store.NO));
+        }
+        int shareCount = indexData.shareCountMap.getOrDefault(documentId, 0);
+        luceneDocument.add(new LongPoint("share_count", shareCount));
+        luceneDocument.add(new NumericDocValuesField("share_count", shareCount));
+        luceneDocument.add(new StringField("title_exact", document.getTitle(), Field.Store.NO));
+        luceneDocument.add(new SortedDocValuesField("title_exact", new BytesRef(document.getTitle())));
+        if (document.getDescription() != null) {
+            luceneDocument.add(new SortedDocValuesField("description_sort",
+                    new BytesRef(StringUtils.left(document.getDescription(), SORT_PREFIX_LENGTH))));
+        }
+        if (document.getLanguage() != null) {
+            luceneDocument.add(new StringField("language", document.getLanguage(), Field.Store.NO));
+            luceneDocument.add(new SortedDocValuesField("language", new BytesRef(document.getLanguage())));
+        }
+        if (document.getUserId() != null) {
+            luceneDocument.add(new StringField("creator", document.getUserId(), Field.Store.NO));
+            luceneDocument.add(new SortedDocValuesField("creator", new BytesRef(document.getUserId())));
+        }
+        luceneDocument.add(new LongPoint("create_date", document.getCreateDate().getTime()));
+        luceneDocument.add(new NumericDocValuesField("create_date", document.getCreateDate().getTime()));
+        if (document.getUpdateDate() != null) {
+            luceneDocument.add(new LongPoint("update_date", document.getUpdateDate().getTime()));
+            luceneDocument.add(new NumericDocValuesField("update_date", document.getUpdateDate().getTime()));
+        }
+
+        // Fulltext fields
         luceneDocument.add(new TextField("title", document.getTitle(), Field.Store.NO));
         if (document.getDescription() != null) {
             luceneDocument.add(new TextField("description", document.getDescription(), Field.Store.NO));
@@ -535,57 +2033,64 @@ public class LuceneIndexingHandler implements IndexingHandler {
     }
 
     /**
-     * Build Lucene document from file.
+     * Build Lucene documents from file.
+     * The content of a paginated file is indexed in a Lucene document by page, sharing the file ID.
      *
      * @param file File
-     * @return Document
+     * @return File document, followed by its page documents
      */
-    private org.apache.lucene.document.Document getDocumentFromFile(File file) {
+    private List<org.apache.lucene.document.Document> getDocumentsFromFile(File file) {
+        List<org.apache.lucene.document.Document> luceneDocumentList = new ArrayList<>();
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
+        luceneDocumentList.add(luceneDocument);
         luceneDocument.add(new StringField("id", file.getId(), Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("id", new BytesRef(file.getId())));
         luceneDocument.add(new StringField("doctype", "file", Field.Store.YES));
         if (file.getName() != null) {
             luceneDocument.add(new TextField("filename", file.getName(), Field.Store.NO));
         }
         if (file.getDocumentId() != null) {
             luceneDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+            luceneDocument.add(new SortedDocValuesField("document_id", new BytesRef(file.getDocumentId())));
         }
-        if (file.getContent() != null) {
-            luceneDocument.add(new TextField("content", file.getContent(), Field.Store.YES));
+        if (file.getUpdateDate() != null) {
+            luceneDocument.add(new NumericDocValuesField("update_date", file.getUpdateDate().getTime()));
+        }
+        if (file.getContent() == null) {
+            return luceneDocumentList;
         }
 
-        return luceneDocument;
-    }
+        List<String> pageList = FormatHandlerUtil.splitPages(file.getContent());
+        if (pageList.size() == 1) {
+            luceneDocument.add(new Field("content", file.getContent(), CONTENT_FIELD_TYPE));
+            return luceneDocumentList;
+        }
 
-    /**
-     * Returns a valid directory reader.
-     * Take care of reopening the reader if the index has changed
-     * and closing the previous one.
-     *
-     * @return the directoryReader
-     */
-    private DirectoryReader getDirectoryReader() {
-        if (directoryReader == null) {
-            try {
-                if (!DirectoryReader.indexExists(directory)) {
-                    return null;
-                }
-                directoryReader = DirectoryReader.open(directory);
-            } catch (IOException e) {
-                log.error("Error creating the directory reader", e);
-            }
-        } else {
-            try {
-                DirectoryReader newReader = DirectoryReader.openIfChanged(directoryReader);
-                if (newReader != null) {
-                    directoryReader.close();
-                    directoryReader = newReader;
+        luceneDocument.add(new StoredField("page_count", pageList.size()));
+        int pageStart = 0;
+        for (int i = 0; i < pageList.size(); i++) {
+            String page = pageList.get(i);
+            if (!page.trim().isEmpty()) {
+                org.apache.lucene.document.Document pageDocument = new org.apache.lucene.document.Document();
+                pageDocument.add(new StringField("id", file.getId(), Field.Store.YES));
+                pageDocument.add(new SortedDocValuesField("id", new BytesRef(file.getId())));
+                pageDocument.add(new StringField("doctype", "page", Field.Store.YES));
+                if (file.getDocumentId() != null) {
+                    pageDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+                    pageDocument.add(new SortedDocValuesField("document_id", new BytesRef(file.getDocumentId())));
                 }
-            } catch (IOException e) {
-                log.error("Error while reopening the directory reader", e);
+                pageDocument.add(new NumericDocValuesField("page", i + 1));
+
+                // Position of the page in the content, to highlight it alone
+                pageDocument.add(new StoredField("page_start", pageStart));
+                pageDocument.add(new StoredField("page_length", page.length()));
+                pageDocument.add(new Field("content", page, CONTENT_FIELD_TYPE));
+                luceneDocumentList.add(pageDocument);
             }
+            pageStart += page.length() + FormatHandler.PAGE_SEPARATOR.length();
         }
-        return directoryReader;
+
+        return luceneDocumentList;
     }
 
     /**
@@ -594,16 +2099,302 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * @param runnable Runnable
      */
     private void handle(LuceneRunnable runnable) {
+        indexLock.readLock().lock();
         try {
-            runnable.run(indexWriter);
+            runnable.run(index);
         } catch (Exception e) {
             log.error("Error in running index writing", e);
+        } finally {
+            generation.incrementAndGet();
+            indexLock.readLock().unlock();
         }
 
-        try {
-            indexWriter.commit();
-        } catch (IOException e) {
-            log.error("Cannot commit index writer", e);
+        // Commit on a size budget, the maintenance executor commits on a time budget
+        if (uncommittedChangeCount.incrementAndGet() >= commitMaxChanges) {
+            commit();
+        }
+
+        if (EnvironmentUtil.isUnitTest()) {
+            try {
+                index.refresh(true);
+            } catch (IOException e) {
+                log.error("Error refreshing the index searcher", e);
+            }
+        }
+    }
+
+    /**
+     * Index being rebuilt next to the live index.
+     */
+    private static class IndexRebuild {
+        /**
+         * New index.
+         */
+        private final LuceneIndex index;
+
+        /**
+         * IDs of the documents and files changed in the live index during the rebuild.
+         */
+        private final Set<String> changedIdSet = ConcurrentHashMap.newKeySet();
+
+        IndexRebuild(LuceneIndex index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Count the facets of the matching documents of a slice of the index.
+     * Values are counted by ordinal in each segment, then resolved once per segment.
+     */
+    private static class FacetCollector extends SimpleCollector {
+        /**
+         * Number of matching documents.
+         */
+        private long total;
+
+        /**
+         * Counts by value of each facet.
+         */
+        private final Map<String, Long> tagCountMap = new HashMap<>();
+        private final Map<String, Long> mimeTypeCountMap = new HashMap<>();
+        private final Map<String, Long> languageCountMap = new HashMap<>();
+        private final Map<String, Long> creatorCountMap = new HashMap<>();
+        private final Map<String, Long> yearCountMap = new HashMap<>();
+
+        /**
+         * Doc values of the current segment.
+         */
+        private SortedSetDocValues tagValues;
+        private SortedSetDocValues mimeTypeValues;
+        private SortedDocValues languageValues;
+        private SortedDocValues creatorValues;
+        private NumericDocValues createDateValues;
+
+        /**
+         * Counts by ordinal in the current segment.
+         */
+        private long[] tagCounts;
+        private long[] mimeTypeCounts;
+        private long[] languageCounts;
+        private long[] creatorCounts;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            flush();
+            tagValues = DocValues.getSortedSet(context.reader(), "tag");
+            mimeTypeValues = DocValues.getSortedSet(context.reader(), "mime");
+            languageValues = DocValues.getSorted(context.reader(), "language");
+            creatorValues = DocValues.getSorted(context.reader(), "creator");
+            createDateValues = DocValues.getNumeric(context.reader(), "create_date");
+            tagCounts = new long[(int) tagValues.getValueCount()];
+            mimeTypeCounts = new long[(int) mimeTypeValues.getValueCount()];
+            languageCounts = new long[languageValues.getValueCount()];
+            creatorCounts = new long[creatorValues.getValueCount()];
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            total++;
+            if (tagValues.advanceExact(doc)) {
+                for (long ord = tagValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = tagValues.nextOrd()) {
+                    tagCounts[(int) ord]++;
+                }
+            }
+            if (mimeTypeValues.advanceExact(doc)) {
+                for (long ord = mimeTypeValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = mimeTypeValues.nextOrd()) {
+                    mimeTypeCounts[(int) ord]++;
+                }
+            }
+            if (languageValues.advanceExact(doc)) {
+                languageCounts[languageValues.ordValue()]++;
+            }
+            if (creatorValues.advanceExact(doc)) {
+                creatorCounts[creatorValues.ordValue()]++;
+            }
+            if (createDateValues.advanceExact(doc)) {
+                String year = String.valueOf(Instant.ofEpochMilli(createDateValues.longValue()).atZone(ZoneId.systemDefault()).getYear());
+                yearCountMap.merge(year, 1L, Long::sum);
+            }
+        }
+
+        /**
+         * Resolve the counts of the current segment.
+         *
+         * @throws IOException e
+         */
+        private void flush() throws IOException {
+            if (tagCounts == null) {
+                return;
+            }
+            for (int ord = 0; ord < tagCounts.length; ord++) {
+                if (tagCounts[ord] > 0) {
+                    tagCountMap.merge(tagValues.lookupOrd(ord).utf8ToString(), tagCounts[ord], Long::sum);
+                }
+            }
+            for (int ord = 0; ord < mimeTypeCounts.length; ord++) {
+                if (mimeTypeCounts[ord] > 0) {
+                    mimeTypeCountMap.merge(mimeTypeValues.lookupOrd(ord).utf8ToString(), mimeTypeCounts[ord], Long::sum);
+                }
+            }
+            for (int ord = 0; ord < languageCounts.length; ord++) {
+                if (languageCounts[ord] > 0) {
+                    languageCountMap.merge(languageValues.lookupOrd(ord).utf8ToString(), languageCounts[ord], Long::sum);
+                }
+            }
+            for (int ord = 0; ord < creatorCounts.length; ord++) {
+                if (creatorCounts[ord] > 0) {
+                    creatorCountMap.merge(creatorValues.lookupOrd(ord).utf8ToString(), creatorCounts[ord], Long::sum);
+                }
+            }
+            tagCounts = null;
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+
+    /**
+     * Collect the document IDs of the matching files of a slice of the index.
+     * Only doc values are read, neither stored fields nor scores are needed.
+     */
+    private static class DocumentIdCollector extends SimpleCollector {
+        /**
+         * Collected document IDs.
+         */
+        private final Set<String> documentIdSet = new HashSet<>();
+
+        /**
+         * Document IDs of the current segment.
+         */
+        private SortedDocValues documentIdValues;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            documentIdValues = DocValues.getSorted(context.reader(), "document_id");
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (documentIdValues.advanceExact(doc)) {
+                documentIdSet.add(documentIdValues.binaryValue().utf8ToString());
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+
+    /**
+     * Collector of the best matching file of each document.
+     */
+    private static class BestFileCollector extends SimpleCollector {
+        /**
+         * Best matching file by document ID.
+         */
+        private final Map<String, ScoreDoc> bestFileMap = new HashMap<>();
+
+        /**
+         * Document IDs of the current segment.
+         */
+        private SortedDocValues documentIdValues;
+
+        /**
+         * First document of the current segment.
+         */
+        private int docBase;
+
+        /**
+         * Scorer of the current segment.
+         */
+        private Scorable scorer;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            documentIdValues = DocValues.getSorted(context.reader(), "document_id");
+            docBase = context.docBase;
+        }
+
+        @Override
+        public void setScorer(Scorable scorer) {
+            this.scorer = scorer;
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (documentIdValues.advanceExact(doc)) {
+                bestFileMap.merge(documentIdValues.binaryValue().utf8ToString(),
+                        new ScoreDoc(docBase + doc, scorer.score()), BestFileCollector::best);
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE;
+        }
+
+        /**
+         * Returns the best of two matching files, like a top 1 search: the highest score, then the first one.
+         *
+         * @param scoreDoc1 First file
+         * @param scoreDoc2 Second file
+         * @return Best file
+         */
+        private static ScoreDoc best(ScoreDoc scoreDoc1, ScoreDoc scoreDoc2) {
+            if (scoreDoc1.score != scoreDoc2.score) {
+                return scoreDoc1.score > scoreDoc2.score ? scoreDoc1 : scoreDoc2;
+            }
+            return scoreDoc1.doc < scoreDoc2.doc ? scoreDoc1 : scoreDoc2;
+        }
+    }
+
+    /**
+     * Data related to documents, loaded in bulk for indexing.
+     */
+    private static class DocumentIndexData {
+        /**
+         * Targets having the read permission, directly or through tags.
+         */
+        private final Map<String, Set<String>> readTargetIdMap;
+
+        /**
+         * Tag IDs.
+         */
+        private final Map<String, Set<String>> tagIdMap;
+
+        /**
+         * MIME types of the files.
+         */
+        private final Map<String, Set<String>> mimeTypeMap;
+
+        /**
+         * Number of shares.
+         */
+        private final Map<String, Integer> shareCountMap;
+
+        /**
+         * Current steps of the active routes.
+         */
+        private final Map<String, List<RouteStepDto>> currentStepMap;
+
+        /**
+         * Load the related data of documents.
+         *
+         * @param documentList Documents
+         */
+        DocumentIndexData(List<Document> documentList) {
+            List<String> documentIdList = new ArrayList<>();
+            for (Document document : documentList) {
+                documentIdList.add(document.getId());
+            }
+            readTargetIdMap = new AclDao().getReadTargetIdMap(documentIdList);
+            tagIdMap = new TagDao().getTagIdMap(documentIdList);
+            mimeTypeMap = new FileDao().getMimeTypeMap(documentIdList);
+            shareCountMap = new ShareDao().getShareCountMap(documentIdList);
+            currentStepMap = new RouteStepDao().getCurrentStepMap(documentIdList);
         }
     }
 
@@ -616,9 +2407,9 @@ public class LuceneIndexingHandler implements IndexingHandler {
         /**
          * Code to run in a Lucene context.
          *
-         * @param indexWriter Index writer
+         * @param index Index
          * @throws Exception e
          */
-        void run(IndexWriter indexWriter) throws Exception;
+        void run(LuceneIndex index) throws Exception;
     }
 }
@@ -0,0 +1,400 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.html.HtmlEscapers;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.DocumentFacetsDto;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.util.ClasspathScanner;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.persistence.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PostgreSQL fulltext indexing handler.
+ * Documents and files are searched with the tsvector columns and GIN indexes maintained by PostgreSQL itself,
+ * so there is no separate index to build, to keep consistent or to share between nodes.
+ * Requires PostgreSQL 12 or later.
+ *
+ * @author bgamard
+ */
+@ClasspathScanner.Priority(50) // Before Lucene
+public class PostgresqlIndexingHandler implements IndexingHandler {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PostgresqlIndexingHandler.class);
+
+    /**
+     * Query on simple and full search terms.
+     */
+    private static final String QUERY_ALL = "websearch_to_tsquery('simple', :searchAll)";
+
+    /**
+     * Query on full search terms, the only ones searched in the file contents.
+     */
+    private static final String QUERY_FULL = "websearch_to_tsquery('simple', :searchFull)";
+
+    /**
+     * Documents matching the search, by their own fields, their file names or their file contents.
+     */
+    private static final String MATCH_CRITERIA = "d.DOC_ID_C in (select d1.DOC_ID_C from T_DOCUMENT d1 where d1.DOC_SEARCH_V @@ " + QUERY_ALL +
+            " union select f1.FIL_IDDOC_C from T_FILE f1 where f1.FIL_DELETEDATE_D is null" +
+            " and (to_tsvector('simple', coalesce(f1.FIL_NAME_C, '')) @@ " + QUERY_ALL + " or f1.FIL_CONTENT_V @@ " + QUERY_FULL + "))";
+
+    /**
+     * Rank of a document, including its best matching file.
+     */
+    private static final String RANK_COLUMN = ", ts_rank(d.DOC_SEARCH_V, " + QUERY_ALL + ")" +
+            " + coalesce((select max(ts_rank(f2.FIL_CONTENT_V, " + QUERY_FULL + ")) from T_FILE f2" +
+            " where f2.FIL_IDDOC_C = d.DOC_ID_C and f2.FIL_DELETEDATE_D is null and f2.FIL_CONTENT_V @@ " + QUERY_FULL + "), 0) c9 ";
+
+    /**
+     * Headline of the best matching file of a document.
+     * Same content prefix as the indexed vector.
+     */
+    private static final String HEADLINE_COLUMN = ", (select ts_headline('simple', left(f3.FIL_CONTENT_C, 250000), " + QUERY_FULL + ", :headlineOptions)" +
+            " from T_FILE f3 where f3.FIL_IDDOC_C = t.c0 and f3.FIL_DELETEDATE_D is null and f3.FIL_CONTENT_V @@ " + QUERY_FULL +
+            " order by ts_rank(f3.FIL_CONTENT_V, " + QUERY_FULL + ") desc limit 1) c10 ";
+
+    /**
+     * Start of a highlighted term, replaced after escaping the headline.
+     */
+    private static final String HIGHLIGHT_START = "\uE000";
+
+    /**
+     * End of a highlighted term, replaced after escaping the headline.
+     */
+    private static final String HIGHLIGHT_END = "\uE001";
+
+    /**
+     * Options of the headlines.
+     */
+    private static final String HEADLINE_OPTIONS = "StartSel=" + HIGHLIGHT_START + ", StopSel=" + HIGHLIGHT_END +
+            ", MinWords=15, MaxWords=35, MaxFragments=3, FragmentDelimiter=\" ... \"";
+
+    /**
+     * Maximum number of titles read to build the suggestions.
+     */
+    private static final int SUGGESTION_TITLE_COUNT = 100;
+
+    /**
+     * Duration of a search version in milliseconds.
+     * Other nodes sharing the database change it without notifying this one, so versions also expire.
+     */
+    private static final long SEARCH_VERSION_PERIOD = 10000;
+
+    /**
+     * Number of changes notified to this handler, part of the search version.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public boolean accept() {
+        return EMF.isDriverPostgresql();
+    }
+
+    @Override
+    public void startUp() {
+        log.info("Fulltext search delegated to PostgreSQL");
+    }
+
+    @Override
+    public void shutDown() {
+        // NOP
+    }
+
+    @Override
+    public IndexStatus getStatus() {
+        long size = 0;
+        try {
+            Query q = ThreadLocalContext.get().getEntityManager().createNativeQuery("select pg_relation_size('IDX_DOC_SEARCH_V')" +
+                    " + pg_relation_size('IDX_FIL_CONTENT_V') + pg_relation_size('IDX_FIL_NAME_V')");
+            size = ((Number) q.getSingleResult()).longValue();
+        } catch (Exception e) {
+            log.error("Error computing the index size", e);
+        }
+        return new IndexStatus()
+                .setStorage("POSTGRESQL")
+                .setSize(size);
+    }
+
+    @Override
+    public void clearIndex() {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void startRebuild() {
+        // The search vectors are maintained by PostgreSQL
+    }
+
+    @Override
+    public void endRebuild(boolean success) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void createDocuments(List<Document> documentList) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void createFiles(List<File> fileList) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void createDocument(Document document) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void createFile(File file) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void updateDocument(Document document) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void updateFile(File file) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void deleteDocument(String id) {
+        // The search vectors are maintained by PostgreSQL, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void createAcl(String sourceId, PermType perm, String targetId) {
+        // Permissions are checked at search time, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void deleteAcl(String sourceId, PermType perm, String targetId) {
+        // Permissions are checked at search time, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void updateDocumentAcls(List<String> documentIdList) {
+        // Permissions are checked at search time, cached searches are outdated
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public Object getSearchVersion() {
+        return Arrays.asList(generation.get(), System.currentTimeMillis() / SEARCH_VERSION_PERIOD);
+    }
+
+    @Override
+    public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        Map<String, Object> parameterMap = new HashMap<>();
+        String fullSearch = Strings.nullToEmpty(criteria.getFullSearch()).trim();
+        boolean fulltext = addSearch(parameterMap, criteria);
+
+        // Search, rank, filter and sort in one statement
+        StringBuilder sb = DocumentSearchSql.createQuery(fulltext ? RANK_COLUMN : "", parameterMap, criteria);
+        List<String> criteriaList = DocumentSearchSql.addCriteria(sb, parameterMap, criteria);
+        if (fulltext) {
+            criteriaList.add(MATCH_CRITERIA);
+        }
+        sb.append(" where ");
+        sb.append(Joiner.on(" and ").join(criteriaList));
+
+        String query = sb.toString();
+        if (!fullSearch.isEmpty()) {
+            // Headlines are expensive, PostgreSQL computes them after the sort and only for the returned page
+            query = "select t.*" + HEADLINE_COLUMN + " from (" + query + ") t";
+            parameterMap.put("headlineOptions", HEADLINE_OPTIONS);
+        }
+
+        // Without an explicit sort, the most relevant documents come first
+        if (fulltext && (sortCriteria == null || sortCriteria.getColumn() == 0)) {
+            sortCriteria = new SortCriteria(9, false);
+        }
+        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, new QueryParam(query, parameterMap), sortCriteria);
+
+        Map<String, String> highlightMap = new HashMap<>();
+        for (Object[] o : l) {
+            if (o.length > 11 && o[11] != null) {
+                highlightMap.put((String) o[0], formatHeadline((String) o[11]));
+            }
+        }
+        paginatedList.setResultList(DocumentSearchSql.assemble(l, highlightMap));
+
+        if (fulltext) {
+            suggestionList.addAll(suggest(criteria.getFullSearch(), criteria.getTargetIdList(), 10));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public DocumentFacetsDto findFacets(DocumentCriteria criteria) {
+        Map<String, Object> parameterMap = new HashMap<>();
+        boolean fulltext = addSearch(parameterMap, criteria);
+        StringBuilder sb = DocumentSearchSql.createQuery("", parameterMap, criteria);
+        List<String> criteriaList = DocumentSearchSql.addCriteria(sb, parameterMap, criteria);
+        if (fulltext) {
+            criteriaList.add(MATCH_CRITERIA);
+        }
+        sb.append(" where ");
+        sb.append(Joiner.on(" and ").join(criteriaList));
+
+        // All facets are counted in one statement, on the matching documents
+        String query = "with m as (select distinct q.c0 from (" + sb + ") q) " +
+                "select 'total' facet_name, null facet_value, count(*) facet_count from m " +
+                "union all select 'tag', dt.DOT_IDTAG_C, count(distinct dt.DOT_IDDOCUMENT_C) from T_DOCUMENT_TAG dt join m on m.c0 = dt.DOT_IDDOCUMENT_C " +
+                "  join T_TAG tg on tg.TAG_ID_C = dt.DOT_IDTAG_C and tg.TAG_DELETEDATE_D is null " +
+                "  where dt.DOT_DELETEDATE_D is null group by dt.DOT_IDTAG_C " +
+                "union all select 'mime', f.FIL_MIMETYPE_C, count(distinct f.FIL_IDDOC_C) from T_FILE f join m on m.c0 = f.FIL_IDDOC_C " +
+                "  where f.FIL_DELETEDATE_D is null group by f.FIL_MIMETYPE_C " +
+                "union all select 'language', d.DOC_LANGUAGE_C, count(*) from T_DOCUMENT d join m on m.c0 = d.DOC_ID_C group by d.DOC_LANGUAGE_C " +
+                "union all select 'creator', d.DOC_IDUSER_C, count(*) from T_DOCUMENT d join m on m.c0 = d.DOC_ID_C group by d.DOC_IDUSER_C " +
+                "union all select 'year', cast(cast(extract(year from d.DOC_CREATEDATE_D) as integer) as varchar), count(*) from T_DOCUMENT d join m on m.c0 = d.DOC_ID_C " +
+                "  group by extract(year from d.DOC_CREATEDATE_D)";
+
+        DocumentFacetsDto documentFacetsDto = new DocumentFacetsDto();
+        Query q = QueryUtil.getNativeQuery(new QueryParam(query, parameterMap));
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            String value = (String) o[1];
+            long count = ((Number) o[2]).longValue();
+            switch ((String) o[0]) {
+                case "total":
+                    documentFacetsDto.setTotal(count);
+                    break;
+                case "tag":
+                    documentFacetsDto.getTagCountMap().put(value, count);
+                    break;
+                case "mime":
+                    documentFacetsDto.getMimeTypeCountMap().put(value, count);
+                    break;
+                case "language":
+                    documentFacetsDto.getLanguageCountMap().put(value, count);
+                    break;
+                case "creator":
+                    documentFacetsDto.getCreatorCountMap().put(value, count);
+                    break;
+                case "year":
+                    documentFacetsDto.getYearCountMap().put(value, count);
+                    break;
+            }
+        }
+        return documentFacetsDto;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> suggest(String search, List<String> targetIdList, int limit) {
+        List<String> suggestionList = new ArrayList<>();
+        if (Strings.isNullOrEmpty(search)) {
+            return suggestionList;
+        }
+
+        // Complete the last word with the words of the titles
+        String[] words = search.trim().toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        String prefix = words.length == 0 ? "" : words[words.length - 1];
+        if (prefix.isEmpty()) {
+            return suggestionList;
+        }
+
+        // Titles readable by the targets only
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(targetIdList);
+        Map<String, Object> parameterMap = new HashMap<>();
+        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C, d.DOC_TITLE_C from T_DOCUMENT d ");
+        List<String> criteriaList = DocumentSearchSql.addCriteria(sb, parameterMap, criteria);
+        if (!SecurityUtil.skipAclCheck(targetIdList)) {
+            parameterMap.put("targetIdList", targetIdList);
+        }
+        criteriaList.add("d.DOC_DELETEDATE_D is null");
+        criteriaList.add("d.DOC_SEARCH_V @@ to_tsquery('simple', :prefix)");
+        sb.append(" where ");
+        sb.append(Joiner.on(" and ").join(criteriaList));
+        parameterMap.put("prefix", prefix + ":*A"); // Title words only
+        Query q = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap));
+        q.setMaxResults(SUGGESTION_TITLE_COUNT);
+
+        // Most frequent words first
+        Map<String, Integer> wordCountMap = new HashMap<>();
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            for (String word : ((String) o[1]).toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (word.startsWith(prefix)) {
+                    wordCountMap.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+        wordCountMap.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .forEach(entry -> suggestionList.add(entry.getKey()));
+        return suggestionList;
+    }
+
+    /**
+     * Add the fulltext search parameters.
+     *
+     * @param parameterMap Query parameters (updated by side effects)
+     * @param criteria Search criteria
+     * @return True if the criteria contain a fulltext search
+     */
+    private boolean addSearch(Map<String, Object> parameterMap, DocumentCriteria criteria) {
+        String simpleSearch = Strings.nullToEmpty(criteria.getSimpleSearch()).trim();
+        String fullSearch = Strings.nullToEmpty(criteria.getFullSearch()).trim();
+        if (simpleSearch.isEmpty() && fullSearch.isEmpty()) {
+            return false;
+        }
+
+        // Like in Lucene, document fields and file names are searched with all terms, file contents with the full ones
+        parameterMap.put("searchAll", (simpleSearch + " " + fullSearch).trim());
+        parameterMap.put("searchFull", fullSearch);
+        return true;
+    }
+
+    /**
+     * Format a headline for display.
+     * The content is escaped, only the highlighted terms are HTML.
+     *
+     * @param headline Headline returned by PostgreSQL
+     * @return Highlight
+     */
+    private String formatHeadline(String headline) {
+        return HtmlEscapers.htmlEscaper().escape(headline)
+                .replace(HIGHLIGHT_START, "<strong>")
+                .replace(HIGHLIGHT_END, "</strong>");
+    }
+}
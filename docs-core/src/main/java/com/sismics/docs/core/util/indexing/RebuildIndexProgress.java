@@ -0,0 +1,116 @@
+package com.sismics.docs.core.util.indexing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an index rebuild.
+ *
+ * @author bgamard
+ */
+public class RebuildIndexProgress {
+    /**
+     * True if a rebuild is running.
+     */
+    private boolean running;
+
+    /**
+     * Number of documents and files to index.
+     */
+    private long total;
+
+    /**
+     * Number of documents and files indexed.
+     */
+    private final AtomicLong done = new AtomicLong();
+
+    /**
+     * Start of the current or last rebuild (timestamp).
+     */
+    private long startTimestamp;
+
+    /**
+     * End of the last rebuild (timestamp).
+     */
+    private long endTimestamp;
+
+    /**
+     * Start a rebuild.
+     *
+     * @param total Number of documents and files to index
+     * @return False if a rebuild is already running
+     */
+    public synchronized boolean start(long total) {
+        if (running) {
+            return false;
+        }
+        running = true;
+        this.total = total;
+        done.set(0);
+        startTimestamp = System.currentTimeMillis();
+        endTimestamp = 0;
+        return true;
+    }
+
+    /**
+     * Add indexed documents or files.
+     *
+     * @param count Number of documents or files
+     */
+    public void add(long count) {
+        done.addAndGet(count);
+    }
+
+    /**
+     * End the current rebuild.
+     */
+    public synchronized void end() {
+        running = false;
+        endTimestamp = System.currentTimeMillis();
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public long getDone() {
+        return done.get();
+    }
+
+    public synchronized long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public synchronized long getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    /**
+     * Returns the indexing rate.
+     *
+     * @return Documents and files indexed per second
+     */
+    public synchronized double getRate() {
+        if (startTimestamp == 0) {
+            return 0;
+        }
+        long elapsed = (running ? System.currentTimeMillis() : endTimestamp) - startTimestamp;
+        return elapsed <= 0 ? 0 : done.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * Returns the estimated remaining time of the current rebuild.
+     *
+     * @return Remaining time in seconds, or -1 if unknown
+     */
+    public synchronized long getEta() {
+        double rate = getRate();
+        if (!running || rate <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, total - done.get()) / rate);
+    }
+}
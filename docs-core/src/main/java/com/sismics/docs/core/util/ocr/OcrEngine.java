@@ -0,0 +1,33 @@
+package com.sismics.docs.core.util.ocr;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * An OCR engine.
+ *
+ * @author bgamard
+ */
+public interface OcrEngine {
+    /**
+     * Returns true if this engine can run on this server.
+     *
+     * @return True if available
+     */
+    boolean accept();
+
+    /**
+     * Recognize the text of an image.
+     * Engines are called concurrently from the OCR workers.
+     *
+     * @param language Language, Tesseract languages can be combined with "+"
+     * @param image Grayscale image
+     * @return Text
+     * @throws Exception e
+     */
+    String recognize(String language, BufferedImage image) throws Exception;
+
+    /**
+     * Release the resources held by the engine, once the OCR workers are stopped.
+     */
+    void close();
+}
@@ -0,0 +1,57 @@
+package com.sismics.docs.core.util.ocr;
+
+import com.google.common.io.CharStreams;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.util.io.InputStreamReaderThread;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * OCR engine running a tesseract process for each image.
+ * Always available, tesseract failing to start is reported on each image.
+ *
+ * @author bgamard
+ */
+public class TesseractCliOcrEngine implements OcrEngine {
+    @Override
+    public boolean accept() {
+        return true;
+    }
+
+    @Override
+    public String recognize(String language, BufferedImage image) throws Exception {
+        Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
+        try {
+            ImageIO.write(image, "tiff", tmpFile.toFile());
+
+            ProcessBuilder pb = new ProcessBuilder(Arrays.asList("tesseract", tmpFile.toAbsolutePath().toString(), "stdout", "-l", language));
+
+            // Images are already processed in parallel, one thread per process is enough
+            pb.environment().put("OMP_THREAD_LIMIT", "1");
+            Process process = pb.start();
+
+            // Consume the process error stream
+            final String commandName = pb.command().get(0);
+            new InputStreamReaderThread(process.getErrorStream(), commandName).start();
+
+            // Consume the data as text
+            try (InputStream is = process.getInputStream()) {
+                return CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
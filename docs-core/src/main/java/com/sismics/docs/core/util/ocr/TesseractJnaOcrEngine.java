@@ -0,0 +1,159 @@
+package com.sismics.docs.core.util.ocr;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OCR engine calling the tesseract library in-process.
+ * Each worker thread keeps a tesseract handle per language, so the language data is loaded once,
+ * and the pixels are passed directly to tesseract.
+ *
+ * @author bgamard
+ */
+public class TesseractJnaOcrEngine implements OcrEngine {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(TesseractJnaOcrEngine.class);
+
+    /**
+     * Resolution of the images given to tesseract.
+     */
+    private static final int SOURCE_RESOLUTION = 300;
+
+    /**
+     * Tesseract library, null until accepted.
+     */
+    private TesseractLibrary library;
+
+    /**
+     * Handles of the current thread, by language.
+     */
+    private final ThreadLocal<Map<String, Pointer>> handleMap = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Handles of all threads.
+     */
+    private final List<Pointer> handleList = new ArrayList<>();
+
+    @Override
+    public boolean accept() {
+        try {
+            library = Native.load("tesseract", TesseractLibrary.class);
+            log.info("Tesseract library loaded, version " + library.TessVersion());
+            return true;
+        } catch (Throwable e) {
+            log.info("Tesseract library not available: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public String recognize(String language, BufferedImage image) throws Exception {
+        Pointer handle = getHandle(language);
+
+        // One byte per pixel, the image is copied if it is not a whole grayscale raster
+        BufferedImage grayImage = image;
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY || image.getRaster().getParent() != null) {
+            grayImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D graphics = grayImage.createGraphics();
+            graphics.drawImage(image, 0, 0, null);
+            graphics.dispose();
+        }
+        byte[] pixels = ((DataBufferByte) grayImage.getRaster().getDataBuffer()).getData();
+        int bytesPerLine = ((ComponentSampleModel) grayImage.getSampleModel()).getScanlineStride();
+
+        try {
+            library.TessBaseAPISetImage(handle, pixels, grayImage.getWidth(), grayImage.getHeight(), 1, bytesPerLine);
+            library.TessBaseAPISetSourceResolution(handle, SOURCE_RESOLUTION);
+            Pointer text = library.TessBaseAPIGetUTF8Text(handle);
+            if (text == null) {
+                throw new Exception("Tesseract failed to recognize the image");
+            }
+            try {
+                return text.getString(0, "UTF-8");
+            } finally {
+                library.TessDeleteText(text);
+            }
+        } finally {
+            // Keep the language data, release the image and the results
+            library.TessBaseAPIClear(handle);
+            if (grayImage != image) {
+                grayImage.flush();
+            }
+        }
+    }
+
+    /**
+     * Returns the handle of the current thread for a language, initialized on first use.
+     *
+     * @param language Language
+     * @return Tesseract handle
+     * @throws Exception e
+     */
+    private Pointer getHandle(String language) throws Exception {
+        Pointer handle = handleMap.get().get(language);
+        if (handle != null) {
+            return handle;
+        }
+
+        handle = library.TessBaseAPICreate();
+        if (library.TessBaseAPIInit3(handle, null, language) != 0) {
+            library.TessBaseAPIDelete(handle);
+            throw new Exception("Tesseract failed to load the language: " + language);
+        }
+        handleMap.get().put(language, handle);
+        synchronized (handleList) {
+            handleList.add(handle);
+        }
+        return handle;
+    }
+
+    @Override
+    public void close() {
+        synchronized (handleList) {
+            for (Pointer handle : handleList) {
+                library.TessBaseAPIEnd(handle);
+                library.TessBaseAPIDelete(handle);
+            }
+            handleList.clear();
+        }
+    }
+
+    /**
+     * Functions of the tesseract C API.
+     */
+    public interface TesseractLibrary extends Library {
+        String TessVersion();
+
+        Pointer TessBaseAPICreate();
+
+        int TessBaseAPIInit3(Pointer handle, String datapath, String language);
+
+        void TessBaseAPISetImage(Pointer handle, byte[] imagedata, int width, int height, int bytesPerPixel, int bytesPerLine);
+
+        void TessBaseAPISetSourceResolution(Pointer handle, int ppi);
+
+        Pointer TessBaseAPIGetUTF8Text(Pointer handle);
+
+        void TessDeleteText(Pointer text);
+
+        void TessBaseAPIClear(Pointer handle);
+
+        void TessBaseAPIEnd(Pointer handle);
+
+        void TessBaseAPIDelete(Pointer handle);
+    }
+}
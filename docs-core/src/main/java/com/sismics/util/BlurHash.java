@@ -0,0 +1,149 @@
+package com.sismics.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Encoder of BlurHash placeholders, a compact representation of an image as a few colors.
+ * See https://blurha.sh.
+ *
+ * @author bgamard
+ */
+public class BlurHash {
+    /**
+     * Characters of the base 83 encoding.
+     */
+    private static final String CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    /**
+     * Encode an image.
+     * The image should be small, every pixel is read for each component.
+     *
+     * @param image Image
+     * @param componentX Number of horizontal components, from 1 to 9
+     * @param componentY Number of vertical components, from 1 to 9
+     * @return BlurHash
+     */
+    public static String encode(BufferedImage image, int componentX, int componentY) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        // Average of each channel on each cosine component, in linear color space
+        double[][] factors = new double[componentX * componentY][3];
+        double[] cosX = new double[width];
+        double[] cosY = new double[height];
+        for (int j = 0; j < componentY; j++) {
+            for (int i = 0; i < componentX; i++) {
+                for (int x = 0; x < width; x++) {
+                    cosX[x] = Math.cos(Math.PI * i * x / width);
+                }
+                for (int y = 0; y < height; y++) {
+                    cosY[y] = Math.cos(Math.PI * j * y / height);
+                }
+                double[] factor = factors[j * componentX + i];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        double basis = cosX[x] * cosY[y];
+                        int pixel = pixels[y * width + x];
+                        factor[0] += basis * toLinear((pixel >> 16) & 0xff);
+                        factor[1] += basis * toLinear((pixel >> 8) & 0xff);
+                        factor[2] += basis * toLinear(pixel & 0xff);
+                    }
+                }
+                double scale = (i == 0 && j == 0 ? 1.0 : 2.0) / (width * height);
+                factor[0] *= scale;
+                factor[1] *= scale;
+                factor[2] *= scale;
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        encode83(componentX - 1 + (componentY - 1) * 9, 1, hash);
+
+        // The AC components are quantized relatively to the largest one
+        double maximumValue = 1;
+        if (factors.length > 1) {
+            double actualMaximumValue = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double value : factors[k]) {
+                    actualMaximumValue = Math.max(actualMaximumValue, Math.abs(value));
+                }
+            }
+            int quantisedMaximumValue = (int) Math.max(0, Math.min(82, Math.floor(actualMaximumValue * 166 - 0.5)));
+            maximumValue = (quantisedMaximumValue + 1) / 166.0;
+            encode83(quantisedMaximumValue, 1, hash);
+        } else {
+            encode83(0, 1, hash);
+        }
+
+        // DC component, the average color
+        double[] dc = factors[0];
+        encode83((toSrgb(dc[0]) << 16) + (toSrgb(dc[1]) << 8) + toSrgb(dc[2]), 4, hash);
+
+        // AC components
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            encode83(quantizeAc(ac[0], maximumValue) * 19 * 19
+                    + quantizeAc(ac[1], maximumValue) * 19
+                    + quantizeAc(ac[2], maximumValue), 2, hash);
+        }
+
+        return hash.toString();
+    }
+
+    /**
+     * Quantize an AC component value.
+     *
+     * @param value Value
+     * @param maximumValue Maximum value
+     * @return Quantized value, from 0 to 18
+     */
+    private static int quantizeAc(double value, double maximumValue) {
+        double normalized = value / maximumValue;
+        double signedRoot = Math.copySign(Math.sqrt(Math.abs(normalized)), normalized);
+        return (int) Math.max(0, Math.min(18, Math.floor(signedRoot * 9 + 9.5)));
+    }
+
+    /**
+     * Convert a sRGB channel to linear.
+     *
+     * @param value Channel, from 0 to 255
+     * @return Linear value, from 0 to 1
+     */
+    private static double toLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    /**
+     * Convert a linear channel to sRGB.
+     *
+     * @param value Linear value, from 0 to 1
+     * @return Channel, from 0 to 255
+     */
+    private static int toSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        if (v <= 0.0031308) {
+            return (int) (v * 12.92 * 255 + 0.5);
+        }
+        return (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    /**
+     * Append a value in base 83.
+     *
+     * @param value Value
+     * @param length Number of characters
+     * @param hash Hash to append to
+     */
+    private static void encode83(int value, int length, StringBuilder hash) {
+        int divisor = 1;
+        for (int i = 1; i < length; i++) {
+            divisor *= 83;
+        }
+        for (int i = 0; i < length; i++) {
+            hash.append(CHARACTERS.charAt((value / divisor) % 83));
+            divisor /= 83;
+        }
+    }
+}
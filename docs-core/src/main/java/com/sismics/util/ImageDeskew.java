@@ -1,6 +1,11 @@
 package com.sismics.util;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <a url=http://www.jdeskew.com/>JDeskew</a>
@@ -21,8 +26,18 @@ public class ImageDeskew {
         public double d;
     }
 
+    // luminance under which a pixel is black
+    private static final int LUMINANCE_CUTOFF = 140;
+    // maximum number of angles accumulated by a single task
+    private static final int ANGLES_PER_TASK = 8;
+
     // the source image
     private BufferedImage cImage;
+    // side of the blocks of source pixels averaged in a pixel of the detection grid
+    private int cFactor;
+    // size of the detection grid
+    private int cWidth;
+    private int cHeight;
     // the range of angles to search for lines
     private double cAlphaStart = -20;
     private double cAlphaStep = 0.2;
@@ -34,12 +49,25 @@ public class ImageDeskew {
     private double cDMin;
     private double cDStep = 1.0;
     private int cDCount;
-    // count of points that fit in a line
+    // count of points that fit in a line, a row of d per angle
     private int[] cHMatrix;
+    // points at the lower edge of the black areas
+    private int[] cPointX;
+    private int[] cPointY;
+    private int cPointCount;
 
     // constructor
     public ImageDeskew(BufferedImage image) {
+        this(image, Integer.MAX_VALUE);
+    }
+
+    // constructor detecting the lines on a grid of at most maxSize on its longest side,
+    // the skew angle is the same at any scale
+    public ImageDeskew(BufferedImage image, int maxSize) {
         this.cImage = image;
+        this.cFactor = Math.max(1, (Math.max(image.getWidth(), image.getHeight()) + maxSize - 1) / maxSize);
+        this.cWidth = (image.getWidth() + this.cFactor - 1) / this.cFactor;
+        this.cHeight = (image.getHeight() + this.cFactor - 1) / this.cFactor;
     }
 
     // calculate the skew angle of the image cImage
@@ -53,7 +81,8 @@ public class ImageDeskew {
         // top 20 of the detected lines in the image
         hl = getTop(20);
 
-        if (hl.length >= 20) {
+        // a blank image has no line
+        if (hl[19].count > 0) {
             // average angle of the lines
             for (int i = 0; i < 19; i++) {
                 sum += hl[i].alpha;
@@ -93,9 +122,9 @@ public class ImageDeskew {
         int dIndex;
 
         for (int i = 0; i < count; i++) {
-            dIndex = hl[i].index / cSteps; // integer division, no
+            alphaIndex = hl[i].index / cDCount; // integer division, no
             // remainder
-            alphaIndex = hl[i].index - dIndex * cSteps;
+            dIndex = hl[i].index - alphaIndex * cDCount;
             hl[i].alpha = getAlpha(alphaIndex);
             hl[i].d = dIndex + cDMin;
         }
@@ -105,37 +134,64 @@ public class ImageDeskew {
 
     // Hough Transformation
     private void calc() {
-        int hMin = (int) ((this.cImage.getHeight()) / 4.0);
-        int hMax = (int) ((this.cImage.getHeight()) * 3.0 / 4.0);
         init();
+        findPoints();
+
+        // the angles are split between the cores, each angle has its own row in the matrix
+        ForkJoinPool.commonPool().invoke(new HoughTask(0, this.cSteps - 1));
+    }
 
+    // collect the points at the lower edge of the black areas in the middle of the image
+    private void findPoints() {
+        int hMin = (int) (this.cHeight / 4.0);
+        int hMax = (int) (this.cHeight * 3.0 / 4.0);
+        this.cPointX = new int[1024];
+        this.cPointY = new int[1024];
+        this.cPointCount = 0;
+        if (hMin >= hMax) {
+            return;
+        }
+
+        RowReader reader = new RowReader();
+        boolean[] row = reader.read(hMin);
         for (int y = hMin; y < hMax; y++) {
-            for (int x = 1; x < (this.cImage.getWidth() - 2); x++) {
+            boolean[] nextRow = reader.read(y + 1);
+            for (int x = 1; x < (this.cWidth - 2); x++) {
                 // only lower edges are considered
-                if (ImageUtil.isBlack(this.cImage, x, y)) {
-                    if (!ImageUtil.isBlack(this.cImage, x, y + 1)) {
-                        calc(x, y);
-                    }
+                if (row[x] && !nextRow[x]) {
+                    addPoint(x, y);
                 }
             }
+            row = nextRow;
         }
+    }
 
+    private void addPoint(int x, int y) {
+        if (this.cPointCount == this.cPointX.length) {
+            this.cPointX = Arrays.copyOf(this.cPointX, this.cPointCount * 2);
+            this.cPointY = Arrays.copyOf(this.cPointY, this.cPointCount * 2);
+        }
+        this.cPointX[this.cPointCount] = x;
+        this.cPointY[this.cPointCount] = y;
+        this.cPointCount++;
     }
 
-    // calculate all lines through the point (x,y)
-    private void calc(int x, int y) {
+    // calculate all lines through the points for a range of angles
+    private void calc(int alphaStart, int alphaEnd) {
         double d;
         int dIndex;
         int index;
 
-        for (int alpha = 0; alpha < (this.cSteps - 1); alpha++) {
-            d = y * this.cCosA[alpha] - x * this.cSinA[alpha];
-            dIndex = (int) (d - this.cDMin);
-            index = dIndex * this.cSteps + alpha;
-            try {
-                this.cHMatrix[index] += 1;
-            } catch (Exception ex) {
-                System.out.println(ex.toString());
+        for (int i = 0; i < this.cPointCount; i++) {
+            int x = this.cPointX[i];
+            int y = this.cPointY[i];
+            for (int alpha = alphaStart; alpha < alphaEnd; alpha++) {
+                d = y * this.cCosA[alpha] - x * this.cSinA[alpha];
+                dIndex = (int) (d - this.cDMin);
+                index = alpha * this.cDCount + dIndex;
+                if (dIndex >= 0 && dIndex < this.cDCount) {
+                    this.cHMatrix[index] += 1;
+                }
             }
         }
     }
@@ -155,8 +211,8 @@ public class ImageDeskew {
         }
 
         // range of d
-        this.cDMin = -this.cImage.getWidth();
-        this.cDCount = (int) (2.0 * ((this.cImage.getWidth() + this.cImage.getHeight())) / this.cDStep);
+        this.cDMin = -this.cWidth;
+        this.cDCount = (int) (2.0 * ((this.cWidth + this.cHeight)) / this.cDStep);
         this.cHMatrix = new int[this.cDCount * this.cSteps];
 
     }
@@ -164,4 +220,112 @@ public class ImageDeskew {
     private double getAlpha(int index) {
         return this.cAlphaStart + (index * this.cAlphaStep);
     }
+
+    // luminance of a RGB color, from 0 to 255
+    private static int getLuminance(int rgb) {
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        return (r * 299 + g * 587 + b * 114) / 1000;
+    }
+
+    /**
+     * Fork/join task accumulating the lines of a range of angles.
+     */
+    private class HoughTask extends RecursiveAction {
+        // range of angles, end excluded
+        private final int alphaStart;
+        private final int alphaEnd;
+
+        HoughTask(int alphaStart, int alphaEnd) {
+            this.alphaStart = alphaStart;
+            this.alphaEnd = alphaEnd;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.alphaEnd - this.alphaStart <= ANGLES_PER_TASK) {
+                calc(this.alphaStart, this.alphaEnd);
+                return;
+            }
+            int alphaMiddle = (this.alphaStart + this.alphaEnd) >>> 1;
+            invokeAll(new HoughTask(this.alphaStart, alphaMiddle), new HoughTask(alphaMiddle, this.alphaEnd));
+        }
+    }
+
+    /**
+     * Reader of the rows of the detection grid.
+     * The source pixels are fetched a row at a time in primitive arrays,
+     * and a pixel of the grid is black if the average luminance of its block is.
+     */
+    private class RowReader {
+        // luminance of each sample value, for images with a single band of 8 bits at most
+        private final int[] luminanceTable;
+        // true if the pixels are stored as RGB values, read without color conversion
+        private final boolean packedRgb;
+        // source row being read
+        private final int[] sourceRow;
+        // sum of the luminance of each block of the row
+        private final int[] blockSum;
+
+        RowReader() {
+            Raster raster = cImage.getRaster();
+            int sampleSize = raster.getSampleModel().getSampleSize(0);
+            if (raster.getNumBands() == 1 && sampleSize <= 8) {
+                ColorModel colorModel = cImage.getColorModel();
+                luminanceTable = new int[1 << sampleSize];
+                for (int sample = 0; sample < luminanceTable.length; sample++) {
+                    luminanceTable[sample] = getLuminance(colorModel.getRGB(sample));
+                }
+            } else {
+                luminanceTable = null;
+            }
+            packedRgb = cImage.getType() == BufferedImage.TYPE_INT_RGB || cImage.getType() == BufferedImage.TYPE_INT_ARGB;
+            sourceRow = new int[cImage.getWidth()];
+            blockSum = new int[cWidth];
+        }
+
+        // read a row of the grid, true for the black pixels
+        boolean[] read(int y) {
+            int width = cImage.getWidth();
+            int sourceStart = y * cFactor;
+            int sourceEnd = Math.min(sourceStart + cFactor, cImage.getHeight());
+            Arrays.fill(blockSum, 0);
+            for (int sourceY = sourceStart; sourceY < sourceEnd; sourceY++) {
+                if (luminanceTable == null) {
+                    if (packedRgb) {
+                        cImage.getRaster().getDataElements(0, sourceY, width, 1, sourceRow);
+                    } else {
+                        cImage.getRGB(0, sourceY, width, 1, sourceRow, 0, width);
+                    }
+                    for (int block = 0, x = 0; block < cWidth; block++) {
+                        int blockEnd = Math.min(x + cFactor, width);
+                        int sum = 0;
+                        for (; x < blockEnd; x++) {
+                            sum += getLuminance(sourceRow[x]);
+                        }
+                        blockSum[block] += sum;
+                    }
+                } else {
+                    cImage.getRaster().getSamples(0, sourceY, width, 1, 0, sourceRow);
+                    for (int block = 0, x = 0; block < cWidth; block++) {
+                        int blockEnd = Math.min(x + cFactor, width);
+                        int sum = 0;
+                        for (; x < blockEnd; x++) {
+                            sum += luminanceTable[sourceRow[x]];
+                        }
+                        blockSum[block] += sum;
+                    }
+                }
+            }
+
+            boolean[] row = new boolean[cWidth];
+            int rowCount = sourceEnd - sourceStart;
+            for (int x = 0; x < cWidth; x++) {
+                int blockCount = rowCount * (Math.min((x + 1) * cFactor, width) - x * cFactor);
+                row[x] = blockSum[x] < LUMINANCE_CUTOFF * blockCount;
+            }
+            return row;
+        }
+    }
 }
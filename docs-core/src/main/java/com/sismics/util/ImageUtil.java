@@ -4,8 +4,11 @@ import com.google.common.hash.Hashing;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -13,6 +16,7 @@ import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Iterator;
 
 /**
@@ -29,18 +33,45 @@ public class ImageUtil {
      * @throws IOException e
      */
     public static void writeJpeg(BufferedImage image, OutputStream outputStream) throws IOException {
-        Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName("jpeg");
+        writeImage(image, "jpeg", 1.f, false, outputStream);
+    }
+
+    /**
+     * Write an image.
+     *
+     * @param image Image
+     * @param formatName Image format, a JPEG is written without alpha channel
+     * @param quality Compression quality, from 0 to 1, if the format is compressed
+     * @param progressive If true, write a progressive image if the format allows it
+     * @param outputStream Output stream
+     * @throws IOException e
+     */
+    public static void writeImage(BufferedImage image, String formatName, float quality, boolean progressive,
+                                  OutputStream outputStream) throws IOException {
+        Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName(formatName);
+        if (!iter.hasNext()) {
+            throw new IOException("No image writer for the format: " + formatName);
+        }
         ImageWriter writer = null;
         ImageOutputStream imageOutputStream = null;
         try {
             writer = iter.next();
             ImageWriteParam iwp = writer.getDefaultWriteParam();
-            iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            iwp.setCompressionQuality(1.f);
+            if (iwp.canWriteCompressed()) {
+                iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                String[] compressionTypes = iwp.getCompressionTypes();
+                if (compressionTypes != null && iwp.getCompressionType() == null) {
+                    iwp.setCompressionType(compressionTypes[0]);
+                }
+                iwp.setCompressionQuality(quality);
+            }
+            if (progressive && iwp.canWriteProgressive()) {
+                iwp.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
             imageOutputStream = ImageIO.createImageOutputStream(outputStream);
             writer.setOutput(imageOutputStream);
 
-            if (image.getColorModel().hasAlpha()) {
+            if (formatName.equals("jpeg") && image.getColorModel().hasAlpha()) {
                 // Strip alpha channel
                 BufferedImage noAlphaImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
                 Graphics graphics = noAlphaImage.getGraphics();
@@ -65,7 +96,63 @@ public class ImageUtil {
             }
         }
     }
+
+    /**
+     * Returns true if images can be written in a format.
+     *
+     * @param formatName Image format
+     * @return True if an image writer is available
+     */
+    public static boolean canWrite(String formatName) {
+        return ImageIO.getImageWritersByFormatName(formatName).hasNext();
+    }
     
+    /**
+     * Read an image, subsampled while decoding so its longest side stays close to a size.
+     * The image is never held in memory at full resolution.
+     *
+     * @param file Image file
+     * @param size Minimum size of the longest side, the image is not subsampled below
+     * @return Image, null if the format is unknown
+     * @throws IOException e
+     */
+    public static BufferedImage readSubsampled(Path file, int size) throws IOException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(file.toFile())) {
+            if (inputStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> iter = ImageIO.getImageReaders(inputStream);
+            if (!iter.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = iter.next();
+            try {
+                reader.setInput(inputStream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), size);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the subsampling keeping the longest side of an image above a size.
+     *
+     * @param width Image width
+     * @param height Image height
+     * @param size Minimum size of the longest side
+     * @return Subsampling, 1 to read every pixel
+     */
+    static int getSubsampling(int width, int height, int size) {
+        return Math.max(1, Math.max(width, height) / size);
+    }
+
     /**
      * Compute Gravatar hash.
      * See https://en.gravatar.com/site/implement/hash/.
@@ -11,6 +11,8 @@ public class MimeType {
     public static final String IMAGE_JPEG = "image/jpeg";
     
     public static final String IMAGE_GIF = "image/gif";
+
+    public static final String IMAGE_WEBP = "image/webp";
     
     public static final String APPLICATION_ZIP = "application/zip";
 
@@ -1,7 +1,9 @@
 package com.sismics.util.mime;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -33,6 +35,32 @@ public class MimeTypeUtil {
         return mimeType;
     }
     
+    /**
+     * Guess the MIME type of an image from its first bytes.
+     * The stream is reset to its beginning.
+     *
+     * @param inputStream Input stream supporting mark
+     * @return MIME type
+     * @throws IOException e
+     */
+    public static String guessImageMimeType(InputStream inputStream) throws IOException {
+        inputStream.mark(12);
+        byte[] header = inputStream.readNBytes(12);
+        inputStream.reset();
+
+        if (header.length >= 3 && (header[0] & 0xff) == 0xff && (header[1] & 0xff) == 0xd8 && (header[2] & 0xff) == 0xff) {
+            return MimeType.IMAGE_JPEG;
+        }
+        if (header.length == 12 && new String(header, 0, 4, StandardCharsets.US_ASCII).equals("RIFF")
+                && new String(header, 8, 4, StandardCharsets.US_ASCII).equals("WEBP")) {
+            return MimeType.IMAGE_WEBP;
+        }
+        if (header.length >= 4 && (header[0] & 0xff) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return MimeType.IMAGE_PNG;
+        }
+        return MimeType.DEFAULT;
+    }
+
     /**
      * Get a file extension linked to a MIME type.
      * 
@@ -49,6 +77,8 @@ public class MimeTypeUtil {
                 return "jpg";
             case MimeType.IMAGE_PNG:
                 return "png";
+            case MimeType.IMAGE_WEBP:
+                return "webp";
             case MimeType.APPLICATION_PDF:
                 return "pdf";
             case MimeType.OPEN_DOCUMENT_TEXT:
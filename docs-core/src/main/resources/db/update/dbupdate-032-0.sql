@@ -0,0 +1,11 @@
+-- DBUPDATE-032-0.SQL
+
+-- Fulltext search vectors, maintained by PostgreSQL and used by its indexing handler
+!PGSQL!alter table T_DOCUMENT add column DOC_SEARCH_V tsvector generated always as (setweight(to_tsvector('simple', DOC_TITLE_C), 'A') || setweight(to_tsvector('simple', coalesce(DOC_DESCRIPTION_C, '')), 'B') || setweight(to_tsvector('simple', coalesce(DOC_SUBJECT_C, '') || ' ' || coalesce(DOC_IDENTIFIER_C, '') || ' ' || coalesce(DOC_PUBLISHER_C, '') || ' ' || coalesce(DOC_FORMAT_C, '') || ' ' || coalesce(DOC_SOURCE_C, '') || ' ' || coalesce(DOC_TYPE_C, '') || ' ' || coalesce(DOC_COVERAGE_C, '') || ' ' || coalesce(DOC_RIGHTS_C, '')), 'C')) stored;
+!PGSQL!alter table T_FILE add column FIL_CONTENT_V tsvector generated always as (to_tsvector('simple', left(coalesce(FIL_CONTENT_C, ''), 250000))) stored;
+!PGSQL!create index IDX_DOC_SEARCH_V on T_DOCUMENT using gin (DOC_SEARCH_V);
+!PGSQL!create index IDX_FIL_CONTENT_V on T_FILE using gin (FIL_CONTENT_V);
+!PGSQL!create index IDX_FIL_NAME_V on T_FILE using gin (to_tsvector('simple', coalesce(FIL_NAME_C, '')));
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '32' where CFG_ID_C = 'DB_VERSION';
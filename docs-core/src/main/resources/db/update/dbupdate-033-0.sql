@@ -0,0 +1,12 @@
+-- DBUPDATE-033-0.SQL
+
+-- Files update date, used to catch up the search index
+alter table T_FILE add column FIL_UPDATEDATE_D datetime;
+update T_FILE set FIL_UPDATEDATE_D = FIL_CREATEDATE_D;
+!H2!alter table T_FILE alter column FIL_UPDATEDATE_D datetime not null;
+!PGSQL!alter table T_FILE alter column FIL_UPDATEDATE_D set not null;
+create index IDX_FIL_UPDATEDATE_D on T_FILE (FIL_UPDATEDATE_D);
+create index IDX_DOC_UPDATEDATE_D on T_DOCUMENT (DOC_UPDATEDATE_D);
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '33' where CFG_ID_C = 'DB_VERSION';
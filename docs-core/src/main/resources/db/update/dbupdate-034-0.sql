@@ -0,0 +1,10 @@
+-- DBUPDATE-034-0.SQL
+
+-- File processing jobs, resumed on startup
+create cached table T_FILE_PROCESSING ( FPR_ID_C varchar(36) not null, FPR_IDFILE_C varchar(36) not null, FPR_IDUSER_C varchar(36) not null, FPR_LANGUAGE_C varchar(7), FPR_PRIORITY_C varchar(20) not null, FPR_STATE_C varchar(20) not null, FPR_ATTEMPT_N int not null, FPR_LASTERROR_C varchar(4000), FPR_CREATEDATE_D datetime not null, FPR_NEXTATTEMPTDATE_D datetime not null, FPR_STARTDATE_D datetime, FPR_ENDDATE_D datetime, primary key (FPR_ID_C) );
+alter table T_FILE_PROCESSING add constraint FK_FPR_IDFILE_C foreign key (FPR_IDFILE_C) references T_FILE (FIL_ID_C) on delete restrict on update restrict;
+create index IDX_FPR_STATE_C on T_FILE_PROCESSING (FPR_STATE_C, FPR_NEXTATTEMPTDATE_D);
+create index IDX_FPR_IDFILE_C on T_FILE_PROCESSING (FPR_IDFILE_C);
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '34' where CFG_ID_C = 'DB_VERSION';
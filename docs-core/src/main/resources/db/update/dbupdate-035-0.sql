@@ -0,0 +1,7 @@
+-- DBUPDATE-035-0.SQL
+
+-- Placeholder of the images generated from the files
+alter table T_FILE add column FIL_BLURHASH_C varchar(50);
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '35' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,49 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Tests the file DAO.
+ *
+ * @author bgamard
+ */
+public class TestFileDao extends BaseTransactionalTest {
+    @Test
+    public void testChangedSince() throws Exception {
+        FileDao fileDao = new FileDao();
+        Date start = new Date(System.currentTimeMillis() - 1000);
+        User user = createUser("testFileDaoChangedSince");
+        File file = createFile(user, 10);
+        TransactionUtil.commit();
+
+        // The update date is set on creation
+        Assert.assertNotNull(file.getUpdateDate());
+        Assert.assertTrue(fileDao.findIdChangedSince(start).contains(file.getId()));
+        Assert.assertFalse(fileDao.findIdChangedSince(new Date(System.currentTimeMillis() + 60000)).contains(file.getId()));
+        Map<String, Date> updateDateMap = fileDao.findUpdateDateAfterId(null, 1000);
+        Assert.assertEquals(file.getUpdateDate().getTime(), updateDateMap.get(file.getId()).getTime());
+
+        // The update date changes on update
+        Date updateDate = file.getUpdateDate();
+        Thread.sleep(10);
+        file.setContent("new content");
+        fileDao.update(file);
+        TransactionUtil.commit();
+        Assert.assertTrue(file.getUpdateDate().after(updateDate));
+
+        // Deleted files are changed, but not active
+        Date beforeDelete = new Date(System.currentTimeMillis() - 1000);
+        fileDao.delete(file.getId(), user.getId());
+        TransactionUtil.commit();
+        Assert.assertTrue(fileDao.findIdChangedSince(beforeDelete).contains(file.getId()));
+        Assert.assertFalse(fileDao.findUpdateDateAfterId(null, 1000).containsKey(file.getId()));
+    }
+}
@@ -0,0 +1,75 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.constant.FileProcessingState;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.FileProcessing;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests the file processing job DAO.
+ *
+ * @author bgamard
+ */
+public class TestFileProcessingDao extends BaseTransactionalTest {
+    @Test
+    public void testJobs() throws Exception {
+        FileDao fileDao = new FileDao();
+        FileProcessingDao fileProcessingDao = new FileProcessingDao();
+        User user = createUser("testFileProcessingDao");
+        File file = createFile(user, 10);
+        TransactionUtil.commit();
+
+        // The file without content is to process until a job is pending
+        Assert.assertTrue(getIdList(fileDao.findWithoutContentAfterId(null, 1000)).contains(file.getId()));
+        String id = fileProcessingDao.create(new FileProcessing()
+                .setFileId(file.getId())
+                .setUserId(user.getId())
+                .setPriority(FileProcessingPriority.REPROCESS));
+        TransactionUtil.commit();
+        Assert.assertFalse(getIdList(fileDao.findWithoutContentAfterId(null, 1000)).contains(file.getId()));
+
+        // The new job is pending and ready to run
+        FileProcessing fileProcessing = fileProcessingDao.getById(id);
+        Assert.assertEquals(FileProcessingState.PENDING, fileProcessing.getState());
+        Assert.assertEquals(0, fileProcessing.getAttempt().intValue());
+        Assert.assertTrue(isPending(id, new Date()));
+        Assert.assertFalse(isPending(id, new Date(System.currentTimeMillis() - 60000)));
+
+        // A running job is pending again after a restart
+        fileProcessing.setState(FileProcessingState.RUNNING).setAttempt(1);
+        fileProcessingDao.update(fileProcessing);
+        TransactionUtil.commit();
+        Assert.assertFalse(isPending(id, new Date()));
+        Assert.assertTrue(fileProcessingDao.countByState().get(FileProcessingState.RUNNING) >= 1);
+        Assert.assertTrue(fileProcessingDao.resetRunning() >= 1);
+        TransactionUtil.commit();
+        Assert.assertTrue(isPending(id, new Date()));
+        Assert.assertEquals(0, fileProcessingDao.countByState().get(FileProcessingState.RUNNING).longValue());
+
+        // The jobs done are purged after a while
+        fileProcessing.setState(FileProcessingState.DONE).setEndDate(new Date(1000));
+        fileProcessingDao.update(fileProcessing);
+        TransactionUtil.commit();
+        Assert.assertEquals(1, fileProcessingDao.deleteDoneBefore(new Date(2000)));
+        TransactionUtil.commit();
+        Assert.assertTrue(getIdList(fileDao.findWithoutContentAfterId(null, 1000)).contains(file.getId()));
+    }
+
+    private boolean isPending(String id, Date date) {
+        return new FileProcessingDao().findPendingBefore(date, 1000).stream()
+                .anyMatch(fileProcessing -> fileProcessing.getId().equals(id));
+    }
+
+    private List<String> getIdList(List<File> fileList) {
+        return fileList.stream().map(File::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,135 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test of the index rebuild listener.
+ *
+ * @author bgamard
+ */
+public class RebuildIndexAsyncListenerTest extends BaseTransactionalTest {
+    @Test
+    public void keepIndexOnFailedRead() throws Exception {
+        // A document with a file, in the database and in the index
+        User user = createUser("rebuildIndexFailedRead");
+        createIndexedDocument(user, "uranium");
+        Assert.assertEquals(1, searchContent(user, "uranium"));
+
+        // The files cannot be read, the rebuild must not replace the index with the documents only
+        RebuildIndexAsyncListener listener = new RebuildIndexAsyncListener() {
+            @Override
+            List<File> readFiles(String lastId, int limit) {
+                throw new IllegalStateException("Read failure");
+            }
+        };
+
+        // Run outside of the test transaction, as the listener does
+        Thread thread = new Thread(() -> listener.on(new RebuildIndexAsyncEvent()));
+        thread.start();
+        thread.join();
+
+        Assert.assertEquals(1, searchContent(user, "uranium"));
+    }
+
+    @Test
+    public void searchDuringSwap() throws Exception {
+        // A document with a file, in the database and in the index
+        User user = createUser("rebuildIndexSearchDuringSwap");
+        createIndexedDocument(user, "plutonium");
+        Assert.assertEquals(1, searchContent(user, "plutonium"));
+
+        // Rebuild and swap the index repeatedly
+        AtomicReference<Throwable> rebuildError = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                for (int i = 0; i < 5; i++) {
+                    new RebuildIndexAsyncListener().on(new RebuildIndexAsyncEvent());
+                }
+            } catch (Throwable e) {
+                rebuildError.set(e);
+            }
+        });
+        thread.start();
+
+        // The searches are never run on a closed index
+        while (thread.isAlive()) {
+            Assert.assertEquals(1, searchContent(user, "plutonium"));
+        }
+        thread.join();
+        Assert.assertNull(rebuildError.get());
+        Assert.assertEquals(1, searchContent(user, "plutonium"));
+    }
+
+    /**
+     * Create a document readable by its creator with a file, in the database and in the index.
+     *
+     * @param user Creator
+     * @param content Content of the file
+     * @throws Exception e
+     */
+    private void createIndexedDocument(User user, String content) throws Exception {
+        Document document = new Document();
+        document.setUserId(user.getId());
+        document.setTitle("Rebuild");
+        document.setLanguage("eng");
+        document.setCreateDate(new Date());
+        new DocumentDao().create(document, user.getId());
+        Acl acl = new Acl();
+        acl.setPerm(PermType.READ);
+        acl.setType(AclType.USER);
+        acl.setSourceId(document.getId());
+        acl.setTargetId(user.getId());
+        new AclDao().create(acl, user.getId());
+        File file = createFile(user, FILE_JPG_SIZE);
+        file.setDocumentId(document.getId());
+        file.setContent(content);
+        new FileDao().update(file);
+        TransactionUtil.commit();
+
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        indexingHandler.createDocument(document);
+        indexingHandler.createFile(file);
+    }
+
+    /**
+     * Count the documents of a user having a file matching a fulltext search.
+     *
+     * @param user User
+     * @param search Fulltext search
+     * @return Number of documents
+     * @throws Exception e
+     */
+    private int searchContent(User user, String search) throws Exception {
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList(user.getId()));
+        criteria.setFullSearch(search);
+        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create();
+        AppContext.getInstance().getIndexingHandler().findByCriteria(paginatedList, new ArrayList<>(), criteria, null);
+        return paginatedList.getResultList().size();
+    }
+}
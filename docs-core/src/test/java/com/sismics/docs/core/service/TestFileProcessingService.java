@@ -0,0 +1,75 @@
+package com.sismics.docs.core.service;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.constant.FileProcessingState;
+import com.sismics.docs.core.dao.FileProcessingDao;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.FileProcessing;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test of the file processing service.
+ *
+ * @author bgamard
+ */
+public class TestFileProcessingService extends BaseTransactionalTest {
+    @Test
+    public void testOrder() {
+        FileProcessingService fileProcessingService = new FileProcessingService(1);
+        List<String> runList = new ArrayList<>();
+        fileProcessingService.enqueue("user1", FileProcessingPriority.REPROCESS, () -> runList.add("user1-reprocess1"));
+        fileProcessingService.enqueue("user1", FileProcessingPriority.REPROCESS, () -> runList.add("user1-reprocess2"));
+        fileProcessingService.enqueue("user1", FileProcessingPriority.REPROCESS, () -> runList.add("user1-reprocess3"));
+        fileProcessingService.enqueue("user2", FileProcessingPriority.REPROCESS, () -> runList.add("user2-reprocess1"));
+        fileProcessingService.enqueue("user3", FileProcessingPriority.IMPORT, () -> runList.add("user3-import1"));
+        fileProcessingService.enqueue("user1", FileProcessingPriority.INTERACTIVE, () -> runList.add("user1-interactive1"));
+        Assert.assertEquals(6, fileProcessingService.getQueuedCount());
+        Assert.assertEquals(4, fileProcessingService.getQueuedCount(FileProcessingPriority.REPROCESS));
+        Assert.assertEquals(3, fileProcessingService.getQueuedUserCount());
+
+        // By priority, then each user in turn
+        Runnable task;
+        while ((task = fileProcessingService.poll()) != null) {
+            task.run();
+        }
+        Assert.assertEquals(Arrays.asList("user1-interactive1", "user3-import1",
+                "user1-reprocess1", "user2-reprocess1", "user1-reprocess2", "user1-reprocess3"), runList);
+        Assert.assertEquals(0, fileProcessingService.getQueuedCount());
+        Assert.assertEquals(0, fileProcessingService.getQueuedUserCount());
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        // A job saved before a restart, without the unencrypted file
+        User user = createUser("testFileProcessingResume");
+        File file = createFile(user, 10);
+        FileProcessingDao fileProcessingDao = new FileProcessingDao();
+        String id = fileProcessingDao.create(new FileProcessing()
+                .setFileId(file.getId())
+                .setUserId(user.getId())
+                .setPriority(FileProcessingPriority.REPROCESS));
+        TransactionUtil.commit();
+
+        // The scan runs it in the calling thread in unit tests, the stored file is decrypted again
+        AppContext.getInstance().getFileProcessingService().scan();
+        FileProcessing fileProcessing = fileProcessingDao.getById(id);
+        Assert.assertNotEquals(FileProcessingState.PENDING, fileProcessing.getState());
+        Assert.assertNotEquals(FileProcessingState.RUNNING, fileProcessing.getState());
+        Assert.assertEquals(1, fileProcessing.getAttempt().intValue());
+        Assert.assertNotNull(fileProcessing.getEndDate());
+        Assert.assertFalse(FileUtil.isProcessingFile(file.getId()));
+        Assert.assertTrue(Files.exists(DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_thumb")));
+    }
+}
@@ -0,0 +1,30 @@
+package com.sismics.docs.core.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of the OCR service.
+ *
+ * @author bgamard
+ */
+public class TestOcrService {
+    @Test
+    public void testAdmit() throws Exception {
+        OcrService ocrService = new OcrService(1, 500);
+        Assert.assertEquals(500 * 1024, ocrService.getAvailableMemory());
+
+        // An A4 page at 300 DPI reserves its estimated memory
+        int memory = ocrService.admit(2480, 3508);
+        Assert.assertEquals(OcrService.estimateMemory(2480, 3508), memory);
+        Assert.assertEquals(500 * 1024 - memory, ocrService.getAvailableMemory());
+        ocrService.release(memory);
+
+        // An image larger than the limit is admitted alone
+        memory = ocrService.admit(20000, 20000);
+        Assert.assertEquals(500 * 1024, memory);
+        Assert.assertEquals(0, ocrService.getAvailableMemory());
+        ocrService.release(memory);
+        Assert.assertEquals(500 * 1024, ocrService.getAvailableMemory());
+    }
+}
@@ -35,6 +35,27 @@ public class TestFileUtil extends BaseTest {
         Assert.assertTrue(content.contains("Lorem ipsum dolor sit amen."));
     }
     
+    @Test
+    public void extractContentStreamingTest() throws Exception {
+        Path path = Paths.get(getResource(FILE_PDF).toURI());
+        FormatHandler formatHandler = FormatHandlerUtil.find(MimeType.APPLICATION_PDF);
+        Assert.assertNotNull(formatHandler);
+        String expected = formatHandler.extractContent("eng", path);
+
+        // Written whole below the maximum length
+        ExtractedContent content = new ExtractedContent(Integer.MAX_VALUE);
+        formatHandler.extractContent("eng", path, content);
+        Assert.assertFalse(content.isTruncated());
+        Assert.assertEquals(expected.length(), content.getLength());
+        Assert.assertEquals(expected, content.read());
+
+        // Truncated at the maximum length
+        content = new ExtractedContent(50);
+        formatHandler.extractContent("eng", path, content);
+        Assert.assertTrue(content.isTruncated());
+        Assert.assertEquals(expected.substring(0, 50), content.read());
+    }
+
     @Test
     public void extractContentOfficeDocumentTest() throws Exception {
         Path path = Paths.get(getResource(FILE_DOCX).toURI());
@@ -0,0 +1,32 @@
+package com.sismics.docs.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.NavigableMap;
+
+/**
+ * Test of the file variant utilities.
+ *
+ * @author bgamard
+ */
+public class TestFileVariantUtil {
+    @Test
+    public void buildVariantsTest() {
+        // Default sizes, the thumbnail replaces the size 256
+        NavigableMap<Integer, String> variants = FileVariantUtil.buildVariants(null);
+        Assert.assertEquals(6, variants.size());
+        Assert.assertEquals("128", variants.get(128));
+        Assert.assertEquals("thumb", variants.get(256));
+        Assert.assertEquals("web", variants.get(1280));
+        Assert.assertEquals(2048, (int) variants.lastKey());
+
+        // Custom sizes, invalid ones are ignored
+        variants = FileVariantUtil.buildVariants(" 64, 4000 ,big,-1");
+        Assert.assertEquals(4, variants.size());
+        Assert.assertEquals("64", variants.get(64));
+        Assert.assertEquals("thumb", variants.get(256));
+        Assert.assertEquals("web", variants.get(1280));
+        Assert.assertEquals("4000", variants.get(4000));
+    }
+}
@@ -0,0 +1,86 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test of the search cache.
+ *
+ * @author bgamard
+ */
+public class TestCachedIndexingHandler {
+    @Test
+    public void findByCriteriaTest() throws Exception {
+        AtomicLong version = new AtomicLong();
+        AtomicInteger searchCount = new AtomicInteger();
+        IndexingHandler handler = (IndexingHandler) Proxy.newProxyInstance(IndexingHandler.class.getClassLoader(),
+                new Class<?>[] { IndexingHandler.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSearchVersion":
+                            return version.get();
+                        case "findByCriteria":
+                            searchCount.incrementAndGet();
+                            @SuppressWarnings("unchecked")
+                            PaginatedList<DocumentDto> paginatedList = (PaginatedList<DocumentDto>) args[0];
+                            paginatedList.setResultCount(1);
+                            DocumentDto documentDto = new DocumentDto();
+                            documentDto.setId("doc1");
+                            documentDto.setTitle("Title");
+                            paginatedList.setResultList(Lists.newArrayList(documentDto));
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        CachedIndexingHandler cachedHandler = new CachedIndexingHandler(handler);
+
+        // The first search is resolved by the handler
+        PaginatedList<DocumentDto> paginatedList = search(cachedHandler);
+        Assert.assertEquals(1, searchCount.get());
+        Assert.assertEquals(1, paginatedList.getResultCount());
+
+        // Changing a returned document doesn't change the cached one
+        paginatedList.getResultList().get(0).setTitle("Changed");
+        try {
+            paginatedList.getResultList().clear();
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // NOP
+        }
+        paginatedList = search(cachedHandler);
+        Assert.assertEquals(1, searchCount.get());
+        Assert.assertEquals("Title", paginatedList.getResultList().get(0).getTitle());
+
+        // A new version of the searched data is resolved again
+        version.incrementAndGet();
+        search(cachedHandler);
+        Assert.assertEquals(2, searchCount.get());
+    }
+
+    /**
+     * Search all documents readable by a user.
+     *
+     * @param handler Handler
+     * @return Result page
+     * @throws Exception e
+     */
+    private PaginatedList<DocumentDto> search(IndexingHandler handler) throws Exception {
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList("user1"));
+        PaginatedList<DocumentDto> paginatedList = new PaginatedList<>(10, 0);
+        List<String> suggestionList = new ArrayList<>();
+        handler.findByCriteria(paginatedList, suggestionList, criteria, new SortCriteria(3, false));
+        return paginatedList;
+    }
+}
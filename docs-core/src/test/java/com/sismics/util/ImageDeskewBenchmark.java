@@ -0,0 +1,129 @@
+package com.sismics.util;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the skew detection on the pages of a scanned document, prepared like the OCR service does.
+ * Not run by the unit tests, run it with the main method from the test classpath.
+ *
+ * @author bgamard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ImageDeskewBenchmark {
+    /**
+     * Rendering resolution of the scanned pages.
+     */
+    private static final int DPI = 300;
+
+    /**
+     * Size of the longest side of the images submitted to the OCR.
+     */
+    private static final int OCR_SIZE = 3500;
+
+    /**
+     * Size of the longest side of the grid the skew is detected on by the OCR.
+     */
+    private static final int DESKEW_SIZE = 1750;
+
+    /**
+     * Skew added to the scanned pages in degrees.
+     */
+    @Param({ "0", "3" })
+    public double skew;
+
+    /**
+     * Pages of the scanned document.
+     */
+    private final List<BufferedImage> pageList = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (InputStream inputStream = ClassLoader.getSystemResourceAsStream("file/scanned.pdf");
+             PDDocument pdfDocument = PDDocument.load(inputStream)) {
+            PDFRenderer renderer = new PDFRenderer(pdfDocument);
+            for (int i = 0; i < pdfDocument.getNumberOfPages(); i++) {
+                BufferedImage image = renderer.renderImageWithDPI(i, DPI, ImageType.RGB);
+                BufferedImage resizedImage = Scalr.resize(image, Scalr.Method.AUTOMATIC, Scalr.Mode.AUTOMATIC, OCR_SIZE, Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
+                image.flush();
+                if (skew == 0) {
+                    pageList.add(resizedImage);
+                } else {
+                    pageList.add(Scalr.rotate(resizedImage, skew, Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE));
+                    resizedImage.flush();
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (BufferedImage page : pageList) {
+            page.flush();
+        }
+        pageList.clear();
+    }
+
+    /**
+     * Detect the skew of the pages at full resolution.
+     *
+     * @return Sum of the angles
+     */
+    @Benchmark
+    public double fullResolution() {
+        double angle = 0;
+        for (BufferedImage page : pageList) {
+            angle += new ImageDeskew(page).getSkewAngle();
+        }
+        return angle;
+    }
+
+    /**
+     * Detect the skew of the pages on the grid used by the OCR.
+     *
+     * @return Sum of the angles
+     */
+    @Benchmark
+    public double grid() {
+        double angle = 0;
+        for (BufferedImage page : pageList) {
+            angle += new ImageDeskew(page, DESKEW_SIZE).getSkewAngle();
+        }
+        return angle;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ImageDeskewBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,41 @@
+package com.sismics.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Test of the BlurHash encoder.
+ *
+ * @author bgamard
+ */
+public class TestBlurHash {
+
+    @Test
+    public void encodeTest() {
+        BufferedImage image = new BufferedImage(32, 24, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+        // 4x3 components, the average color is white
+        String whiteHash = BlurHash.encode(image, 4, 3);
+        Assert.assertEquals(28, whiteHash.length());
+        Assert.assertEquals('L', whiteHash.charAt(0));
+        Assert.assertEquals("TSUA", whiteHash.substring(2, 6));
+
+        // A single component is the average color
+        Assert.assertEquals("00TSUA", BlurHash.encode(image, 1, 1));
+
+        // Half red
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, image.getWidth() / 2, image.getHeight());
+        graphics.dispose();
+        String redHash = BlurHash.encode(image, 4, 3);
+        Assert.assertEquals(28, redHash.length());
+        Assert.assertNotEquals(whiteHash, redHash);
+    }
+}
@@ -0,0 +1,63 @@
+package com.sismics.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Test of the skew detection.
+ *
+ * @author bgamard
+ */
+public class TestImageDeskew {
+
+    @Test
+    public void getSkewAngleTest() {
+        // A straight page
+        BufferedImage image = generatePage(0, BufferedImage.TYPE_BYTE_GRAY);
+        Assert.assertEquals(0, new ImageDeskew(image).getSkewAngle(), 0.3);
+        Assert.assertEquals(0, new ImageDeskew(image, 600).getSkewAngle(), 0.5);
+
+        // A page skewed clockwise, in grayscale and in color
+        image = generatePage(3, BufferedImage.TYPE_BYTE_GRAY);
+        Assert.assertEquals(3, new ImageDeskew(image).getSkewAngle(), 0.3);
+        Assert.assertEquals(3, new ImageDeskew(image, 600).getSkewAngle(), 0.5);
+        image = generatePage(-4, BufferedImage.TYPE_INT_RGB);
+        Assert.assertEquals(-4, new ImageDeskew(image).getSkewAngle(), 0.3);
+        Assert.assertEquals(-4, new ImageDeskew(image, 600).getSkewAngle(), 0.5);
+
+        // A blank page
+        image = generatePage(0, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+        Assert.assertEquals(0, new ImageDeskew(image).getSkewAngle(), 0);
+    }
+
+    /**
+     * Generate a page of lines of words, skewed by an angle.
+     *
+     * @param angle Angle in degrees
+     * @param type Image type
+     * @return Page
+     */
+    private BufferedImage generatePage(double angle, int type) {
+        BufferedImage image = new BufferedImage(1240, 1750, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setColor(Color.BLACK);
+        graphics.rotate(Math.toRadians(angle), image.getWidth() / 2.0, image.getHeight() / 2.0);
+        for (int y = 100; y < 1650; y += 30) {
+            for (int x = 80; x < 1100; x += 70 + (x + y) % 40) {
+                graphics.fillRect(x, y, 40 + (x * y) % 25, 12);
+            }
+        }
+        graphics.dispose();
+        return image;
+    }
+}
@@ -1,8 +1,20 @@
 package com.sismics.util;
 
+import com.sismics.util.mime.MimeType;
+import com.sismics.util.mime.MimeTypeUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 /**
  * Test of the image utilities.
  * 
@@ -14,4 +26,43 @@ public class TestImageUtil {
     public void computeGravatarTest() {
         Assert.assertEquals("0bc83cb571cd1c50ba6f3e8a78ef1346", ImageUtil.computeGravatar("MyEmailAddress@example.com "));
     }
+
+    @Test
+    public void readSubsampledTest() throws Exception {
+        Path file = Files.createTempFile("sismics_docs", ".png");
+        try {
+            ImageIO.write(new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+
+            // One pixel out of 3 is decoded, the longest side stays above the size
+            BufferedImage image = ImageUtil.readSubsampled(file, 256);
+            Assert.assertEquals(334, image.getWidth());
+            Assert.assertEquals(167, image.getHeight());
+
+            // Small images are read fully
+            image = ImageUtil.readSubsampled(file, 1280);
+            Assert.assertEquals(1000, image.getWidth());
+            Assert.assertEquals(3, ImageUtil.getSubsampling(500, 1000, 256));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void writeImageTest() throws Exception {
+        BufferedImage image = new BufferedImage(1280, 905, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.WHITE, 1280, 905, Color.BLUE));
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+
+        // A progressive JPEG of lower quality is smaller and still readable
+        ByteArrayOutputStream highQuality = new ByteArrayOutputStream();
+        ImageUtil.writeJpeg(image, highQuality);
+        ByteArrayOutputStream lowQuality = new ByteArrayOutputStream();
+        ImageUtil.writeImage(image, "jpeg", 0.8f, true, lowQuality);
+        Assert.assertTrue(lowQuality.size() < highQuality.size());
+        BufferedImage readImage = ImageIO.read(new ByteArrayInputStream(lowQuality.toByteArray()));
+        Assert.assertEquals(1280, readImage.getWidth());
+        Assert.assertEquals(MimeType.IMAGE_JPEG, MimeTypeUtil.guessImageMimeType(new ByteArrayInputStream(lowQuality.toByteArray())));
+    }
 }
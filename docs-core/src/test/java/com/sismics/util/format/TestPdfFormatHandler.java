@@ -1,11 +1,14 @@
 package com.sismics.util.format;
 
 import com.sismics.BaseTest;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
 import com.sismics.docs.core.util.format.PdfFormatHandler;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
 import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * Test of {@link PdfFormatHandler}
@@ -25,4 +28,33 @@ public class TestPdfFormatHandler extends BaseTest {
         Assert.assertTrue(content.contains("Grundumsatzmessungen"));
         Assert.assertTrue(content.contains("ermitteln"));
     }
+
+    /**
+     * Test the separation of the pages in the extracted content.
+     */
+    @Test
+    public void testPages() throws Exception {
+        PdfFormatHandler formatHandler = new PdfFormatHandler();
+        String content = formatHandler.extractContent("eng", Paths.get(getResource(FILE_PDF).toURI()));
+        List<String> pageList = FormatHandlerUtil.splitPages(content);
+        Assert.assertEquals(8, pageList.size());
+        for (String page : pageList) {
+            Assert.assertFalse(page.trim().isEmpty());
+        }
+
+        // A content without separator is a single page
+        Assert.assertEquals(1, FormatHandlerUtil.splitPages("single page").size());
+        Assert.assertEquals(1, FormatHandlerUtil.splitPages("").size());
+    }
+
+    /**
+     * Test the rendering of the thumbnail at the size requested.
+     */
+    @Test
+    public void testThumbnail() throws Exception {
+        PdfFormatHandler formatHandler = new PdfFormatHandler();
+        BufferedImage image = formatHandler.generateThumbnail(Paths.get(getResource(FILE_PDF).toURI()), 256);
+        int size = Math.max(image.getWidth(), image.getHeight());
+        Assert.assertTrue(size >= 255 && size <= 256);
+    }
 }
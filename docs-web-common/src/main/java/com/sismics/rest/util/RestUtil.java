@@ -36,7 +36,8 @@ public class RestUtil {
                     .add("mimetype", fileDb.getMimeType())
                     .add("document_id", JsonUtil.nullable(fileDb.getDocumentId()))
                     .add("create_date", fileDb.getCreateDate().getTime())
-                    .add("size", fileSize);
+                    .add("size", fileSize)
+                    .add("blurhash", JsonUtil.nullable(fileDb.getBlurHash()));
         } catch (IOException e) {
             throw new ServerException("FileError", "Unable to get the size of " + fileDb.getId(), e);
         }
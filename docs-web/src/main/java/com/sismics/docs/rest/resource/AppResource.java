@@ -3,17 +3,24 @@ package com.sismics.docs.rest.resource;
 import com.google.common.base.Strings;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.constant.FileProcessingState;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.FileProcessingDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
+import com.sismics.docs.core.event.ReencodeVariantsAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.indexing.IndexStatus;
+import com.sismics.docs.core.util.indexing.RebuildIndexProgress;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.rest.constant.BaseFunction;
@@ -74,6 +81,29 @@ public class AppResource extends BaseResource {
      * @apiSuccess {String} active_user_count Number of active users
      * @apiSuccess {String} global_storage_current Global storage currently used (in bytes)
      * @apiSuccess {String} global_storage_quota Maximum global storage (in bytes)
+     * @apiSuccess {Object} index_rebuild Progress of the current or last index rebuild
+     * @apiSuccess {Boolean} index_rebuild.running True if the index is being rebuilt
+     * @apiSuccess {Number} index_rebuild.total Number of documents and files to index
+     * @apiSuccess {Number} index_rebuild.done Number of documents and files indexed
+     * @apiSuccess {Number} index_rebuild.rate Documents and files indexed per second
+     * @apiSuccess {Number} index_rebuild.eta Estimated remaining time (in seconds, -1 if unknown)
+     * @apiSuccess {Object} index Index storage
+     * @apiSuccess {String} index.storage Storage mode (RAM, BYTEBUFFERS, FILE, MMAP)
+     * @apiSuccess {Number} index.size Size of the index (in bytes)
+     * @apiSuccess {Number} index.heap_size Memory used on the Java heap (in bytes)
+     * @apiSuccess {Number} index.off_heap_size Memory used outside the Java heap, direct buffers or mapped files (in bytes)
+     * @apiSuccess {Object} search_cache Search result cache
+     * @apiSuccess {Number} search_cache.hit_count Number of searches served by the cache
+     * @apiSuccess {Number} search_cache.miss_count Number of searches missing the cache
+     * @apiSuccess {Number} search_cache.size Number of result pages in the cache
+     * @apiSuccess {Object} file_processing File processing queue
+     * @apiSuccess {Number} file_processing.threads Number of workers
+     * @apiSuccess {Number} file_processing.in_flight Number of files being processed
+     * @apiSuccess {Number} file_processing.completed Number of files processed
+     * @apiSuccess {Number} file_processing.failed Number of files failed to process
+     * @apiSuccess {Number} file_processing.queued_users Number of users having files waiting
+     * @apiSuccess {Object} file_processing.queued Number of files waiting, by priority (interactive, import, reprocess)
+     * @apiSuccess {Object} file_processing.jobs Number of saved processing jobs, by state (pending, running, done, failed)
      * @apiPermission none
      * @apiVersion 1.5.0
      *
@@ -111,6 +141,43 @@ public class AppResource extends BaseResource {
             response.add("global_storage_quota", globalQuota);
         }
 
+        RebuildIndexProgress rebuildIndexProgress = AppContext.getInstance().getRebuildIndexProgress();
+        response.add("index_rebuild", Json.createObjectBuilder()
+                .add("running", rebuildIndexProgress.isRunning())
+                .add("total", rebuildIndexProgress.getTotal())
+                .add("done", rebuildIndexProgress.getDone())
+                .add("rate", rebuildIndexProgress.getRate())
+                .add("eta", rebuildIndexProgress.getEta()));
+
+        IndexStatus indexStatus = AppContext.getInstance().getIndexingHandler().getStatus();
+        response.add("index", Json.createObjectBuilder()
+                .add("storage", indexStatus.getStorage())
+                .add("size", indexStatus.getSize())
+                .add("heap_size", indexStatus.getHeapSize())
+                .add("off_heap_size", indexStatus.getOffHeapSize()));
+        response.add("search_cache", Json.createObjectBuilder()
+                .add("hit_count", indexStatus.getSearchCacheHitCount())
+                .add("miss_count", indexStatus.getSearchCacheMissCount())
+                .add("size", indexStatus.getSearchCacheSize()));
+
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        JsonObjectBuilder queued = Json.createObjectBuilder();
+        for (FileProcessingPriority priority : FileProcessingPriority.values()) {
+            queued.add(priority.name().toLowerCase(), fileProcessingService.getQueuedCount(priority));
+        }
+        JsonObjectBuilder jobs = Json.createObjectBuilder();
+        for (Map.Entry<FileProcessingState, Long> entry : new FileProcessingDao().countByState().entrySet()) {
+            jobs.add(entry.getKey().name().toLowerCase(), entry.getValue());
+        }
+        response.add("file_processing", Json.createObjectBuilder()
+                .add("threads", fileProcessingService.getThreadCount())
+                .add("in_flight", fileProcessingService.getInFlightCount())
+                .add("completed", fileProcessingService.getCompletedCount())
+                .add("failed", fileProcessingService.getFailedCount())
+                .add("queued_users", fileProcessingService.getQueuedUserCount())
+                .add("queued", queued)
+                .add("jobs", jobs));
+
         return Response.ok().entity(response.build()).build();
     }
 
@@ -632,6 +699,69 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Process again the files without content.
+     *
+     * @api {post} /app/batch/process_missing_content Process again the files without content
+     * @apiDescription The files are processed in the background with the lowest priority,
+     * files already waiting for a processing are skipped.
+     * @apiName PostAppBatchProcessMissingContent
+     * @apiGroup App
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {Number} count Number of files to process
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @POST
+    @Path("batch/process_missing_content")
+    public Response batchProcessMissingContent() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        int count = AppContext.getInstance().getFileProcessingService().createMissingContentJobs();
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok")
+                .add("count", count);
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Encode again the images generated from the files.
+     *
+     * @api {post} /app/batch/reencode_variants Encode again the web images and thumbnails
+     * @apiDescription The images are encoded in the background with the current format, quality and sizes,
+     * the largest image of each file is decoded and all images and the placeholder are generated again.
+     * @apiName PostAppBatchReencodeVariants
+     * @apiGroup App
+     * @apiSuccess {String} status Status OK
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @POST
+    @Path("batch/reencode_variants")
+    public Response batchReencodeVariants() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        ThreadLocalContext.get().addAsyncEvent(new ReencodeVariantsAsyncEvent());
+
+        // Always return OK
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok");
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Clean storage.
      *
@@ -18,6 +18,7 @@ import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.AclDto;
 import com.sismics.docs.core.dao.dto.ContributorDto;
 import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.DocumentFacetsDto;
 import com.sismics.docs.core.dao.dto.RelationDto;
 import com.sismics.docs.core.dao.dto.RouteStepDto;
 import com.sismics.docs.core.dao.dto.TagDto;
@@ -389,6 +390,9 @@ public class DocumentResource extends BaseResource {
      * @apiSuccess {Object[]} documents List of documents
      * @apiSuccess {String} documents.id ID
      * @apiSuccess {String} documents.highlight Search highlight (for fulltext search)
+     * @apiSuccess {Object[]} documents.matched_pages Pages matching the search in the paginated files (for fulltext search)
+     * @apiSuccess {String} documents.matched_pages.file_id File ID
+     * @apiSuccess {Number[]} documents.matched_pages.pages Page numbers, starting at 1
      * @apiSuccess {String} documents.file_id Main file ID
      * @apiSuccess {String} documents.title Title
      * @apiSuccess {String} documents.description Description
@@ -523,6 +527,20 @@ public class DocumentResource extends BaseResource {
                     .add("file_count", filesCount)
                     .add("tags", createTagsArrayBuilder(tagDtoList));
 
+            if (documentDto.getMatchedPageMap() != null) {
+                JsonArrayBuilder matchedPagesArrayBuilder = Json.createArrayBuilder();
+                for (Map.Entry<String, List<Integer>> entry : documentDto.getMatchedPageMap().entrySet()) {
+                    JsonArrayBuilder pagesArrayBuilder = Json.createArrayBuilder();
+                    for (Integer page : entry.getValue()) {
+                        pagesArrayBuilder.add(page);
+                    }
+                    matchedPagesArrayBuilder.add(Json.createObjectBuilder()
+                            .add("file_id", entry.getKey())
+                            .add("pages", pagesArrayBuilder));
+                }
+                documentObjectBuilder.add("matched_pages", matchedPagesArrayBuilder);
+            }
+
             if (Boolean.TRUE == files) {
                 JsonArrayBuilder filesArrayBuilder = Json.createArrayBuilder();
                 for (File fileDb : filesOfDocument) {
@@ -610,6 +628,210 @@ public class DocumentResource extends BaseResource {
         );
     }
 
+    /**
+     * Returns the number of documents by tag, MIME type, language, creator and creation year.
+     *
+     * @api {get} /document/facets Get document facets
+     * @apiDescription Counts the documents matching the same search parameters as the GET /document/list endpoint, in one pass
+     * @apiName GetDocumentFacets
+     * @apiGroup Document
+     * @apiParam {String} [search] Search query (see "Document search syntax" on the top of the page for explanations)
+     * @apiSuccess {Number} total Total number of documents
+     * @apiSuccess {Object[]} tags Number of documents by tag
+     * @apiSuccess {String} tags.id ID
+     * @apiSuccess {String} tags.name Name
+     * @apiSuccess {String} tags.color Color
+     * @apiSuccess {Number} tags.count Number of documents
+     * @apiSuccess {Object[]} mimetypes Number of documents by MIME type of their files
+     * @apiSuccess {String} mimetypes.value MIME type
+     * @apiSuccess {Number} mimetypes.count Number of documents
+     * @apiSuccess {Object[]} languages Number of documents by language
+     * @apiSuccess {String} languages.value Language
+     * @apiSuccess {Number} languages.count Number of documents
+     * @apiSuccess {Object[]} creators Number of documents by creator
+     * @apiSuccess {String} creators.id User ID
+     * @apiSuccess {String} creators.username Username
+     * @apiSuccess {Number} creators.count Number of documents
+     * @apiSuccess {Object[]} years Number of documents by creation year
+     * @apiSuccess {String} years.value Year
+     * @apiSuccess {Number} years.count Number of documents
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param search Search query
+     * @return Response
+     */
+    @GET
+    @Path("facets")
+    public Response facets(
+            @QueryParam("search") String search,
+
+            @QueryParam("search[after]") String searchCreatedAfter,
+            @QueryParam("search[before]") String searchCreatedBefore,
+            @QueryParam("search[by]") String searchBy,
+            @QueryParam("search[full]") String searchFull,
+            @QueryParam("search[lang]") String searchLang,
+            @QueryParam("search[mime]") String searchMime,
+            @QueryParam("search[shared]") Boolean searchShared,
+            @QueryParam("search[simple]") String searchSimple,
+            @QueryParam("search[tag]") String searchTag,
+            @QueryParam("search[nottag]") String searchTagNot,
+            @QueryParam("search[title]") String searchTitle,
+            @QueryParam("search[uafter]") String searchUpdatedAfter,
+            @QueryParam("search[ubefore]") String searchUpdatedBefore,
+            @QueryParam("search[searchworkflow]") String searchWorkflow
+    ) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        TagDao tagDao = new TagDao();
+        List<TagDto> allTagDtoList = tagDao.findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
+
+        DocumentCriteria documentCriteria = DocumentSearchCriteriaUtil.parseSearchQuery(search, allTagDtoList);
+        DocumentSearchCriteriaUtil.addHttpSearchParams(
+                documentCriteria,
+                searchBy,
+                searchCreatedAfter,
+                searchCreatedBefore,
+                searchFull,
+                searchLang,
+                searchMime,
+                searchShared,
+                searchSimple,
+                searchTag,
+                searchTagNot,
+                searchTitle,
+                searchUpdatedAfter,
+                searchUpdatedBefore,
+                searchWorkflow,
+                allTagDtoList);
+        documentCriteria.setTargetIdList(getTargetIdList(null));
+
+        DocumentFacetsDto documentFacetsDto;
+        try {
+            documentFacetsDto = AppContext.getInstance().getIndexingHandler().findFacets(documentCriteria);
+        } catch (Exception e) {
+            throw new ServerException("SearchError", "Error searching in documents", e);
+        }
+
+        // Only the tags visible by the current user are returned
+        JsonArrayBuilder tags = Json.createArrayBuilder();
+        for (TagDto tagDto : allTagDtoList) {
+            Long count = documentFacetsDto.getTagCountMap().get(tagDto.getId());
+            if (count != null) {
+                tags.add(Json.createObjectBuilder()
+                        .add("id", tagDto.getId())
+                        .add("name", tagDto.getName())
+                        .add("color", tagDto.getColor())
+                        .add("count", count));
+            }
+        }
+
+        UserDao userDao = new UserDao();
+        JsonArrayBuilder creators = Json.createArrayBuilder();
+        for (Map.Entry<String, Long> entry : sortByCount(documentFacetsDto.getCreatorCountMap())) {
+            User user = userDao.getById(entry.getKey());
+            if (user != null) {
+                creators.add(Json.createObjectBuilder()
+                        .add("id", user.getId())
+                        .add("username", user.getUsername())
+                        .add("count", entry.getValue()));
+            }
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("total", documentFacetsDto.getTotal())
+                .add("tags", tags)
+                .add("mimetypes", createFacetArrayBuilder(documentFacetsDto.getMimeTypeCountMap()))
+                .add("languages", createFacetArrayBuilder(documentFacetsDto.getLanguageCountMap()))
+                .add("creators", creators)
+                .add("years", createFacetArrayBuilder(documentFacetsDto.getYearCountMap()));
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Sort facet counts, the most frequent value first.
+     *
+     * @param countMap Counts by value
+     * @return Sorted counts
+     */
+    private List<Map.Entry<String, Long>> sortByCount(Map<String, Long> countMap) {
+        List<Map.Entry<String, Long>> entryList = new ArrayList<>(countMap.entrySet());
+        entryList.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        return entryList;
+    }
+
+    /**
+     * Create a JSON array of facet counts.
+     *
+     * @param countMap Counts by value
+     * @return JSON array builder
+     */
+    private JsonArrayBuilder createFacetArrayBuilder(Map<String, Long> countMap) {
+        JsonArrayBuilder facets = Json.createArrayBuilder();
+        for (Map.Entry<String, Long> entry : sortByCount(countMap)) {
+            facets.add(Json.createObjectBuilder()
+                    .add("value", entry.getKey())
+                    .add("count", entry.getValue()));
+        }
+        return facets;
+    }
+
+    /**
+     * Returns search suggestions completing the last word of a search query.
+     *
+     * @api {get} /document/suggest Get search suggestions
+     * @apiName GetDocumentSuggest
+     * @apiGroup Document
+     * @apiParam {String} search Search query
+     * @apiParam {Number} [limit] Maximum number of suggestions (default is <code>10</code>, maximum is <code>100</code>)
+     * @apiSuccess {String[]} suggestions List of search suggestions
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param search Search query
+     * @param limit Maximum number of suggestions
+     * @return Response
+     */
+    @GET
+    @Path("suggest")
+    public Response suggest(
+            @QueryParam("search") String search,
+            @QueryParam("limit") Integer limit) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        if (limit == null) {
+            limit = 10;
+        }
+        if (limit < 1 || limit > 100) {
+            throw new ClientException("ValidationError", "limit must be between 1 and 100");
+        }
+
+        List<String> suggestionList;
+        try {
+            suggestionList = AppContext.getInstance().getIndexingHandler().suggest(search, getTargetIdList(null), limit);
+        } catch (Exception e) {
+            throw new ServerException("SearchError", "Error searching in documents", e);
+        }
+
+        JsonArrayBuilder suggestions = Json.createArrayBuilder();
+        for (String suggestion : suggestionList) {
+            suggestions.add(suggestion);
+        }
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("suggestions", suggestions);
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Creates a new document.
      *
@@ -3,6 +3,7 @@ package com.sismics.docs.rest.resource;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.DocumentDao;
@@ -18,6 +19,7 @@ import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.FileVariantUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -27,6 +29,7 @@ import com.sismics.util.HttpUtil;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.mime.MimeType;
+import com.sismics.util.mime.MimeTypeUtil;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataParam;
 
@@ -39,6 +42,7 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.StreamingOutput;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
@@ -200,12 +204,12 @@ public class FileResource extends BaseResource {
         try {
             java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
             java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
-            FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent fileUpdatedAsyncEvent = new FileUpdatedAsyncEvent();
             fileUpdatedAsyncEvent.setUserId(principal.getId());
             fileUpdatedAsyncEvent.setLanguage(documentDto.getLanguage());
             fileUpdatedAsyncEvent.setFileId(file.getId());
             fileUpdatedAsyncEvent.setUnencryptedFile(unencryptedFile);
+            FileUtil.startProcessingFile(fileUpdatedAsyncEvent);
             ThreadLocalContext.get().addAsyncEvent(fileUpdatedAsyncEvent);
             
             DocumentUpdatedAsyncEvent documentUpdatedAsyncEvent = new DocumentUpdatedAsyncEvent();
@@ -308,12 +312,13 @@ public class FileResource extends BaseResource {
         try {
             java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
             java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
-            FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
             event.setUserId(principal.getId());
             event.setLanguage(documentDto.getLanguage());
             event.setFileId(file.getId());
             event.setUnencryptedFile(unencryptedFile);
+            event.setPriority(FileProcessingPriority.REPROCESS);
+            FileUtil.startProcessingFile(event);
             ThreadLocalContext.get().addAsyncEvent(event);
         } catch (Exception e) {
             throw new ServerException("ProcessingError", "Error processing this file", e);
@@ -401,6 +406,7 @@ public class FileResource extends BaseResource {
      * @apiSuccess {String} files.document_id Document ID
      * @apiSuccess {String} files.create_date Create date (timestamp)
      * @apiSuccess {String} files.size File size (in bytes)
+     * @apiSuccess {String} files.blurhash BlurHash placeholder of the file images
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) NotFound Document not found
      * @apiError (server) FileError Unable to get the size of a file
@@ -550,9 +556,9 @@ public class FileResource extends BaseResource {
      * @apiGroup File
      * @apiParam {String} id File ID
      * @apiParam {String} share Share ID
-     * @apiParam {String="web","thumb","content"} [size] Size variation
+     * @apiParam {String} [size] Size variation: web, thumb, content, or the size in pixels of the longest side of the image wanted
      * @apiSuccess {Object} file The file data is the whole response
-     * @apiError (client) SizeError Size must be web or thumb
+     * @apiError (client) SizeError Size must be web, thumb, content or a number of pixels
      * @apiError (client) ForbiddenError Access denied or document not visible
      * @apiError (client) NotFound File not found
      * @apiError (server) ServiceUnavailable Error reading the file
@@ -571,8 +577,8 @@ public class FileResource extends BaseResource {
             @QueryParam("size") String size) {
         authenticate();
         
-        if (size != null && !Lists.newArrayList("web", "thumb", "content").contains(size)) {
-            throw new ClientException("SizeError", "Size must be web, thumb or content");
+        if (size != null && !Lists.newArrayList("web", "thumb", "content").contains(size) && !size.matches("[0-9]{1,5}")) {
+            throw new ClientException("SizeError", "Size must be web, thumb, content or a number of pixels");
         }
 
         // Get the file
@@ -590,8 +596,20 @@ public class FileResource extends BaseResource {
                         .build();
             }
 
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_" + size);
-            mimeType = MimeType.IMAGE_JPEG; // Thumbnails are JPEG
+            if (!FileVariantUtil.hasVariants(fileId) && (FileVariantUtil.isLazy() || !FileUtil.isProcessingFile(fileId))) {
+                // Generate the images on their first request, unless the file processing is generating them
+                FileVariantUtil.generateVariants(file, userDao.getById(file.getUserId()).getPrivateKey());
+            }
+
+            if (!size.equals("web") && !size.equals("thumb")) {
+                // Serve the closest image generated
+                int pixels = Integer.parseInt(size);
+                String variant = FileVariantUtil.negotiate(fileId, pixels);
+                size = variant == null ? (pixels > FileVariantUtil.THUMBNAIL_SIZE ? "web" : "thumb") : variant;
+            }
+
+            storedFile = FileVariantUtil.getVariantFile(fileId, size);
+            mimeType = null; // Thumbnails are JPEG or WebP, read from the image
             decrypt = true; // Thumbnails are encrypted
             if (!Files.exists(storedFile)) {
                 try {
@@ -617,8 +635,13 @@ public class FileResource extends BaseResource {
         // Write the decrypted file to the output
         try {
             InputStream fileInputStream = Files.newInputStream(storedFile);
-            final InputStream responseInputStream = decrypt ?
+            InputStream inputStream = decrypt ?
                     EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
+            if (mimeType == null) {
+                inputStream = new BufferedInputStream(inputStream);
+                mimeType = MimeTypeUtil.guessImageMimeType(inputStream);
+            }
+            final InputStream responseInputStream = inputStream;
                     
             stream = outputStream -> {
                 try {
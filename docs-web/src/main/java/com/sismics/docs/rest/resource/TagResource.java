@@ -4,9 +4,11 @@ import com.google.common.collect.Sets;
 import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.event.AclDeletedAsyncEvent;
 import com.sismics.docs.core.model.jpa.Acl;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -14,6 +16,7 @@ import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.util.AclUtil;
 import com.sismics.rest.util.ValidationUtil;
+import com.sismics.util.context.ThreadLocalContext;
 import org.apache.commons.lang3.StringUtils;
 
 import jakarta.json.Json;
@@ -334,9 +337,18 @@ public class TagResource extends BaseResource {
             throw new NotFoundException();
         }
 
-        // Delete the tag
+        // Delete the tag, its documents are unlinked
+        List<String> documentIdList = new DocumentDao().findIdByTagId(id);
         TagDao tagDao = new TagDao();
         tagDao.delete(id, principal.getId());
+
+        // Raise an ACL deleted event, the documents no longer inherit the tag permissions
+        AclDeletedAsyncEvent event = new AclDeletedAsyncEvent()
+                .setDocumentIdList(documentIdList);
+        event.setUserId(principal.getId());
+        event.setSourceId(id);
+        event.setPerm(PermType.READ);
+        ThreadLocalContext.get().addAsyncEvent(event);
         
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -62,6 +62,12 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertEquals("eng", json.getString("default_language"));
         Assert.assertTrue(json.containsKey("global_storage_current"));
         Assert.assertTrue(json.getJsonNumber("active_user_count").longValue() > 0);
+        JsonObject fileProcessing = json.getJsonObject("file_processing");
+        Assert.assertTrue(fileProcessing.getInt("threads") > 0);
+        Assert.assertEquals(0, fileProcessing.getInt("in_flight"));
+        Assert.assertEquals(0, fileProcessing.getInt("queued_users"));
+        Assert.assertEquals(0, fileProcessing.getJsonObject("queued").getInt("interactive"));
+        Assert.assertEquals(0, fileProcessing.getJsonObject("jobs").getInt("running"));
 
         // Rebuild Lucene index
         Response response = target().path("/app/batch/reindex").request()
@@ -69,12 +75,49 @@ public class TestAppResource extends BaseJerseyTest {
                 .post(Entity.form(new Form()));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
 
+        // Check the index rebuild progress
+        json = target().path("/app").request()
+                .get(JsonObject.class);
+        JsonObject indexRebuild = json.getJsonObject("index_rebuild");
+        Assert.assertFalse(indexRebuild.getBoolean("running"));
+        Assert.assertEquals(indexRebuild.getJsonNumber("total").longValue(), indexRebuild.getJsonNumber("done").longValue());
+        JsonObject index = json.getJsonObject("index");
+        Assert.assertNotNull(index.getString("storage"));
+        Assert.assertTrue(index.getJsonNumber("size").longValue() > 0);
+
+        // The same search twice is served by the search cache
+        long hitCount = json.getJsonObject("search_cache").getJsonNumber("hit_count").longValue();
+        for (int i = 0; i < 2; i++) {
+            target().path("/document/list")
+                    .queryParam("sort_column", 3)
+                    .queryParam("asc", false)
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                    .get(JsonObject.class);
+        }
+        json = target().path("/app").request()
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getJsonObject("search_cache").getJsonNumber("hit_count").longValue() > hitCount);
+
         // Clean storage
         response = target().path("/app/batch/clean_storage").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
                 .post(Entity.form(new Form()));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
 
+        // Process again the files without content
+        json = target().path("/app/batch/process_missing_content").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form()), JsonObject.class);
+        Assert.assertEquals("ok", json.getString("status"));
+        Assert.assertTrue(json.getInt("count") >= 0);
+
+        // Encode again the images generated from the files
+        json = target().path("/app/batch/reencode_variants").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form()), JsonObject.class);
+        Assert.assertEquals("ok", json.getString("status"));
+
         // Change the default language
         response = target().path("/app/config").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
@@ -189,6 +189,39 @@ public class TestDocumentResource extends BaseJerseyTest {
         String suggestion = json.getJsonArray("suggestions").getString(0);
         Assert.assertEquals("document", suggestion);
 
+        // Check suggestions from the dedicated endpoint
+        json = target().path("/document/suggest")
+                .queryParam("search", "super docu")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals("document", json.getJsonArray("suggestions").getString(0));
+
+        // Count documents by facet
+        json = target().path("/document/facets")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(2, json.getJsonNumber("total").longValue());
+        JsonArray tagFacets = json.getJsonArray("tags");
+        Assert.assertEquals(2, tagFacets.size());
+        for (int i = 0; i < tagFacets.size(); i++) {
+            JsonObject tagFacet = tagFacets.getJsonObject(i);
+            Assert.assertEquals(tagFacet.getString("id").equals(tag2Id) ? 2 : 1, tagFacet.getJsonNumber("count").longValue());
+        }
+        Assert.assertEquals("eng", json.getJsonArray("languages").getJsonObject(0).getString("value"));
+        Assert.assertEquals(2, json.getJsonArray("languages").getJsonObject(0).getJsonNumber("count").longValue());
+        Assert.assertEquals("document1", json.getJsonArray("creators").getJsonObject(0).getString("username"));
+        Assert.assertEquals(1, json.getJsonArray("years").size());
+
+        // Count documents by facet with a fulltext search
+        json = target().path("/document/facets")
+                .queryParam("search", "full:uranium full:einstein")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonNumber("total").longValue());
+
         // Search documents
         Assert.assertEquals(1, searchDocuments("full:uranium full:einstein", document1Token));
         Assert.assertEquals(2, searchDocuments("tit*", document1Token));
@@ -572,6 +605,15 @@ public class TestDocumentResource extends BaseJerseyTest {
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentPdfToken)
                 .get(JsonObject.class);
         Assert.assertEquals(1, json.getJsonArray("documents").size());
+
+        // The content is indexed by page, only the matching page is returned and highlighted
+        JsonObject document = json.getJsonArray("documents").getJsonObject(0);
+        JsonArray matchedPages = document.getJsonArray("matched_pages");
+        Assert.assertEquals(1, matchedPages.size());
+        Assert.assertEquals(file1Id, matchedPages.getJsonObject(0).getString("file_id"));
+        Assert.assertEquals(1, matchedPages.getJsonObject(0).getJsonArray("pages").size());
+        Assert.assertEquals(1, matchedPages.getJsonObject(0).getJsonArray("pages").getInt(0));
+        Assert.assertTrue(document.getString("highlight").contains("<strong>"));
         
         // Get the file thumbnail data
         Response response = target().path("/file/" + file1Id + "/data")
@@ -658,6 +700,78 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertTrue(pdfBytes.length > 0);
     }
 
+    /**
+     * Test a sorted search on an index segment holding only files.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testSearchFileOnlySegment() throws Exception {
+        // Login document_file_segment
+        clientUtil.createUser("document_file_segment");
+        String documentFileSegmentToken = clientUtil.login("document_file_segment");
+
+        // Add an orphan file, flushed alone in a segment
+        clientUtil.addFileToDocument(FILE_DOCUMENT_TXT, documentFileSegmentToken, null);
+
+        // Search in full content with a sort
+        JsonObject json = target().path("/document/list")
+                .queryParam("search", "full:love")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", false)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentFileSegmentToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("documents").size());
+
+        // Add the same file to a document
+        String document1Id = clientUtil.createDocument(documentFileSegmentToken);
+        clientUtil.addFileToDocument(FILE_DOCUMENT_TXT, documentFileSegmentToken, document1Id);
+        json = target().path("/document/list")
+                .queryParam("search", "full:love")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", false)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentFileSegmentToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("documents").size());
+    }
+
+    /**
+     * Test that the suggestions come only from readable documents.
+     */
+    @Test
+    public void testSuggestReadableTitles() {
+        // Login document_suggest1 and document_suggest2
+        clientUtil.createUser("document_suggest1");
+        String documentSuggest1Token = clientUtil.login("document_suggest1");
+        clientUtil.createUser("document_suggest2");
+        String documentSuggest2Token = clientUtil.login("document_suggest2");
+
+        // Create a document with document_suggest1
+        target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentSuggest1Token)
+                .put(Entity.form(new Form()
+                        .param("title", "Confidential merger")
+                        .param("language", "eng")), JsonObject.class);
+
+        // The title completes the search of document_suggest1
+        JsonObject json = target().path("/document/suggest")
+                .queryParam("search", "confid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentSuggest1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals("confidential", json.getJsonArray("suggestions").getString(0));
+
+        // But not the search of document_suggest2, who cannot read the document
+        json = target().path("/document/suggest")
+                .queryParam("search", "confid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentSuggest2Token)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getJsonArray("suggestions").isEmpty());
+    }
+
     /**
      * Test video extraction.
      *
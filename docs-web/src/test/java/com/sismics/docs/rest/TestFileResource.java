@@ -3,6 +3,7 @@ package com.sismics.docs.rest;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.FileVariantUtil;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import com.sismics.util.mime.MimeType;
 import com.sismics.util.mime.MimeTypeUtil;
@@ -16,9 +17,12 @@ import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -66,6 +70,7 @@ public class TestFileResource extends BaseJerseyTest {
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
                 .get();
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(MimeType.IMAGE_JPEG, response.getHeaderString(HttpHeaders.CONTENT_TYPE));
         is = (InputStream) response.getEntity();
         fileBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(fileBytes.length > 0);
@@ -89,6 +94,45 @@ public class TestFileResource extends BaseJerseyTest {
         fileBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(fileBytes.length > 0);
         
+        // Get the image closest to a size, the sizes above the original image are not generated
+        response = target().path("/file/" + file1Id + "/data")
+                .queryParam("size", "400")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        BufferedImage image = ImageIO.read((InputStream) response.getEntity());
+        Assert.assertEquals(512, image.getWidth());
+        response = target().path("/file/" + file1Id + "/data")
+                .queryParam("size", "2000")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        image = ImageIO.read((InputStream) response.getEntity());
+        Assert.assertEquals(1280, image.getWidth());
+        response = target().path("/file/" + file1Id + "/data")
+                .queryParam("size", "big")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+
+        // The images missing are generated on their first request
+        for (String variant : FileVariantUtil.getVariantNames()) {
+            Files.deleteIfExists(FileVariantUtil.getVariantFile(file1Id, variant));
+        }
+        response = target().path("/file/" + file1Id + "/data")
+                .queryParam("size", "thumb")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(MimeType.IMAGE_JPEG, response.getHeaderString(HttpHeaders.CONTENT_TYPE));
+        image = ImageIO.read((InputStream) response.getEntity());
+        Assert.assertEquals(256, image.getWidth());
+        Assert.assertTrue(Files.exists(FileVariantUtil.getVariantFile(file1Id, "web")));
+
         // Check that the files are not readable directly from FS
         Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file1Id);
         Assert.assertEquals(MimeType.DEFAULT, MimeTypeUtil.guessMimeType(storedFile, null));
@@ -106,6 +150,7 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals("image/jpeg", files.getJsonObject(0).getString("mimetype"));
         Assert.assertEquals(0, files.getJsonObject(0).getInt("version"));
         Assert.assertEquals(FILE_PIA_00452_JPG_SIZE, files.getJsonObject(0).getJsonNumber("size").longValue());
+        Assert.assertEquals(28, files.getJsonObject(0).getString("blurhash").length());
         Assert.assertEquals(file2Id, files.getJsonObject(1).getString("id"));
         Assert.assertEquals("PIA00452.jpg", files.getJsonObject(1).getString("name"));
         Assert.assertEquals(0, files.getJsonObject(1).getInt("version"));